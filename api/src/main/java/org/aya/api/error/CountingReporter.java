@@ -13,7 +13,7 @@ public final class CountingReporter implements Reporter {
     this.delegated = delegated;
   }
 
-  public int size() {
+  public synchronized int size() {
     return errors;
   }
 
@@ -21,7 +21,8 @@ public final class CountingReporter implements Reporter {
     return size() == 0;
   }
 
-  @Override public void report(@NotNull Problem problem) {
+  /** Synchronized, as the modules can be loaded in parallel */
+  @Override public synchronized void report(@NotNull Problem problem) {
     if (problem.sourcePos() != SourcePos.NONE && problem.level() == Problem.Severity.ERROR) errors++;
     delegated.report(problem);
   }
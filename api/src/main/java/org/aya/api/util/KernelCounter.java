@@ -0,0 +1,56 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.api.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of the operations of the kernel, which do not depend on the machine,
+ * so they tell whether an algorithmic change does less work.
+ * They are global to the process, shared by the threads checking in parallel,
+ * and they count nothing unless {@link #enable}d, which costs a volatile read per operation.
+ */
+public enum KernelCounter {
+  /** A lambda applied to an argument, by substitution or evaluation */
+  BetaReduction,
+  /** A function call unfolded, or tried to */
+  Unfold,
+  /** A case tree, or the patterns of a clause, matched against arguments */
+  ClauseMatch,
+  DefEqCompare,
+  /** A comparison decided because both sides are the same object */
+  DefEqFastPath,
+  /** A term looked at by a substitution, including the unchanged ones */
+  SubstituteNode,
+  MetaSolution;
+
+  private static volatile boolean enabled = false;
+  private final @NotNull LongAdder adder = new LongAdder();
+
+  public static void enable(boolean enabled) {
+    KernelCounter.enabled = enabled;
+  }
+
+  public void increment() {
+    if (enabled) adder.increment();
+  }
+
+  public long count() {
+    return adder.sum();
+  }
+
+  public static void reset() {
+    for (var counter : values()) counter.adder.reset();
+  }
+
+  /** @return the counts of all the counters, for comparing with a later snapshot */
+  public static @NotNull Map<KernelCounter, Long> snapshot() {
+    var counts = new EnumMap<KernelCounter, Long>(KernelCounter.class);
+    for (var counter : values()) counts.put(counter, counter.count());
+    return counts;
+  }
+}
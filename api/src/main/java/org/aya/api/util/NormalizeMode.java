@@ -8,4 +8,6 @@ package org.aya.api.util;
 public enum NormalizeMode {
   NF,
   WHNF,
+  /** Normal form, computed by evaluation and quotation instead of substitution */
+  NBE,
 }
@@ -7,6 +7,8 @@ module org.aya {
   requires transitive org.aya.pretty;
   requires org.glavo.kala.base;
   requires org.glavo.kala.collection;
+  requires jdk.management;
+  requires jdk.jfr;
 
   exports org.aya.concrete.parse;
   exports org.aya.concrete.resolve.context;
@@ -15,11 +17,14 @@ module org.aya {
   exports org.aya.concrete;
   exports org.aya.core.def;
   exports org.aya.core.pat;
+  exports org.aya.core.serde;
   exports org.aya.core.term;
+  exports org.aya.core.value;
   exports org.aya.core.visitor;
   exports org.aya.core;
   exports org.aya.generic;
   exports org.aya.ref;
+  exports org.aya.tyck.order;
   exports org.aya.tyck.pat;
   exports org.aya.tyck.sort;
   exports org.aya.tyck.trace;
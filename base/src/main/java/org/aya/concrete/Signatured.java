@@ -8,6 +8,8 @@ import org.aya.api.error.SourcePos;
 import org.aya.core.def.Def;
 import org.aya.tyck.StmtTycker;
 import org.aya.tyck.trace.Trace;
+import org.aya.util.JfrEvents;
+import org.aya.util.Profiler;
 import org.glavo.kala.collection.immutable.ImmutableSeq;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
@@ -30,8 +32,11 @@ public sealed abstract class Signatured implements ConcreteDecl permits Decl, De
   }
 
   public Def tyck(@NotNull Reporter reporter, Trace.@Nullable Builder builder) {
-    var tycker = new StmtTycker(reporter, builder);
-    return accept(tycker, tycker.newTycker());
+    return Profiler.profile(Profiler.Phase.Tyck, () -> ref().name(), sourcePos, () ->
+      JfrEvents.tyck(ref().name(), sourcePos, () -> {
+        var tycker = new StmtTycker(reporter, builder);
+        return accept(tycker, tycker.newTycker());
+      }));
   }
 
   public interface Visitor<P, R> extends Decl.Visitor<P, R> {
@@ -2,16 +2,21 @@
 // Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
 package org.aya.concrete.parse;
 
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.aya.api.error.CollectReporter;
 import org.aya.api.error.Reporter;
 import org.aya.parser.AyaLexer;
 import org.aya.parser.AyaParser;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.function.Consumer;
 
 public interface AyaParsing {
   @Contract("_ -> new") static @NotNull AyaParser parser(@NotNull String text) {
@@ -21,13 +26,123 @@ public interface AyaParsing {
 
   @Contract("_, _ -> new")
   static @NotNull AyaParser parser(@NotNull Path path, @NotNull Reporter reporter) throws IOException {
-    var lexer = new AyaLexer(CharStreams.fromPath(path));
-    lexer.removeErrorListeners();
+    return parser(CharStreams.fromPath(path), reporter);
+  }
+
+  @Contract("_, _ -> new") static @NotNull AyaParser parser(@NotNull String text, @NotNull Reporter reporter) {
+    return parser(CharStreams.fromString(text), reporter);
+  }
+
+  private static @NotNull AyaParser parser(@NotNull CharStream input, @NotNull Reporter reporter) {
+    var listener = new ReporterErrorListener(reporter);
+    var parser = new AyaParser(new CommonTokenStream(new AyaTokenizer(input, listener)));
+    parser.removeErrorListeners();
+    parser.addErrorListener(listener);
+    return parser;
+  }
+
+  static @NotNull AyaParser.ProgramContext program(@NotNull Path path, @NotNull Reporter reporter) throws IOException {
+    return program(CharStreams.fromPath(path), reporter);
+  }
+
+  static @NotNull AyaParser.ProgramContext program(@NotNull String text, @NotNull Reporter reporter) {
+    return program(CharStreams.fromString(text), reporter);
+  }
+
+  /**
+   * Parses the top-level statements one by one, like {@link #program(Path, Reporter)},
+   * so the parse tree of a statement can be dropped once the consumer has converted it.
+   * The statements before a syntax error are parsed twice.
+   */
+  static void program(
+    @NotNull Path path, @NotNull Reporter reporter,
+    @NotNull Consumer<AyaParser.@NotNull StmtContext> consumer
+  ) throws IOException {
+    var input = CharStreams.fromPath(path);
     var listener = new ReporterErrorListener(reporter);
-    lexer.addErrorListener(listener);
-    var parser = new AyaParser(new CommonTokenStream(lexer));
+    var tokens = new CommonTokenStream(new AyaTokenizer(input, listener));
+    var parser = sll(tokens);
+    var parsed = 0;
+    while (tokens.LA(1) != Token.EOF) {
+      AyaParser.StmtContext stmt;
+      try {
+        stmt = parser.stmt();
+      } catch (ParseCancellationException e) {
+        // the whole program is parsed again, for the same error recovery as parsing the program
+        parser.reset();
+        var stmts = ll(parser, listener).program().stmt();
+        stmts.subList(Math.min(parsed, stmts.size()), stmts.size()).forEach(consumer);
+        return;
+      }
+      consumer.accept(stmt);
+      parsed++;
+    }
+  }
+
+  /**
+   * Finds the imported modules by the tokens only, which is much cheaper than parsing.
+   * The tokens after a lexer error are ignored, the error is reported when the file is parsed.
+   *
+   * @return the module names after the import keywords, including the ones of the open commands
+   */
+  static @NotNull ImmutableSeq<ImmutableSeq<String>> imports(@NotNull Path path) throws IOException {
+    var source = new AyaTokenizer(CharStreams.fromPath(path), new ReporterErrorListener(new CollectReporter()));
+    var imports = Buffer.<ImmutableSeq<String>>of();
+    try {
+      var token = nextVisible(source);
+      while (token.getType() != Token.EOF) {
+        if (token.getType() != AyaLexer.IMPORT) {
+          token = nextVisible(source);
+          continue;
+        }
+        var name = Buffer.<String>of();
+        for (token = nextVisible(source); token.getType() == AyaLexer.ID; token = nextVisible(source)) {
+          name.append(token.getText());
+          token = nextVisible(source);
+          if (!".".equals(token.getText())) break;
+        }
+        if (name.isNotEmpty()) imports.append(name.toImmutableSeq());
+      }
+    } catch (ParsingInterruptedException ignored) {
+    }
+    return imports.toImmutableSeq();
+  }
+
+  private static @NotNull Token nextVisible(@NotNull TokenSource source) {
+    var token = source.nextToken();
+    while (token.getChannel() != Token.DEFAULT_CHANNEL) token = source.nextToken();
+    return token;
+  }
+
+  /**
+   * Parses with the faster SLL prediction first, which gives up on the first syntax error,
+   * and parses again with the full LL prediction only then, for the correct parse tree or error.
+   * The tokens are reused, so the input is lexed only once.
+   */
+  private static @NotNull AyaParser.ProgramContext program(@NotNull CharStream input, @NotNull Reporter reporter) {
+    var listener = new ReporterErrorListener(reporter);
+    var tokens = new CommonTokenStream(new AyaTokenizer(input, listener));
+    var parser = sll(tokens);
+    try {
+      return parser.program();
+    } catch (ParseCancellationException e) {
+      parser.reset();
+      return ll(parser, listener).program();
+    }
+  }
+
+  private static @NotNull AyaParser sll(@NotNull TokenStream tokens) {
+    var parser = new AyaParser(tokens);
     parser.removeErrorListeners();
+    parser.setErrorHandler(new BailErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    return parser;
+  }
+
+  private static @NotNull AyaParser ll(@NotNull AyaParser parser, @NotNull ReporterErrorListener listener) {
     parser.addErrorListener(listener);
+    parser.setErrorHandler(new DefaultErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.LL);
     return parser;
   }
 }
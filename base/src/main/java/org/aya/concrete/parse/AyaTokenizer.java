@@ -0,0 +1,361 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.concrete.parse;
+
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+import org.aya.parser.AyaLexer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hand-written lexer of the tokens in {@code Aya.g4}, giving the same tokens as {@link AyaLexer}
+ * on the default channel, with the same positions. Unlike {@link AyaLexer}, whitespaces and comments
+ * are skipped instead of being put on the hidden channel, and the texts of the tokens are not copied.
+ * The lengths of the tokens are decided by the longest match, and the earlier rule wins a tie, like in ANTLR.
+ */
+public final class AyaTokenizer implements TokenSource {
+  private static final @NotNull String LITERAL_ESCAPES = "btnfr\"'\\";
+  private static final boolean @NotNull [] START_CHARS = new boolean[128];
+  /** the literal tokens by their first characters */
+  private static final @Nullable Trie @NotNull [] LITERALS = new Trie[0x2200];
+
+  /** A trie of the literal tokens, which also has the universes without the numbers */
+  private static final class Trie {
+    private char @NotNull [] keys = new char[0];
+    private @NotNull Trie @NotNull [] children = new Trie[0];
+    private int type = Token.INVALID_TYPE;
+
+    private @Nullable Trie child(int c) {
+      for (var i = 0; i < keys.length; i++) if (keys[i] == c) return children[i];
+      return null;
+    }
+
+    private static void add(@NotNull String text, int type) {
+      var node = LITERALS[text.charAt(0)];
+      if (node == null) node = LITERALS[text.charAt(0)] = new Trie();
+      for (var i = 1; i < text.length(); i++) {
+        var c = text.charAt(i);
+        var child = node.child(c);
+        if (child == null) {
+          child = new Trie();
+          node.keys = Arrays.copyOf(node.keys, node.keys.length + 1);
+          node.children = Arrays.copyOf(node.children, node.children.length + 1);
+          node.keys[node.keys.length - 1] = c;
+          node.children[node.children.length - 1] = child;
+        }
+        node = child;
+      }
+      node.type = type;
+    }
+  }
+
+  static {
+    for (var c : "~!@#$%^&*-+=<>?/|:[]_".toCharArray()) START_CHARS[c] = true;
+    for (var c = 'a'; c <= 'z'; c++) START_CHARS[c] = START_CHARS[Character.toUpperCase(c)] = true;
+    var vocabulary = AyaLexer.VOCABULARY;
+    for (var type = 1; type <= vocabulary.getMaxTokenType(); type++) {
+      var name = vocabulary.getLiteralName(type);
+      if (name != null) Trie.add(name.substring(1, name.length() - 1).replace("\\\\", "\\"), type);
+    }
+    // the rules with alternatives
+    Trie.add("\\Sig", AyaLexer.SIGMA);
+    Trie.add("\u03A3", AyaLexer.SIGMA);
+    Trie.add("\\lam", AyaLexer.LAMBDA);
+    Trie.add("\u03BB", AyaLexer.LAMBDA);
+    Trie.add("\\Pi", AyaLexer.PI);
+    Trie.add("\u03A0", AyaLexer.PI);
+    Trie.add("->", AyaLexer.TO);
+    Trie.add("\u2192", AyaLexer.TO);
+    Trie.add("=>", AyaLexer.IMPLIES);
+    Trie.add("\u21D2", AyaLexer.IMPLIES);
+    // followed by optional numbers, and the universes like `\2-Type` are lexed separately
+    for (var universe : List.of("\\Type", "\\oo-Type", "\\h-Type", "\\hType")) Trie.add(universe, AyaLexer.UNIVERSE);
+    Trie.add("\\Set", AyaLexer.SET_UNIV);
+  }
+
+  private final @NotNull CharStream input;
+  private final @NotNull ReporterErrorListener listener;
+  private final @NotNull Pair<TokenSource, CharStream> source;
+  private @NotNull TokenFactory<?> factory = CommonTokenFactory.DEFAULT;
+  private int line = 1;
+  private int column = 0;
+  /** the type of the token matched by {@link #literal(int)} */
+  private int literalType = Token.INVALID_TYPE;
+  /** how many characters {@link #literal(int)} matched, which is the position of the error if nothing matched */
+  private int literalProgress = 0;
+
+  public AyaTokenizer(@NotNull CharStream input, @NotNull ReporterErrorListener listener) {
+    this.input = input;
+    this.listener = listener;
+    source = new Pair<>(this, input);
+  }
+
+  @Override public @NotNull Token nextToken() {
+    while (true) {
+      var c = la(0);
+      if (c == IntStream.EOF) return emit(Token.EOF, 0);
+      if (isWhitespace(c)) {
+        skipWhitespaces();
+        continue;
+      }
+      // an unclosed comment is a brace
+      var comment = c == '{' && la(1) == '-' ? blockComment() : 0;
+      if (comment > 0) {
+        skip(comment);
+        continue;
+      }
+      var token = token(c);
+      if (token != null) return token;
+    }
+  }
+
+  /** @return null if a line comment is skipped */
+  private @Nullable Token token(int c) {
+    if (isDigit(c)) return emit(AyaLexer.NUMBER, digits(0));
+    if (c == '"') return string();
+    if (c == '`') {
+      if (!isStart(la(1))) throw error(1);
+      var id = identifier(1);
+      return la(1 + id) == '`' ? emit(AyaLexer.INFIX, id + 2) : emit(AyaLexer.POSTFIX, id + 1);
+    }
+    if (c == '\\' && isDigit(la(1))) {
+      var digits = digits(1);
+      var progress = progress("-Type", 1 + digits);
+      if (progress < 5) throw error(1 + digits + progress);
+      return emit(AyaLexer.UNIVERSE, 6 + digits + digits(6 + digits));
+    }
+    var literal = literal(c);
+    if (isStart(c)) {
+      var id = identifier(0);
+      var comment = c == '-' && la(1) == '-' ? lineComment() : 0;
+      if (comment > Math.max(id, literal)) {
+        skip(comment);
+        return null;
+      }
+      return literal >= id ? emit(literalType, literal) : emit(AyaLexer.ID, id);
+    }
+    if (literal > 0) return emit(literalType, literal);
+    // like ANTLR, the message includes the first character failed to match
+    throw error(literalProgress);
+  }
+
+  /**
+   * Finds the longest literal token, setting {@link #literalType} and {@link #literalProgress}.
+   *
+   * @return the length of the token, or 0
+   */
+  private int literal(int c) {
+    var node = c >= 0 && c < LITERALS.length ? LITERALS[c] : null;
+    var length = 0;
+    var i = 0;
+    for (; node != null; node = node.child(la(++i))) {
+      if (node.type == Token.INVALID_TYPE) continue;
+      length = i + 1;
+      literalType = node.type;
+    }
+    literalProgress = i;
+    if (length > 0 && (literalType == AyaLexer.UNIVERSE || literalType == AyaLexer.SET_UNIV)) length += digits(length);
+    return length;
+  }
+
+  private @NotNull Token string() {
+    for (var i = 1; ; i++) {
+      var c = la(i);
+      if (c == '"') return emit(AyaLexer.STRING, i + 1);
+      if (c == IntStream.EOF || c == '\r' || c == '\n') return emit(AyaLexer.INCOMPLETE_STRING, i);
+      if (c == '\\') {
+        var escape = escape(i);
+        if (escape == 0) return emit(AyaLexer.INCOMPLETE_STRING, i);
+        i += escape - 1;
+      }
+    }
+  }
+
+  /** @return the length of the escape sequence at the offset, or 0 if it is invalid */
+  private int escape(int offset) {
+    var c = la(offset + 1);
+    // the rest of an octal escape are ordinary characters of the string
+    if (c >= 0 && LITERAL_ESCAPES.indexOf(c) >= 0 || c >= '0' && c <= '8') return 2;
+    if (c != 'u') return 0;
+    var i = offset + 1;
+    while (la(i) == 'u') i++;
+    for (var j = 0; j < 4; j++) if (!isHex(la(i + j))) return 0;
+    return i + 4 - offset;
+  }
+
+  /**
+   * Matches {@code '{-' (COMMENT | .)*? '-}'} like ANTLR: the paths are kept in the order of their priorities,
+   * where the non-greedy loop prefers to exit, and the paths after the one closing the outermost comment are dropped.
+   * So an unclosed inner comment can be ignored, like in <code>{-{-}</code>.
+   *
+   * @return the length of the comment, or 0 if it is not closed
+   */
+  private int blockComment() {
+    var paths = new Paths();
+    var next = new Paths();
+    paths.loop(1);
+    var length = 0;
+    for (var i = 2; paths.size > 0; i++) {
+      var c = la(i);
+      next.size = 0;
+      for (var j = 0; j < paths.size; j++) {
+        var depth = paths.states[j] >> 3;
+        var expect = paths.states[j] & 7;
+        if (expect == Paths.EXIT_DASH && c == '-') next.add(depth << 3 | Paths.EXIT_BRACE);
+        else if (expect == Paths.EXIT_BRACE && c == '}') {
+          if (depth == 1) {
+            length = i + 1;
+            break;
+          }
+          next.loop(depth - 1);
+        } else if (expect == Paths.OPEN_BRACE && c == '{') next.add(depth << 3 | Paths.OPEN_DASH);
+        else if (expect == Paths.OPEN_DASH && c == '-') next.loop(depth + 1);
+        else if (expect == Paths.ANY && c != IntStream.EOF) next.loop(depth);
+      }
+      var swap = paths;
+      paths = next;
+      next = swap;
+    }
+    return length;
+  }
+
+  /** The ordered paths matching a comment, each of which is a depth and the character it expects */
+  private static final class Paths {
+    private static final int EXIT_DASH = 0, EXIT_BRACE = 1, OPEN_BRACE = 2, OPEN_DASH = 3, ANY = 4;
+    private int @NotNull [] states = new int[8];
+    private int size = 0;
+
+    private void add(int state) {
+      for (var i = 0; i < size; i++) if (states[i] == state) return;
+      if (size == states.length) states = Arrays.copyOf(states, size * 2);
+      states[size++] = state;
+    }
+
+    /** Enters the loop of a comment, which tries to exit, to open an inner comment, and to skip a character */
+    private void loop(int depth) {
+      add(depth << 3 | EXIT_DASH);
+      add(depth << 3 | OPEN_BRACE);
+      add(depth << 3 | ANY);
+    }
+  }
+
+  /** @return the length of {@code '--' '-'* (~[ID chars \r\n] ~[\r\n]* | )} */
+  private int lineComment() {
+    var i = 2;
+    while (la(i) == '-') i++;
+    var c = la(i);
+    if (c == IntStream.EOF || c == '\r' || c == '\n' || isPart(c)) return i;
+    while (c != IntStream.EOF && c != '\r' && c != '\n') c = la(++i);
+    return i;
+  }
+
+  private void skipWhitespaces() {
+    var i = 0;
+    for (var c = la(0); isWhitespace(c); c = la(++i)) {
+      if (c == '\n') {
+        line++;
+        column = 0;
+      } else column++;
+    }
+    input.seek(input.index() + i);
+  }
+
+  private int digits(int offset) {
+    var i = offset;
+    while (isDigit(la(i))) i++;
+    return i - offset;
+  }
+
+  private int identifier(int offset) {
+    var i = offset + 1;
+    while (isPart(la(i))) i++;
+    return i - offset;
+  }
+
+  private static boolean isStart(int c) {
+    return c >= 0 && c < START_CHARS.length ? START_CHARS[c] : c >= 0x2200 && c <= 0x22FF;
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isHex(int c) {
+    return isDigit(c) || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+  }
+
+  private static boolean isPart(int c) {
+    return isStart(c) || isDigit(c) || c == '\'';
+  }
+
+  /** @return how many characters of the text match the input from the offset */
+  private int progress(@NotNull String text, int offset) {
+    var i = 0;
+    while (i < text.length() && la(offset + i) == text.charAt(i)) i++;
+    return i;
+  }
+
+  private int la(int offset) {
+    return input.LA(offset + 1);
+  }
+
+  private @NotNull Token emit(int type, int length) {
+    var start = input.index();
+    var token = factory.create(source, type, null, Token.DEFAULT_CHANNEL, start, start + length - 1, line, column);
+    input.seek(start + length);
+    column += length;
+    return token;
+  }
+
+  private void skip(int length) {
+    for (var i = 0; i < length; i++) {
+      if (la(i) == '\n') {
+        line++;
+        column = 0;
+      } else column++;
+    }
+    input.seek(input.index() + length);
+  }
+
+  /** @param progress the offset of the character failed to match, which is included in the message like ANTLR */
+  private @NotNull ParsingInterruptedException error(int progress) {
+    var start = input.index();
+    var text = input.getText(Interval.of(start, start + progress))
+      .replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+    listener.lexerError(start, start + progress, line, column, "token recognition error at: '" + text + "'");
+    return new ParsingInterruptedException();
+  }
+
+  @Override public int getLine() {
+    return line;
+  }
+
+  @Override public int getCharPositionInLine() {
+    return column;
+  }
+
+  @Override public @NotNull CharStream getInputStream() {
+    return input;
+  }
+
+  @Override public String getSourceName() {
+    return input.getSourceName();
+  }
+
+  @Override public void setTokenFactory(@NotNull TokenFactory<?> factory) {
+    this.factory = factory;
+  }
+
+  @Override public @NotNull TokenFactory<?> getTokenFactory() {
+    return factory;
+  }
+}
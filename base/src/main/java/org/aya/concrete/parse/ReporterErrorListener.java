@@ -47,10 +47,15 @@ public class ReporterErrorListener extends BaseErrorListener {
   }
 
   private void lexerError(int line, int pos, String msg, LexerNoViableAltException e) {
+    lexerError(e.getStartIndex(), e.getInputStream().index(), line, pos, msg);
+  }
+
+  /** Reports without interrupting, see {@link AyaTokenizer} */
+  void lexerError(int start, int end, int line, int pos, String msg) {
     reporter.report(new ParseError(
       new SourcePos(
-        e.getStartIndex(),
-        e.getInputStream().index(),
+        start,
+        end,
         line, pos, line, pos),
       msg));
   }
@@ -0,0 +1,30 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.concrete.resolve.error;
+
+import org.aya.api.error.Problem;
+import org.aya.api.error.SourcePos;
+import org.aya.pretty.doc.Doc;
+import org.glavo.kala.collection.Seq;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * @param cycle the modules importing each other, where the first and the last are the same
+ */
+public record CyclicImportError(
+  @NotNull Seq<String> cycle,
+  @NotNull SourcePos sourcePos
+) implements Problem.Error {
+  @Override
+  public @NotNull Doc describe() {
+    return Doc.hcat(
+      Doc.plain("The modules import each other: `"),
+      Doc.plain(cycle.joinToString("` -> `")),
+      Doc.plain("`")
+    );
+  }
+
+  @Override public @NotNull Stage stage() {
+    return Stage.RESOLVE;
+  }
+}
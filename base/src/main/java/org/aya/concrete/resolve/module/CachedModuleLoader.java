@@ -2,31 +2,203 @@
 // Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
 package org.aya.concrete.resolve.module;
 
+import org.aya.api.error.Problem;
 import org.aya.api.ref.Var;
 import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
 import org.glavo.kala.collection.mutable.MutableHashMap;
 import org.glavo.kala.collection.mutable.MutableMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
 /**
+ * Loads every module once, even if it is requested by several threads at the same time.
+ * Prefetched modules are loaded by a pool of threads, so that independent modules are loaded in parallel.
+ * With a {@link ModuleReporter}, the problems of every module are kept, see {@link #problems},
+ * and they are reported when a module is loaded from outside of the modules, its imports first.
+ *
  * @author re-xyr
  */
 public final class CachedModuleLoader implements ModuleLoader {
-  @NotNull MutableMap<@NotNull String, MutableMap<Seq<String>, MutableMap<String, Var>>> cache = new MutableHashMap<>();
+  public static final @NotNull Executor LOADERS = Executors.newCachedThreadPool(runnable -> {
+    var thread = new Thread(runnable, "aya-module-loader");
+    thread.setDaemon(true);
+    return thread;
+  });
+  /** the loaded modules and the ones being loaded */
+  @NotNull ConcurrentHashMap<@NotNull String, CompletableFuture<MutableMap<Seq<String>, MutableMap<String, Var>>>> cache = new ConcurrentHashMap<>();
+  /** the modules imported by each of the cached modules */
+  @NotNull ConcurrentHashMap<@NotNull String, Buffer<String>> imports = new ConcurrentHashMap<>();
+  /** the module each of the modules being loaded is waiting for, guarded by itself */
+  private final @NotNull MutableMap<@NotNull String, @NotNull String> waiting = new MutableHashMap<>();
   @NotNull ModuleLoader loader;
+  /** loads the prefetched modules, or null to ignore prefetching */
+  private final @Nullable Executor executor;
+  /** the reporter of the wrapped loader, if it keeps the problems by module */
+  private final @Nullable ModuleReporter reporter;
 
   public CachedModuleLoader(@NotNull ModuleLoader loader) {
+    this(loader, LOADERS);
+  }
+
+  /** @param executor null if the modules must be loaded in the calling thread, like when tracing */
+  public CachedModuleLoader(@NotNull ModuleLoader loader, @Nullable Executor executor) {
+    this(loader, executor, null);
+  }
+
+  /** @param reporter the reporter of the given loader */
+  public CachedModuleLoader(@NotNull ModuleLoader loader, @Nullable Executor executor, @Nullable ModuleReporter reporter) {
     this.loader = loader;
+    this.executor = executor;
+    this.reporter = reporter;
   }
 
   @Override
   public @Nullable MutableMap<Seq<String>, MutableMap<String, Var>> load(@NotNull Seq<String> path, @NotNull ModuleLoader recurseLoader) {
     var stringifiedPath = path.joinToString("::");
-    return cache.getOrElse(stringifiedPath, () -> {
-      var ctx = loader.load(path, recurseLoader);
-      cache.put(stringifiedPath, ctx);
-      return ctx;
+    var flush = reporter != null && !reporter.isLoading();
+    try {
+      var loading = new CompletableFuture<MutableMap<Seq<String>, MutableMap<String, Var>>>();
+      var loaded = cache.putIfAbsent(stringifiedPath, loading);
+      if (loaded != null) return join(loaded);
+      load(path, stringifiedPath, recurseLoader, loading);
+      return join(loading);
+    } finally {
+      if (flush) flush(stringifiedPath, Buffer.of());
+    }
+  }
+
+  /** Reports the problems of a module and the ones it imports, in the order of the imports */
+  private void flush(@NotNull String module, @NotNull Buffer<String> visited) {
+    assert reporter != null;
+    if (visited.contains(module)) return;
+    visited.append(module);
+    var deps = imports.get(module);
+    if (deps != null) deps.forEach(dep -> flush(dep, visited));
+    reporter.flush(module);
+  }
+
+  @Override public void prefetch(@NotNull Seq<@NotNull String> path) {
+    if (executor == null) return;
+    var stringifiedPath = path.joinToString("::");
+    var loading = new CompletableFuture<MutableMap<Seq<String>, MutableMap<String, Var>>>();
+    if (cache.putIfAbsent(stringifiedPath, loading) == null)
+      executor.execute(() -> load(path, stringifiedPath, this, loading));
+  }
+
+  private void load(
+    @NotNull Seq<String> path, @NotNull String stringifiedPath, @NotNull ModuleLoader recurseLoader,
+    @NotNull CompletableFuture<MutableMap<Seq<String>, MutableMap<String, Var>>> loading
+  ) {
+    var deps = Buffer.<String>of();
+    var recordingLoader = new ModuleLoader() {
+      @Override
+      public @Nullable MutableMap<Seq<String>, MutableMap<String, Var>> load(@NotNull Seq<String> dep, @NotNull ModuleLoader loader) {
+        var stringifiedDep = dep.joinToString("::");
+        deps.append(stringifiedDep);
+        return await(stringifiedPath, stringifiedDep, () -> recurseLoader.load(dep));
+      }
+
+      @Override public void prefetch(@NotNull Seq<String> dep) {
+        recurseLoader.prefetch(dep);
+      }
+    };
+    try {
+      var ctx = reporter != null
+        ? reporter.loading(stringifiedPath, () -> loader.load(path, recordingLoader))
+        : loader.load(path, recordingLoader);
+      imports.put(stringifiedPath, deps);
+      loading.complete(ctx);
+    } catch (Throwable e) {
+      // the imports are kept for the problems
+      imports.put(stringifiedPath, deps);
+      cache.remove(stringifiedPath, loading);
+      loading.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * @param paths modules loaded by this loader
+   * @return the problems of the modules and the ones they import (transitively), every imported module first
+   */
+  public @NotNull ImmutableSeq<Problem> problems(@NotNull Seq<@NotNull Seq<String>> paths) {
+    var problems = Buffer.<Problem>of();
+    if (reporter == null) return problems.toImmutableSeq();
+    var visited = Buffer.<String>of();
+    paths.forEach(path -> problems(path.joinToString("::"), visited, problems));
+    return problems.toImmutableSeq();
+  }
+
+  private void problems(@NotNull String module, @NotNull Buffer<String> visited, @NotNull Buffer<Problem> problems) {
+    assert reporter != null;
+    if (visited.contains(module)) return;
+    visited.append(module);
+    var deps = imports.get(module);
+    if (deps != null) deps.forEach(dep -> problems(dep, visited, problems));
+    problems.appendAll(reporter.problems(module));
+  }
+
+  /**
+   * Records that a module is waiting for another one while loading it,
+   * so that a cycle is reported instead of waiting forever.
+   */
+  private <T> T await(@NotNull String module, @NotNull String dep, @NotNull Supplier<T> load) {
+    synchronized (waiting) {
+      var cycle = Buffer.of(module);
+      for (var next = dep; next != null; next = waiting.getOrNull(next)) {
+        cycle.append(next);
+        if (next.equals(module)) throw new CyclicImportException(cycle.toImmutableSeq());
+      }
+      waiting.put(module, dep);
+    }
+    try {
+      return load.get();
+    } finally {
+      synchronized (waiting) {
+        waiting.remove(module);
+      }
+    }
+  }
+
+  private static <T> T join(@NotNull CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) throw cause;
+      if (e.getCause() instanceof Error cause) throw cause;
+      throw e;
+    }
+  }
+
+  /**
+   * Forgets a module and the ones importing it (transitively), so that they are loaded again next time.
+   *
+   * @return the forgotten modules
+   */
+  public @NotNull ImmutableSeq<String> invalidate(@NotNull Seq<String> path) {
+    var forgotten = Buffer.<String>of();
+    invalidate(path.joinToString("::"), forgotten);
+    return forgotten.toImmutableSeq();
+  }
+
+  private void invalidate(@NotNull String module, @NotNull Buffer<String> forgotten) {
+    if (forgotten.contains(module)) return;
+    forgotten.append(module);
+    cache.remove(module);
+    imports.remove(module);
+    if (reporter != null) reporter.forget(module);
+    var importers = Buffer.<String>of();
+    imports.forEach((importer, deps) -> {
+      if (deps.contains(module)) importers.append(importer);
     });
+    importers.forEach(importer -> invalidate(importer, forgotten));
   }
 }
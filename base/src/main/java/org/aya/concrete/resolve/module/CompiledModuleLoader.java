@@ -0,0 +1,133 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.concrete.resolve.module;
+
+import org.aya.api.error.CountingReporter;
+import org.aya.api.error.Reporter;
+import org.aya.api.ref.Var;
+import org.aya.core.def.Def;
+import org.aya.core.serde.CompiledModule;
+import org.aya.core.serde.CoreReader;
+import org.aya.core.serde.CoreWriter;
+import org.aya.core.serde.DefTable;
+import org.aya.tyck.trace.Trace;
+import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.collection.mutable.MutableMap;
+import org.glavo.kala.value.Ref;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Loads modules from the binary caches next to their sources if they are up-to-date,
+ * otherwise checks the sources like {@link FileModuleLoader} and writes the caches.
+ * A cache is up-to-date if the hash of the source and the fingerprints of the dependencies
+ * are the same as when it was written.
+ *
+ * @param table shared by all the loaders of a session
+ * @see CoreWriter
+ */
+public final record CompiledModuleLoader(
+  @NotNull Path basePath,
+  @NotNull Reporter reporter,
+  Trace.@Nullable Builder builder,
+  @NotNull DefTable table
+) implements ModuleLoader {
+  public static final @NotNull String CACHE_POSTFIX = ".ayac";
+
+  public static @NotNull Path cacheFile(@NotNull Path sourceFile) {
+    return sourceFile.resolveSibling(sourceFile.getFileName() + CACHE_POSTFIX);
+  }
+
+  @Override
+  public @Nullable MutableMap<Seq<String>, MutableMap<String, Var>>
+  load(@NotNull Seq<@NotNull String> path, @NotNull ModuleLoader recurseLoader) {
+    var sourceFile = path.foldLeft(basePath, Path::resolve);
+    long sourceHash;
+    try {
+      sourceHash = CompiledModule.hash(Files.readAllBytes(sourceFile));
+    } catch (IOException e) {
+      reporter.reportString(e.getMessage());
+      return null;
+    }
+    var module = DefTable.moduleKey(path);
+    var cached = readCache(cacheFile(sourceFile), sourceHash, recurseLoader);
+    if (cached != null) {
+      table.register(module, cached.header().fingerprint(), cached.defs());
+      return cached.exports();
+    }
+    var dependencies = Buffer.<ImmutableSeq<String>>of();
+    var recordingLoader = new ModuleLoader() {
+      @Override
+      public @Nullable MutableMap<Seq<String>, MutableMap<String, Var>> load(@NotNull Seq<String> dep, @NotNull ModuleLoader loader) {
+        var depPath = dep.toImmutableSeq();
+        if (!dependencies.contains(depPath)) dependencies.append(depPath);
+        return recurseLoader.load(dep);
+      }
+
+      @Override public void prefetch(@NotNull Seq<String> dep) {
+        recurseLoader.prefetch(dep);
+      }
+    };
+    var reporter = new CountingReporter(this.reporter);
+    var defs = new Ref<ImmutableSeq<Def>>();
+    var exports = new FileModuleLoader(basePath, reporter, builder).load(path, recordingLoader, defs::set);
+    if (exports == null || defs.value == null || !reporter.isEmpty()) return exports;
+    var header = header(sourceHash, dependencies.toImmutableSeq());
+    if (header == null) return exports;
+    var compiled = new CompiledModule(header, defs.value, exports);
+    table.register(module, header.fingerprint(), compiled.defs());
+    writeCache(cacheFile(sourceFile), compiled);
+    return exports;
+  }
+
+  /** @return null if one of the dependencies is not cacheable */
+  private CompiledModule.@Nullable Header header(long sourceHash, @NotNull ImmutableSeq<ImmutableSeq<String>> dependencies) {
+    var fingerprints = Buffer.<CompiledModule.Dependency>of();
+    for (var dep : dependencies) {
+      var fingerprint = table.fingerprint(DefTable.moduleKey(dep));
+      if (fingerprint == null) return null;
+      fingerprints.append(new CompiledModule.Dependency(dep, fingerprint));
+    }
+    return new CompiledModule.Header(sourceHash, fingerprints.toImmutableSeq());
+  }
+
+  private @Nullable CompiledModule readCache(@NotNull Path cacheFile, long sourceHash, @NotNull ModuleLoader recurseLoader) {
+    if (!Files.exists(cacheFile)) return null;
+    try (var in = new BufferedInputStream(Files.newInputStream(cacheFile))) {
+      var reader = new CoreReader(in, table);
+      var header = reader.readHeader();
+      if (header.sourceHash() != sourceHash) return null;
+      header.dependencies().forEach(dep -> recurseLoader.prefetch(dep.path()));
+      for (var dep : header.dependencies()) {
+        if (recurseLoader.load(dep.path()) == null) return null;
+        var fingerprint = table.fingerprint(DefTable.moduleKey(dep.path()));
+        if (fingerprint == null || fingerprint != dep.fingerprint()) return null;
+      }
+      return reader.readBody(header);
+    } catch (IOException e) {
+      // corrupted or outdated, rebuilt from the source
+      return null;
+    }
+  }
+
+  private void writeCache(@NotNull Path cacheFile, @NotNull CompiledModule compiled) {
+    // written in memory first, so that a failure does not leave a truncated cache
+    var out = new ByteArrayOutputStream();
+    try {
+      CoreWriter.write(out, table, compiled);
+      Files.write(cacheFile, out.toByteArray());
+    } catch (CoreWriter.UnwritableException e) {
+      // the module is not cacheable, like if it refers to definitions of an uncached module
+    } catch (IOException e) {
+      reporter.reportString("Cannot write the cache `" + cacheFile + "`: " + e);
+    }
+  }
+}
@@ -2,11 +2,14 @@
 // Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
 package org.aya.concrete.resolve.module;
 
+import org.aya.api.error.CollectReporter;
+import org.aya.api.error.Problem;
 import org.aya.api.error.Reporter;
+import org.aya.api.error.SourcePos;
 import org.aya.api.ref.Var;
 import org.aya.api.util.BreakingException;
 import org.aya.api.util.InterruptException;
-import org.aya.concrete.Signatured;
+import org.aya.concrete.Decl;
 import org.aya.concrete.Stmt;
 import org.aya.concrete.parse.AyaParsing;
 import org.aya.concrete.parse.AyaProducer;
@@ -14,16 +17,28 @@ import org.aya.concrete.resolve.context.Context;
 import org.aya.concrete.resolve.context.EmptyContext;
 import org.aya.concrete.resolve.context.ModuleContext;
 import org.aya.concrete.resolve.visitor.StmtShallowResolver;
+import org.aya.core.def.Def;
 import org.aya.tyck.ExprTycker;
+import org.aya.tyck.order.TyckCache;
+import org.aya.tyck.order.TyckScheduler;
 import org.aya.tyck.trace.Trace;
+import org.aya.util.JfrEvents;
+import org.aya.util.Profiler;
 import org.glavo.kala.collection.Seq;
 import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
 import org.glavo.kala.collection.mutable.MutableMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
 
 public final record FileModuleLoader(
   @NotNull Path basePath,
@@ -33,22 +48,34 @@ public final record FileModuleLoader(
   @Override
   public @Nullable MutableMap<Seq<String>, MutableMap<String, Var>>
   load(@NotNull Seq<@NotNull String> path, @NotNull ModuleLoader recurseLoader) {
-    try {
-      var parser = AyaParsing.parser(path.foldLeft(basePath, Path::resolve), reporter());
-      var program = new AyaProducer(reporter).visitProgram(parser.program());
-      return tyckModule(recurseLoader, program, reporter, builder).exports();
-    } catch (IOException e) {
-      reporter.reportString(e.getMessage());
-      return null;
-    } catch (ExprTycker.TyckerException | Context.ContextException e) {
-      handleInternalError(e);
-      return null;
-    } catch (InterruptException e) {
-      // TODO[ice]: proper error handling
-      reporter.reportString(e.stage().name() + " interrupted due to errors.");
-      return null;
-    }
+    return load(path, recurseLoader, defs -> {
+    });
+  }
 
+  /**
+   * @param onTycked receives the core definitions of the top-level declarations
+   */
+  public @Nullable MutableMap<Seq<String>, MutableMap<String, Var>> load(
+    @NotNull Seq<@NotNull String> path,
+    @NotNull ModuleLoader recurseLoader,
+    @NotNull Consumer<@NotNull ImmutableSeq<Def>> onTycked
+  ) {
+    return JfrEvents.load(path.joinToString("::"), () -> {
+      try {
+        var program = parse(path.foldLeft(basePath, Path::resolve), reporter);
+        return tyckModule(recurseLoader, program, reporter, builder, onTycked).exports();
+      } catch (IOException e) {
+        reporter.reportString(e.getMessage());
+        return null;
+      } catch (ExprTycker.TyckerException | Context.ContextException e) {
+        handleInternalError(e);
+        return null;
+      } catch (InterruptException e) {
+        // TODO[ice]: proper error handling
+        reporter.reportString(e.stage().name() + " interrupted due to errors.");
+        return null;
+      }
+    });
   }
 
   public static @NotNull ModuleContext tyckModule(
@@ -56,17 +83,183 @@ public final record FileModuleLoader(
     @NotNull ImmutableSeq<Stmt> program,
     @NotNull Reporter reporter,
     Trace.@Nullable Builder builder
+  ) {
+    return tyckModule(recurseLoader, program, reporter, builder, defs -> {
+    });
+  }
+
+  public static @NotNull ModuleContext tyckModule(
+    @NotNull ModuleLoader recurseLoader,
+    @NotNull ImmutableSeq<Stmt> program,
+    @NotNull Reporter reporter,
+    Trace.@Nullable Builder builder,
+    @NotNull Consumer<@NotNull ImmutableSeq<Def>> onTycked
+  ) {
+    return tyckModule(recurseLoader, program, reporter, builder, null, onTycked);
+  }
+
+  /**
+   * @param cache the definitions of the previous check of the module, see {@link TyckScheduler}
+   */
+  public static @NotNull ModuleContext tyckModule(
+    @NotNull ModuleLoader recurseLoader,
+    @NotNull ImmutableSeq<Stmt> program,
+    @NotNull Reporter reporter,
+    Trace.@Nullable Builder builder,
+    @Nullable TyckCache cache,
+    @NotNull Consumer<@NotNull ImmutableSeq<Def>> onTycked
   ) {
     var context = new EmptyContext(reporter).derive();
+    var decls = resolveModule(context, recurseLoader, program);
+    onTycked.accept(TyckScheduler.tyck(decls, reporter, builder, cache));
+    return context;
+  }
+
+  public static @NotNull ImmutableSeq<Stmt> parse(@NotNull Path file, @NotNull Reporter reporter) throws IOException {
+    var timer = Profiler.start();
+    try {
+      return new AyaProducer(reporter).visitProgram(AyaParsing.program(file, reporter));
+    } finally {
+      if (timer != null) timer.stop(Profiler.Phase.Parse, file.toString(), SourcePos.NONE);
+    }
+  }
+
+  /** @return the top-level declarations of the program, resolved in the given context */
+  public static @NotNull ImmutableSeq<Decl> resolveModule(
+    @NotNull ModuleContext context,
+    @NotNull ModuleLoader recurseLoader,
+    @NotNull ImmutableSeq<Stmt> program
+  ) {
+    prefetch(recurseLoader, program);
     var shallowResolver = new StmtShallowResolver(recurseLoader);
-    program.forEach(s -> s.accept(shallowResolver, context));
-    program.forEach(Stmt::resolve);
-    program.forEach(s -> {
-      if (s instanceof Signatured decl) decl.tyck(reporter, builder);
+    program.forEach(s -> shallowResolve(shallowResolver, context, s));
+    return resolveDecls(program);
+  }
+
+  /** Prefetches the modules imported by the statements, see {@link ModuleLoader#prefetch} */
+  private static void prefetch(@NotNull ModuleLoader loader, @NotNull Seq<Stmt> stmts) {
+    stmts.forEach(stmt -> {
+      if (stmt instanceof Stmt.ImportStmt importStmt) loader.prefetch(importStmt.path());
+      else if (stmt instanceof Stmt.ModuleStmt module) prefetch(loader, module.contents());
     });
+  }
+
+  private static void shallowResolve(@NotNull StmtShallowResolver resolver, @NotNull ModuleContext context, @NotNull Stmt stmt) {
+    Profiler.profile(Profiler.Phase.ShallowResolve, () -> name(stmt), stmt.sourcePos(), () -> stmt.accept(resolver, context));
+  }
+
+  /** @apiNote the statements should have been shallow resolved */
+  private static @NotNull ImmutableSeq<Decl> resolveDecls(@NotNull ImmutableSeq<Stmt> program) {
+    program.forEach(s -> Profiler.profile(Profiler.Phase.Resolve, () -> name(s), s.sourcePos(), s::resolve));
+    return program.view()
+      .filter(s -> s instanceof Decl)
+      .map(s -> (Decl) s)
+      .toImmutableSeq();
+  }
+
+  /** @return the name of the statement in the {@link Profiler} */
+  private static @NotNull String name(@NotNull Stmt stmt) {
+    if (stmt instanceof Decl decl) return decl.ref().name();
+    if (stmt instanceof Stmt.ImportStmt importStmt) return "\\import " + importStmt.path().joinToString(".");
+    if (stmt instanceof Stmt.OpenStmt open) return "\\open " + open.path().joinToString(".");
+    if (stmt instanceof Stmt.ModuleStmt module) return "\\module " + module.name();
+    return stmt.toString();
+  }
+
+  /**
+   * Like {@link #tyckModule}, but parses the file in another thread, one statement at a time,
+   * and each statement is shallow resolved as soon as it is parsed, so the imported modules are loaded meanwhile,
+   * and they are prefetched by the parser thread.
+   * The declarations are resolved and checked only after the whole file is parsed,
+   * as they can refer to the ones after them.
+   * The problems are reported in the same order as {@link #tyckModule}, where a syntax error comes first.
+   */
+  public static @NotNull ModuleContext tyckModule(
+    @NotNull ModuleLoader recurseLoader,
+    @NotNull Path file,
+    @NotNull Reporter reporter,
+    Trace.@Nullable Builder builder,
+    @Nullable TyckCache cache,
+    @NotNull Consumer<@NotNull ImmutableSeq<Def>> onTycked
+  ) throws IOException {
+    var parseProblems = new CollectReporter();
+    var stmts = new LinkedBlockingQueue<Optional<ImmutableSeq<Stmt>>>();
+    var parsing = new CompletableFuture<Void>();
+    var parser = new Thread(() -> {
+      var producer = new AyaProducer(parseProblems);
+      var timer = Profiler.start();
+      try {
+        AyaParsing.program(file, parseProblems, stmt -> {
+          var parsed = producer.visitStmt(stmt);
+          prefetch(recurseLoader, parsed);
+          stmts.add(Optional.of(parsed));
+        });
+        if (timer != null) timer.stop(Profiler.Phase.Parse, file.toString(), SourcePos.NONE);
+        parsing.complete(null);
+      } catch (Throwable e) {
+        parsing.completeExceptionally(e);
+      } finally {
+        stmts.add(Optional.empty());
+      }
+    }, "aya-parser");
+    parser.setDaemon(true);
+    parser.start();
+    var resolveProblems = new DelayedReporter(reporter);
+    var context = new EmptyContext(resolveProblems).derive();
+    var shallowResolver = new StmtShallowResolver(recurseLoader);
+    var program = Buffer.<Stmt>of();
+    RuntimeException resolveFailure = null;
+    for (var next = take(stmts); next.isPresent(); next = take(stmts)) {
+      program.appendAll(next.get());
+      if (resolveFailure == null) try {
+        next.get().forEach(s -> shallowResolve(shallowResolver, context, s));
+      } catch (RuntimeException e) {
+        // keep parsing, as a syntax error is reported instead
+        resolveFailure = e;
+      }
+    }
+    parseProblems.errors().forEach(reporter::report);
+    try {
+      parsing.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException io) throw io;
+      throw (RuntimeException) e.getCause();
+    }
+    resolveProblems.flush();
+    if (resolveFailure != null) throw resolveFailure;
+    onTycked.accept(TyckScheduler.tyck(resolveDecls(program.toImmutableSeq()), reporter, builder, cache));
     return context;
   }
 
+  private static <T> @NotNull T take(@NotNull BlockingQueue<T> queue) {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Keeps the problems until {@link #flush()}, and reports directly after that */
+  private static final class DelayedReporter implements Reporter {
+    private final @NotNull Reporter reporter;
+    private @Nullable Buffer<Problem> delayed = Buffer.of();
+
+    private DelayedReporter(@NotNull Reporter reporter) {
+      this.reporter = reporter;
+    }
+
+    @Override public void report(@NotNull Problem problem) {
+      if (delayed != null) delayed.append(problem);
+      else reporter.report(problem);
+    }
+
+    private void flush() {
+      if (delayed != null) delayed.forEach(reporter::report);
+      delayed = null;
+    }
+  }
+
   public static void handleInternalError(@NotNull BreakingException e) {
     e.printStackTrace();
     e.printHint();
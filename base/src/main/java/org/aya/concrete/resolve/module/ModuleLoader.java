@@ -4,6 +4,7 @@ package org.aya.concrete.resolve.module;
 
 import org.aya.api.ref.Var;
 import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
 import org.glavo.kala.collection.mutable.MutableMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -17,4 +18,22 @@ public interface ModuleLoader {
   default @Nullable MutableMap<Seq<String>, MutableMap<String, Var>> load(@NotNull Seq<@NotNull String> path) {
     return load(path, this);
   }
+
+  /**
+   * A hint that the module will be loaded soon, so a loader may start loading it in the background.
+   * Loaders wrapping another one should pass it on.
+   */
+  default void prefetch(@NotNull Seq<@NotNull String> path) {
+  }
+
+  /** Thrown when a module is loaded while it is importing itself, directly or not */
+  final class CyclicImportException extends RuntimeException {
+    /** the modules in the cycle, starting from the one importing the module being loaded */
+    public final @NotNull ImmutableSeq<String> cycle;
+
+    public CyclicImportException(@NotNull ImmutableSeq<String> cycle) {
+      super(cycle.joinToString(" -> "), null, false, false);
+      this.cycle = cycle;
+    }
+  }
 }
@@ -0,0 +1,83 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.concrete.resolve.module;
+
+import org.aya.api.error.Problem;
+import org.aya.api.error.Reporter;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the problems of the modules loaded by a {@link CachedModuleLoader} by module,
+ * so that they are still known after the module is cached.
+ * The loaders wrapped by the {@link CachedModuleLoader} report to it,
+ * and a problem belongs to the module being loaded by the reporting thread.
+ * The problems are passed on once the module is loaded, in the order of the imports,
+ * so they do not interleave when the modules are loaded in parallel.
+ *
+ * @see CachedModuleLoader#problems
+ */
+public final class ModuleReporter implements Reporter {
+  private final @NotNull ThreadLocal<String> current = new ThreadLocal<>();
+  /** every module is loaded by one thread, and read after it is loaded */
+  private final @NotNull ConcurrentHashMap<@NotNull String, @NotNull Buffer<Problem>> problems = new ConcurrentHashMap<>();
+  /** the modules whose problems are passed on, guarded by itself */
+  private final @NotNull Set<String> flushed = new HashSet<>();
+  private final @NotNull Reporter reporter;
+
+  /** @param reporter receives the problems reported while no module is loaded, and the flushed ones */
+  public ModuleReporter(@NotNull Reporter reporter) {
+    this.reporter = reporter;
+  }
+
+  @Override public void report(@NotNull Problem problem) {
+    var module = current.get();
+    if (module == null) reporter.report(problem);
+    else problems.get(module).append(problem);
+  }
+
+  /** @return true if the calling thread is loading a module */
+  boolean isLoading() {
+    return current.get() != null;
+  }
+
+  /** Passes on the problems of a loaded module, unless they are already */
+  void flush(@NotNull String module) {
+    synchronized (flushed) {
+      if (flushed.add(module)) problems(module).forEach(reporter::report);
+    }
+  }
+
+  /** Forgets the problems of the last load of the module, and keeps the ones reported by the given load */
+  <T> T loading(@NotNull String module, @NotNull Supplier<T> load) {
+    var outer = current.get();
+    problems.put(module, Buffer.of());
+    synchronized (flushed) {
+      flushed.remove(module);
+    }
+    current.set(module);
+    try {
+      return load.get();
+    } finally {
+      current.set(outer);
+    }
+  }
+
+  public @NotNull ImmutableSeq<Problem> problems(@NotNull String module) {
+    var buffer = problems.get(module);
+    return buffer == null ? ImmutableSeq.of() : buffer.toImmutableSeq();
+  }
+
+  void forget(@NotNull String module) {
+    problems.remove(module);
+    synchronized (flushed) {
+      flushed.remove(module);
+    }
+  }
+}
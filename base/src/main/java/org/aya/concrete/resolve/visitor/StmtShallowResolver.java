@@ -2,14 +2,18 @@
 // Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
 package org.aya.concrete.resolve.visitor;
 
+import org.aya.api.ref.Var;
 import org.aya.concrete.Decl;
 import org.aya.concrete.Stmt;
 import org.aya.concrete.resolve.context.Context;
 import org.aya.concrete.resolve.context.ModuleContext;
+import org.aya.concrete.resolve.error.CyclicImportError;
 import org.aya.concrete.resolve.error.ModNotFoundError;
 import org.aya.concrete.resolve.module.ModuleLoader;
+import org.glavo.kala.collection.Seq;
 import org.glavo.kala.collection.immutable.ImmutableSeq;
 import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.glavo.kala.collection.mutable.MutableMap;
 import org.glavo.kala.tuple.Tuple2;
 import org.glavo.kala.tuple.Unit;
 import org.jetbrains.annotations.NotNull;
@@ -31,7 +35,12 @@ public final record StmtShallowResolver(@NotNull ModuleLoader loader)
 
   @Override
   public Unit visitImport(Stmt.@NotNull ImportStmt cmd, @NotNull ModuleContext context) {
-    var success = loader.load(cmd.path());
+    MutableMap<Seq<String>, MutableMap<String, Var>> success;
+    try {
+      success = loader.load(cmd.path());
+    } catch (ModuleLoader.CyclicImportException e) {
+      return context.reportAndThrow(new CyclicImportError(e.cycle, cmd.sourcePos()));
+    }
     if (success == null) context.reportAndThrow(new ModNotFoundError(cmd.path(), cmd.sourcePos()));
     context.importModule(cmd.path(), Stmt.Accessibility.Private, success, cmd.sourcePos());
     return Unit.unit();
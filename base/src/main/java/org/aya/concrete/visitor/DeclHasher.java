@@ -0,0 +1,257 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.concrete.visitor;
+
+import org.aya.api.ref.DefVar;
+import org.aya.api.ref.Var;
+import org.aya.concrete.Decl;
+import org.aya.concrete.Expr;
+import org.aya.concrete.Pattern;
+import org.aya.concrete.Signatured;
+import org.aya.generic.Arg;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.tuple.Unit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Hashes a resolved concrete declaration, ignoring source positions,
+ * so that a declaration moved around or reformatted has the same hash.
+ * Definitions referred to are hashed by name, the caller is supposed to
+ * combine the hash with the fingerprints of the definitions (see {@link DeclRefFinder}).
+ */
+public final class DeclHasher implements Signatured.Visitor<DeclHasher.@NotNull Hasher, Unit> {
+  public static final @NotNull DeclHasher INSTANCE = new DeclHasher();
+
+  private DeclHasher() {
+  }
+
+  public static long hash(@NotNull Decl decl) {
+    var hasher = new Hasher();
+    decl.accept(INSTANCE, hasher);
+    return hasher.hash;
+  }
+
+  /** FNV-1a */
+  public static final class Hasher {
+    private long hash = 0xcbf29ce484222325L;
+
+    public void put(long value) {
+      for (int i = 0; i < Long.BYTES; i++, value >>>= 8) {
+        hash ^= value & 0xff;
+        hash *= 0x100000001b3L;
+      }
+    }
+
+    public void put(boolean value) {
+      put(value ? 1 : 0);
+    }
+
+    public void put(@Nullable String value) {
+      if (value == null) put(-1);
+      else {
+        put(value.length());
+        value.chars().forEach(this::put);
+      }
+    }
+
+    public long hash() {
+      return hash;
+    }
+  }
+
+  private static final class ExprHasher implements Expr.Visitor<@NotNull Hasher, Unit> {
+    public static final @NotNull ExprHasher INSTANCE = new ExprHasher();
+
+    private Unit tag(@NotNull Hasher hasher, int tag) {
+      hasher.put(tag);
+      return Unit.unit();
+    }
+
+    @Override public Unit visitRef(Expr.@NotNull RefExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 0);
+      var(expr.resolvedVar(), hasher);
+      return Unit.unit();
+    }
+
+    @Override public Unit visitUnresolved(Expr.@NotNull UnresolvedExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 1);
+      hasher.put(expr.name());
+      return Unit.unit();
+    }
+
+    @Override public Unit visitLam(Expr.@NotNull LamExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 2);
+      param(expr.param(), hasher);
+      return expr.body().accept(this, hasher);
+    }
+
+    @Override public Unit visitPi(Expr.@NotNull PiExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 3);
+      hasher.put(expr.co());
+      param(expr.param(), hasher);
+      return expr.last().accept(this, hasher);
+    }
+
+    @Override public Unit visitTelescopicSigma(Expr.@NotNull TelescopicSigmaExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 4);
+      hasher.put(expr.co());
+      params(expr.params(), hasher);
+      return expr.last().accept(this, hasher);
+    }
+
+    @Override public Unit visitUniv(Expr.@NotNull UnivExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 5);
+      hasher.put(expr.uLevel());
+      hasher.put(expr.hLevel());
+      return Unit.unit();
+    }
+
+    @Override public Unit visitApp(Expr.@NotNull AppExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 6);
+      expr.function().accept(this, hasher);
+      hasher.put(expr.arguments().size());
+      for (var arg : expr.arguments()) arg(arg, hasher);
+      return Unit.unit();
+    }
+
+    @Override public Unit visitHole(Expr.@NotNull HoleExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 7);
+      hasher.put(expr.name());
+      var filling = expr.filling();
+      hasher.put(filling != null);
+      return filling != null ? filling.accept(this, hasher) : Unit.unit();
+    }
+
+    @Override public Unit visitTup(Expr.@NotNull TupExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 8);
+      hasher.put(expr.items().size());
+      expr.items().forEach(item -> item.accept(this, hasher));
+      return Unit.unit();
+    }
+
+    @Override public Unit visitProj(Expr.@NotNull ProjExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 9);
+      hasher.put(expr.ix());
+      return expr.tup().accept(this, hasher);
+    }
+
+    @Override public Unit visitLitInt(Expr.@NotNull LitIntExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 10);
+      hasher.put(expr.integer());
+      return Unit.unit();
+    }
+
+    @Override public Unit visitLitString(Expr.@NotNull LitStringExpr expr, @NotNull Hasher hasher) {
+      tag(hasher, 11);
+      hasher.put(expr.string());
+      return Unit.unit();
+    }
+
+    private void arg(@NotNull Arg<Expr> arg, @NotNull Hasher hasher) {
+      hasher.put(arg.explicit());
+      arg.term().accept(this, hasher);
+    }
+
+    private void param(Expr.@NotNull Param param, @NotNull Hasher hasher) {
+      hasher.put(param.ref().name());
+      hasher.put(param.explicit());
+      var type = param.type();
+      hasher.put(type != null);
+      if (type != null) type.accept(this, hasher);
+    }
+
+    private void params(@NotNull ImmutableSeq<Expr.Param> params, @NotNull Hasher hasher) {
+      hasher.put(params.size());
+      params.forEach(param -> param(param, hasher));
+    }
+  }
+
+  private static void var(@Nullable Var var, @NotNull Hasher hasher) {
+    hasher.put(var instanceof DefVar);
+    hasher.put(var == null ? null : var.name());
+  }
+
+  @Override public Unit visitDataDecl(Decl.@NotNull DataDecl decl, @NotNull Hasher hasher) {
+    header(decl, 0, hasher);
+    decl.result.accept(ExprHasher.INSTANCE, hasher);
+    decl.body.map(ctors -> {
+      hasher.put(ctors.ctors().size());
+      ctors.ctors().forEach(ctor -> ctor.accept(this, hasher));
+      return Unit.unit();
+    }, clauses -> {
+      hasher.put(-clauses.clauses().size());
+      clauses.clauses().forEach(clause -> {
+        pattern(clause._1, hasher);
+        clause._2.accept(this, hasher);
+      });
+      return Unit.unit();
+    });
+    return Unit.unit();
+  }
+
+  @Override public Unit visitFnDecl(Decl.@NotNull FnDecl decl, @NotNull Hasher hasher) {
+    header(decl, 1, hasher);
+    decl.modifiers.forEach(modifier -> hasher.put(modifier.name()));
+    hasher.put(decl.assoc == null ? null : decl.assoc.name());
+    decl.result.accept(ExprHasher.INSTANCE, hasher);
+    decl.body.map(
+      expr -> expr.accept(ExprHasher.INSTANCE, hasher),
+      clauses -> {
+        hasher.put(clauses.size());
+        clauses.forEach(clause -> clause(clause, hasher));
+        return Unit.unit();
+      });
+    return Unit.unit();
+  }
+
+  @Override public Unit visitCtor(Decl.@NotNull DataCtor ctor, @NotNull Hasher hasher) {
+    hasher.put(ctor.ref.name());
+    hasher.put(ctor.coerce);
+    ExprHasher.INSTANCE.params(ctor.telescope, hasher);
+    hasher.put(ctor.clauses.size());
+    ctor.clauses.forEach(clause -> clause(clause, hasher));
+    return Unit.unit();
+  }
+
+  private void header(@NotNull Decl decl, int tag, @NotNull Hasher hasher) {
+    hasher.put(tag);
+    hasher.put(decl.ref().name());
+    hasher.put(decl.accessibility.name());
+    // rarely used, the positions are hashed as well to be conservative
+    hasher.put(decl.abuseBlock.size());
+    decl.abuseBlock.forEach(stmt -> hasher.put(stmt.toString()));
+    ExprHasher.INSTANCE.params(decl.telescope, hasher);
+  }
+
+  private void clause(@NotNull Pattern.Clause clause, @NotNull Hasher hasher) {
+    if (clause instanceof Pattern.Clause.Match match) {
+      hasher.put(match.patterns().size());
+      match.patterns().forEach(pattern -> pattern(pattern, hasher));
+      match.expr().accept(ExprHasher.INSTANCE, hasher);
+    } else hasher.put(-1);
+  }
+
+  private void pattern(@NotNull Pattern pattern, @NotNull Hasher hasher) {
+    hasher.put(pattern.explicit());
+    if (pattern instanceof Pattern.Bind bind) {
+      hasher.put(0);
+      hasher.put(bind.bind().name());
+      var(bind.resolved().value, hasher);
+    } else if (pattern instanceof Pattern.Tuple tuple) {
+      hasher.put(1);
+      hasher.put(tuple.patterns().size());
+      tuple.patterns().forEach(p -> pattern(p, hasher));
+      hasher.put(tuple.as() == null ? null : tuple.as().name());
+    } else if (pattern instanceof Pattern.Ctor ctor) {
+      hasher.put(2);
+      hasher.put(ctor.name());
+      hasher.put(ctor.params().size());
+      ctor.params().forEach(p -> pattern(p, hasher));
+      hasher.put(ctor.as() == null ? null : ctor.as().name());
+    } else if (pattern instanceof Pattern.Number number) {
+      hasher.put(3);
+      hasher.put(number.number());
+    } else hasher.put(4);
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.concrete.visitor;
+
+import org.aya.api.ref.DefVar;
+import org.aya.concrete.Decl;
+import org.aya.concrete.Expr;
+import org.aya.concrete.Pattern;
+import org.aya.concrete.Signatured;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.tuple.Unit;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Collects the definitions referred to by a resolved concrete declaration,
+ * the concrete counterpart of {@link org.aya.core.visitor.RefFinder}.
+ */
+public final class DeclRefFinder implements Signatured.Visitor<@NotNull Buffer<DefVar<?, ?>>, Unit> {
+  public static final @NotNull DeclRefFinder INSTANCE = new DeclRefFinder();
+
+  private DeclRefFinder() {
+  }
+
+  private static final class ExprRefFinder implements ExprConsumer<@NotNull Buffer<DefVar<?, ?>>> {
+    public static final @NotNull ExprRefFinder INSTANCE = new ExprRefFinder();
+
+    @Override public Unit visitRef(Expr.@NotNull RefExpr expr, @NotNull Buffer<DefVar<?, ?>> refs) {
+      if (expr.resolvedVar() instanceof DefVar<?, ?> ref) refs.append(ref);
+      return Unit.unit();
+    }
+  }
+
+  @Override public Unit visitDataDecl(Decl.@NotNull DataDecl decl, @NotNull Buffer<DefVar<?, ?>> refs) {
+    tele(decl.telescope, refs);
+    decl.result.accept(ExprRefFinder.INSTANCE, refs);
+    decl.body.map(ctors -> {
+      ctors.ctors().forEach(ctor -> ctor.accept(this, refs));
+      return Unit.unit();
+    }, clauses -> {
+      clauses.clauses().forEach(clause -> {
+        pattern(clause._1, refs);
+        clause._2.accept(this, refs);
+      });
+      return Unit.unit();
+    });
+    return Unit.unit();
+  }
+
+  @Override public Unit visitFnDecl(Decl.@NotNull FnDecl decl, @NotNull Buffer<DefVar<?, ?>> refs) {
+    tele(decl.telescope, refs);
+    decl.result.accept(ExprRefFinder.INSTANCE, refs);
+    decl.body.map(
+      expr -> expr.accept(ExprRefFinder.INSTANCE, refs),
+      clauses -> {
+        clauses.forEach(clause -> clauses(clause, refs));
+        return Unit.unit();
+      });
+    return Unit.unit();
+  }
+
+  @Override public Unit visitCtor(Decl.@NotNull DataCtor ctor, @NotNull Buffer<DefVar<?, ?>> refs) {
+    tele(ctor.telescope, refs);
+    ctor.clauses.forEach(clause -> clauses(clause, refs));
+    return Unit.unit();
+  }
+
+  private void clauses(@NotNull Pattern.Clause clause, @NotNull Buffer<DefVar<?, ?>> refs) {
+    if (clause instanceof Pattern.Clause.Match match) {
+      match.patterns().forEach(pattern -> pattern(pattern, refs));
+      match.expr().accept(ExprRefFinder.INSTANCE, refs);
+    }
+  }
+
+  private void pattern(@NotNull Pattern pattern, @NotNull Buffer<DefVar<?, ?>> refs) {
+    if (pattern instanceof Pattern.Bind bind && bind.resolved().value instanceof DefVar<?, ?> ref)
+      refs.append(ref);
+    else if (pattern instanceof Pattern.Tuple tuple)
+      tuple.patterns().forEach(p -> pattern(p, refs));
+    else if (pattern instanceof Pattern.Ctor ctor)
+      ctor.params().forEach(p -> pattern(p, refs));
+  }
+
+  private void tele(@NotNull ImmutableSeq<Expr.Param> telescope, @NotNull Buffer<DefVar<?, ?>> refs) {
+    ExprRefFinder.INSTANCE.visitParams(telescope, refs);
+  }
+}
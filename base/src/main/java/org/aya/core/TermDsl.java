@@ -54,14 +54,14 @@ public class TermDsl extends LispBaseVisitor<Term> {
     var exprs = ctx.expr();
     return switch (rule) {
       case "U" -> UnivTerm.OMEGA;
-      case "app" -> new AppTerm.Apply(exprs.get(0).accept(this), Arg.explicit(exprs.get(1).accept(this)));
+      case "app" -> AppTerm.Apply.of(exprs.get(0).accept(this), Arg.explicit(exprs.get(1).accept(this)));
       case "fncall" -> new AppTerm.FnCall(
         (DefVar<FnDef, Decl.FnDecl>) ((RefTerm) exprs.get(0).accept(this)).var(),
         exprs.subList(1, exprs.size())
           .stream()
           .map(c -> Arg.explicit(c.accept(this)))
           .collect(ImmutableSeq.factory()));
-      case "iapp" -> new AppTerm.Apply(exprs.get(0).accept(this), Arg.implicit(exprs.get(1).accept(this)));
+      case "iapp" -> AppTerm.Apply.of(exprs.get(0).accept(this), Arg.implicit(exprs.get(1).accept(this)));
       case "lam" -> new LamTerm(exprToParam(exprs.get(0)), exprs.get(1).accept(this));
       case "Pi" -> new PiTerm(false, exprToParam(exprs.get(0)), exprs.get(1).accept(this));
       case "Copi" -> new PiTerm(true, exprToParam(exprs.get(0)), exprs.get(1).accept(this));
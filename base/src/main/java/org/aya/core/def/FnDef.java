@@ -4,6 +4,7 @@ package org.aya.core.def;
 
 import org.aya.api.ref.DefVar;
 import org.aya.concrete.Decl;
+import org.aya.core.pat.CaseTree;
 import org.aya.core.pat.Pat;
 import org.aya.core.term.Term;
 import org.glavo.kala.collection.Seq;
@@ -11,22 +12,108 @@ import org.glavo.kala.collection.immutable.ImmutableSeq;
 import org.glavo.kala.control.Either;
 import org.glavo.kala.tuple.Tuple2;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.function.Supplier;
 
 /**
+ * The body of a definition loaded from a module cache is only read the first time it is needed,
+ * like when it is unfolded, so the ones never unfolded cost nothing but their bytes.
+ *
+ * @param lazyBody see {@link #lazy(Supplier)}
  * @author ice1000
  */
 public record FnDef(
   @NotNull DefVar<FnDef, Decl.FnDecl> ref,
   @NotNull ImmutableSeq<Term.Param> telescope,
   @NotNull Term result,
-  @NotNull Either<Term, ImmutableSeq<Pat.Clause>> body
+  @NotNull Supplier<@NotNull Body> lazyBody
 ) implements Def {
   public FnDef {
     ref.core = this;
   }
 
+  public FnDef(
+    @NotNull DefVar<FnDef, Decl.FnDecl> ref,
+    @NotNull ImmutableSeq<Term.Param> telescope,
+    @NotNull Term result,
+    @NotNull Either<Term, ImmutableSeq<Pat.Clause>> body,
+    @Nullable CaseTree caseTree
+  ) {
+    this(ref, telescope, result, eager(new Body(body, caseTree)));
+  }
+
+  /**
+   * @see CaseTree#compile(ImmutableSeq, int)
+   */
+  public FnDef(
+    @NotNull DefVar<FnDef, Decl.FnDecl> ref,
+    @NotNull ImmutableSeq<Term.Param> telescope,
+    @NotNull Term result,
+    @NotNull Either<Term, ImmutableSeq<Pat.Clause>> body
+  ) {
+    this(ref, telescope, result, eager(Body.of(body, telescope)));
+  }
+
+  public @NotNull Either<Term, ImmutableSeq<Pat.Clause>> body() {
+    return lazyBody.get().body;
+  }
+
+  public @Nullable CaseTree caseTree() {
+    return lazyBody.get().caseTree;
+  }
+
   @Override
   public <P, R> R accept(@NotNull Visitor<P, R> visitor, P p) {
     return visitor.visitFn(this, p);
   }
+
+  /** Compares the bodies instead of their suppliers, which reads them */
+  @Override public boolean equals(Object o) {
+    return this == o || o instanceof FnDef that && ref.equals(that.ref) && telescope.equals(that.telescope)
+      && result.equals(that.result) && lazyBody.get().equals(that.lazyBody.get());
+  }
+
+  @Override public int hashCode() {
+    return Objects.hash(ref, telescope, result, lazyBody.get());
+  }
+
+  @Override public String toString() {
+    return "FnDef[ref=" + ref + ", telescope=" + telescope + ", result=" + result + ", body=" + lazyBody.get() + "]";
+  }
+
+  public static record Body(
+    @NotNull Either<Term, ImmutableSeq<Pat.Clause>> body,
+    @Nullable CaseTree caseTree
+  ) {
+    /** @see CaseTree#compile(ImmutableSeq, int) */
+    public static @NotNull Body of(@NotNull Either<Term, ImmutableSeq<Pat.Clause>> body, @NotNull Seq<Term.Param> telescope) {
+      return new Body(body, body.isRight() ? CaseTree.compile(body.getRightValue(), telescope.size()) : null);
+    }
+  }
+
+  private static @NotNull Supplier<@NotNull Body> eager(@NotNull Body body) {
+    return () -> body;
+  }
+
+  /** @return a supplier calling the given one at most once, even if it is called by several threads */
+  public static @NotNull Supplier<@NotNull Body> lazy(@NotNull Supplier<@NotNull Body> body) {
+    return new Supplier<>() {
+      private @Nullable Supplier<@NotNull Body> supplier = body;
+      private volatile @Nullable Body value;
+
+      @Override public @NotNull Body get() {
+        var value = this.value;
+        if (value != null) return value;
+        synchronized (this) {
+          if (this.value == null) {
+            this.value = Objects.requireNonNull(supplier).get();
+            supplier = null;
+          }
+          return this.value;
+        }
+      }
+    };
+  }
 }
@@ -0,0 +1,95 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.pat;
+
+import org.aya.api.ref.DefVar;
+import org.aya.api.util.KernelCounter;
+import org.aya.concrete.Decl;
+import org.aya.core.def.DataDef;
+import org.aya.core.term.AppTerm;
+import org.aya.core.term.Term;
+import org.aya.core.term.TupTerm;
+import org.aya.core.visitor.Substituter;
+import org.aya.generic.Arg;
+import org.aya.ref.LocalVar;
+import org.glavo.kala.collection.SeqLike;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A decision tree compiled from the clauses of a function, so that unfolding
+ * inspects every argument at most once. It has the same semantics as trying
+ * the clauses in order with {@link PatMatcher}: a pattern meeting a term
+ * that is not a constructor call (or a tuple) is a mismatch.
+ * <p>
+ * The tree works on a list of <i>slots</i>, initially the arguments.
+ * Splitting a slot appends the arguments of the constructor (or the tuple items) to the list.
+ */
+public sealed interface CaseTree {
+  static @NotNull CaseTree compile(@NotNull ImmutableSeq<Pat.@NotNull Clause> clauses, int argc) {
+    return CaseTreeBuilder.build(clauses, argc);
+  }
+
+  /**
+   * @param subst the pattern variables of the matched clause are added into it
+   * @return the index of the matched clause, or -1 if none matches
+   */
+  default int match(@NotNull SeqLike<@NotNull Arg<@NotNull Term>> args, Substituter.@NotNull TermSubst subst) {
+    KernelCounter.ClauseMatch.increment();
+    var slots = Buffer.<Term>of();
+    slots.appendAll(args.view().map(Arg::term));
+    var tree = this;
+    while (true) {
+      if (tree instanceof Leaf leaf) {
+        leaf.bindings.forEach(bind -> subst.put(bind.var, slots.get(bind.slot)));
+        return leaf.clause;
+      } else if (tree instanceof Switch split) {
+        var term = slots.get(split.slot);
+        tree = split.otherwise;
+        if (term instanceof AppTerm.ConCall conCall) for (var branch : split.branches) {
+          if (branch.ctor != conCall.conHead()) continue;
+          slots.appendAll(conCall.conArgs().view().map(Arg::term));
+          tree = branch.tree;
+          break;
+        }
+      } else if (tree instanceof Split split) {
+        if (slots.get(split.slot) instanceof TupTerm tup) {
+          slots.appendAll(tup.items());
+          tree = split.tuple;
+        } else tree = split.otherwise;
+      } else return -1;
+    }
+  }
+
+  record Binding(@NotNull LocalVar var, int slot) {
+  }
+
+  /**
+   * @param bindings in the same order as {@link PatMatcher} puts them
+   */
+  record Leaf(int clause, @NotNull ImmutableSeq<@NotNull Binding> bindings) implements CaseTree {
+  }
+
+  record Branch(@NotNull DefVar<DataDef.Ctor, Decl.DataCtor> ctor, @NotNull CaseTree tree) {
+  }
+
+  /**
+   * Split a slot by its constructor.
+   *
+   * @param otherwise taken for other constructors or terms that are not constructor calls
+   */
+  record Switch(int slot, @NotNull ImmutableSeq<@NotNull Branch> branches, @NotNull CaseTree otherwise) implements CaseTree {
+  }
+
+  /**
+   * Split a slot as a tuple.
+   *
+   * @param otherwise taken for terms that are not tuples
+   */
+  record Split(int slot, @NotNull CaseTree tuple, @NotNull CaseTree otherwise) implements CaseTree {
+  }
+
+  record Fail() implements CaseTree {
+  }
+}
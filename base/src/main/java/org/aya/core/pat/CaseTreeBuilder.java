@@ -0,0 +1,115 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.pat;
+
+import org.aya.api.ref.DefVar;
+import org.aya.concrete.Decl;
+import org.aya.core.def.DataDef;
+import org.aya.ref.LocalVar;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * Compiles a clause matrix into a {@link CaseTree}.
+ * Each row is a clause, each column is a slot, {@code null} stands for a consumed slot.
+ */
+final class CaseTreeBuilder {
+  /** The order in which {@link PatMatcher} visits the patterns, used to order bindings */
+  private final @NotNull IdentityHashMap<Pat, Integer> order = new IdentityHashMap<>();
+
+  private CaseTreeBuilder() {
+  }
+
+  private static record Bound(@NotNull LocalVar var, int slot, int order) {
+  }
+
+  private static record Row(int clause, @Nullable Pat @NotNull [] pats, @NotNull ImmutableSeq<Bound> bounds) {
+  }
+
+  static @NotNull CaseTree build(@NotNull ImmutableSeq<Pat.@NotNull Clause> clauses, int argc) {
+    var builder = new CaseTreeBuilder();
+    var rows = Buffer.<Row>of();
+    for (int i = 0; i < clauses.size(); i++) {
+      if (!(clauses.get(i) instanceof Pat.Clause.Match match)) continue;
+      assert match.patterns().sizeEquals(argc);
+      match.patterns().forEach(builder::number);
+      rows.append(new Row(i, match.patterns().toArray(Pat.class), ImmutableSeq.empty()));
+    }
+    return builder.compile(rows.toImmutableSeq(), argc);
+  }
+
+  private void number(@NotNull Pat pat) {
+    order.put(pat, order.size());
+    if (pat instanceof Pat.Tuple tuple) tuple.pats().forEach(this::number);
+    else if (pat instanceof Pat.Ctor ctor) ctor.params().forEach(this::number);
+  }
+
+  private static boolean irrefutable(@Nullable Pat pat) {
+    return pat == null || pat instanceof Pat.Bind;
+  }
+
+  private @NotNull ImmutableSeq<Bound> bind(@NotNull Row row, @Nullable Pat pat, @Nullable LocalVar as, int slot) {
+    if (pat == null || as == null) return row.bounds;
+    return row.bounds.appended(new Bound(as, slot, order.get(pat)));
+  }
+
+  /** Consume the slot of a row, binding it if needed, and append new slots */
+  private @NotNull Row expand(@NotNull Row row, int slot, @NotNull ImmutableSeq<Pat> params, int arity) {
+    var pat = row.pats[slot];
+    var pats = Arrays.copyOf(row.pats, row.pats.length + arity);
+    pats[slot] = null;
+    for (int i = 0; i < params.size(); i++) pats[row.pats.length + i] = params.get(i);
+    LocalVar as = null;
+    if (pat instanceof Pat.Bind bind) as = bind.as();
+    else if (pat instanceof Pat.Tuple tuple) as = tuple.as();
+    else if (pat instanceof Pat.Ctor ctor) as = ctor.as();
+    return new Row(row.clause, pats, bind(row, pat, as, slot));
+  }
+
+  private @NotNull CaseTree compile(@NotNull ImmutableSeq<Row> rows, int slots) {
+    if (rows.isEmpty()) return new CaseTree.Fail();
+    var first = rows.first();
+    int slot = 0;
+    while (slot < slots && irrefutable(first.pats[slot])) slot++;
+    if (slot == slots) {
+      var bounds = first.bounds;
+      for (int i = 0; i < slots; i++) if (first.pats[i] instanceof Pat.Bind bind) bounds = bind(first, bind, bind.as(), i);
+      var leafBindings = bounds.stream()
+        .sorted(Comparator.comparingInt(Bound::order))
+        .map(b -> new CaseTree.Binding(b.var, b.slot))
+        .collect(ImmutableSeq.factory());
+      return new CaseTree.Leaf(first.clause, leafBindings);
+    }
+    final var col = slot;
+    var otherwise = compile(rows.view()
+      .filter(row -> irrefutable(row.pats[col]))
+      .map(row -> expand(row, col, ImmutableSeq.empty(), 0))
+      .toImmutableSeq(), slots);
+    if (first.pats[col] instanceof Pat.Tuple tuple) {
+      var arity = tuple.pats().size();
+      var tupleRows = rows.view()
+        .filter(row -> irrefutable(row.pats[col]) || row.pats[col] instanceof Pat.Tuple)
+        .map(row -> expand(row, col, row.pats[col] instanceof Pat.Tuple t ? t.pats() : ImmutableSeq.empty(), arity))
+        .toImmutableSeq();
+      return new CaseTree.Split(col, compile(tupleRows, slots + arity), otherwise);
+    }
+    var ctors = new LinkedHashMap<DefVar<DataDef.Ctor, Decl.DataCtor>, Integer>();
+    for (var row : rows) if (row.pats[col] instanceof Pat.Ctor ctor) ctors.putIfAbsent(ctor.ref(), ctor.params().size());
+    var branches = Buffer.<CaseTree.Branch>of();
+    ctors.forEach((ref, arity) -> {
+      var ctorRows = rows.view()
+        .filter(row -> irrefutable(row.pats[col]) || row.pats[col] instanceof Pat.Ctor c && c.ref() == ref)
+        .map(row -> expand(row, col, row.pats[col] instanceof Pat.Ctor c ? c.params() : ImmutableSeq.empty(), arity))
+        .toImmutableSeq();
+      branches.append(new CaseTree.Branch(ref, compile(ctorRows, slots + arity)));
+    });
+    return new CaseTree.Switch(col, branches.toImmutableSeq(), otherwise);
+  }
+}
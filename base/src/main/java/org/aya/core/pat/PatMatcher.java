@@ -2,6 +2,7 @@
 // Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
 package org.aya.core.pat;
 
+import org.aya.api.util.KernelCounter;
 import org.aya.core.term.AppTerm;
 import org.aya.core.term.Term;
 import org.aya.core.term.TupTerm;
@@ -26,6 +27,7 @@ public record PatMatcher(@NotNull Substituter.TermSubst subst) implements Pat.Vi
     @NotNull ImmutableSeq<@NotNull Pat> pats,
     @NotNull SeqLike<@NotNull Arg<@NotNull Term>> terms
   ) {
+    KernelCounter.ClauseMatch.increment();
     var matchy = new PatMatcher(new Substituter.TermSubst(new MutableHashMap<>()));
     try {
       for (var pat : pats.zip(terms)) pat._1.accept(matchy, pat._2.term());
@@ -36,14 +38,14 @@ public record PatMatcher(@NotNull Substituter.TermSubst subst) implements Pat.Vi
   }
 
   @Override public Unit visitBind(Pat.@NotNull Bind bind, Term term) {
-    subst.map().put(bind.as(), term);
+    subst.put(bind.as(), term);
     return Unit.unit();
   }
 
   @Override public Unit visitTuple(Pat.@NotNull Tuple tuple, Term term) {
     if (!(term instanceof TupTerm tup)) throw new Mismatch();
     var as = tuple.as();
-    if (as != null) subst.map().put(as, tup);
+    if (as != null) subst.put(as, tup);
     return visitList(tuple.pats(), tup.items());
   }
 
@@ -56,7 +58,7 @@ public record PatMatcher(@NotNull Substituter.TermSubst subst) implements Pat.Vi
   @Override public Unit visitCtor(Pat.@NotNull Ctor ctor, Term term) {
     if (!(term instanceof AppTerm.ConCall conCall)) throw new Mismatch();
     var as = ctor.as();
-    if (as != null) subst.map().put(as, conCall);
+    if (as != null) subst.put(as, conCall);
     if (ctor.ref() != conCall.conHead()) throw new Mismatch();
     return visitList(ctor.params(), conCall.conArgs().view().map(Arg::term));
   }
@@ -0,0 +1,52 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.serde;
+
+import org.aya.api.ref.Var;
+import org.aya.core.def.Def;
+import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.MutableMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A checked module as stored on disk.
+ *
+ * @param defs    the top-level definitions, in source order
+ * @param exports in the same shape as {@link org.aya.concrete.resolve.context.ModuleContext#exports()}
+ */
+public record CompiledModule(
+  @NotNull Header header,
+  @NotNull ImmutableSeq<Def> defs,
+  @NotNull MutableMap<Seq<String>, MutableMap<String, Var>> exports
+) {
+  /**
+   * @param sourceHash   see {@link #hash(byte[])}
+   * @param dependencies the modules imported when the module was checked
+   */
+  public static record Header(long sourceHash, @NotNull ImmutableSeq<Dependency> dependencies) {
+    /** The fingerprint of the module, which changes when it or one of its dependencies changes */
+    public long fingerprint() {
+      var buffer = ByteBuffer.allocate(Long.BYTES * (dependencies.size() + 1));
+      buffer.putLong(sourceHash);
+      dependencies.forEach(dep -> buffer.putLong(dep.fingerprint));
+      return hash(buffer.array());
+    }
+  }
+
+  public static record Dependency(@NotNull ImmutableSeq<String> path, long fingerprint) {
+  }
+
+  /** @return the first 8 bytes of the SHA-256 digest */
+  public static long hash(byte @NotNull [] bytes) {
+    try {
+      return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(bytes)).getLong();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
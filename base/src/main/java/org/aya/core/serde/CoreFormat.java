@@ -0,0 +1,41 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.serde;
+
+/**
+ * Tags of the binary format of checked modules, shared by {@link CoreWriter} and {@link CoreReader}.
+ * Bump {@link #VERSION} on every change, so that stale caches are rebuilt.
+ */
+interface CoreFormat {
+  int MAGIC = 0x41594143; // AYAC
+  int VERSION = 3;
+
+  byte DEF_FN = 0;
+  byte DEF_DATA = 1;
+
+  byte REF_LOCAL = 0;
+  byte REF_FOREIGN = 1;
+
+  byte VAR_NEW = 0;
+  byte VAR_SEEN = 1;
+  byte VAR_DEF = 2;
+
+  byte TERM_REF = 0;
+  byte TERM_LAM = 1;
+  byte TERM_PI = 2;
+  byte TERM_SIGMA = 3;
+  byte TERM_UNIV = 4;
+  byte TERM_APP = 5;
+  byte TERM_FN_CALL = 6;
+  byte TERM_DATA_CALL = 7;
+  byte TERM_CON_CALL = 8;
+  byte TERM_TUP = 9;
+  byte TERM_PROJ = 10;
+
+  byte PAT_BIND = 0;
+  byte PAT_TUPLE = 1;
+  byte PAT_CTOR = 2;
+
+  byte CLAUSE_MATCH = 0;
+  byte CLAUSE_ABSURD = 1;
+}
@@ -0,0 +1,316 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.serde;
+
+import org.aya.api.ref.DefVar;
+import org.aya.api.ref.Var;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.Def;
+import org.aya.core.def.FnDef;
+import org.aya.core.pat.Pat;
+import org.aya.core.term.*;
+import org.aya.generic.Arg;
+import org.aya.ref.LocalVar;
+import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.glavo.kala.collection.mutable.MutableMap;
+import org.glavo.kala.control.Either;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a checked module written by {@link CoreWriter}.
+ * The header is read first, so that the caller can check whether the dependencies
+ * are up-to-date (and load them) before reading the definitions.
+ * The bodies of the functions are read the first time they are needed, see {@link FnDef},
+ * but their checksums are verified with the rest of the module.
+ */
+public final class CoreReader implements CoreFormat {
+  private final @NotNull DataInputStream in;
+  private final @NotNull DefTable table;
+  private final @NotNull Buffer<DefVar<?, ?>> defs = Buffer.of();
+  private final @NotNull Buffer<LocalVar> vars = Buffer.of();
+
+  public CoreReader(@NotNull InputStream in, @NotNull DefTable table) {
+    this.in = new DataInputStream(in);
+    this.table = table;
+  }
+
+  /** Reads a part of a module, in the scope where the part was skipped */
+  private CoreReader(
+    @NotNull InputStream in, @NotNull DefTable table,
+    @NotNull Seq<DefVar<?, ?>> defs, @NotNull Seq<LocalVar> vars
+  ) {
+    this(in, table);
+    this.defs.appendAll(defs);
+    this.vars.appendAll(vars);
+  }
+
+  /** @throws IOException also if the input is not a cache of the current version, or is corrupted */
+  public CompiledModule.@NotNull Header readHeader() throws IOException {
+    try {
+      return header();
+    } catch (RuntimeException e) {
+      throw corrupted(e);
+    }
+  }
+
+  /**
+   * @param header returned by {@link #readHeader()}, and the dependencies must have been registered in the table
+   * @throws IOException also if a definition of another module is not found in the table, or the input is corrupted
+   */
+  public @NotNull CompiledModule readBody(CompiledModule.@NotNull Header header) throws IOException {
+    try {
+      return module(header);
+    } catch (RuntimeException e) {
+      throw corrupted(e);
+    }
+  }
+
+  /** Bad sizes and indices show up as runtime exceptions, like a negative array size */
+  private static @NotNull IOException corrupted(@NotNull RuntimeException e) {
+    return new IOException("Corrupted module cache", e);
+  }
+
+  private CompiledModule.@NotNull Header header() throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Incompatible module cache");
+    var sourceHash = in.readLong();
+    var dependencies = Buffer.<CompiledModule.Dependency>of();
+    for (int i = 0, size = in.readInt(); i < size; i++)
+      dependencies.append(new CompiledModule.Dependency(path(), in.readLong()));
+    return new CompiledModule.Header(sourceHash, dependencies.toImmutableSeq());
+  }
+
+  private @NotNull CompiledModule module(CompiledModule.@NotNull Header header) throws IOException {
+    var kinds = new byte[in.readInt()];
+    var ctorCounts = new int[kinds.length];
+    for (int i = 0; i < kinds.length; i++) {
+      defs.append(DefVar.core(null, in.readUTF()));
+      kinds[i] = in.readByte();
+      if (kinds[i] == DEF_DATA) {
+        ctorCounts[i] = in.readInt();
+        for (int j = 0; j < ctorCounts[i]; j++) defs.append(DefVar.core(null, in.readUTF()));
+      }
+    }
+    var result = Buffer.<Def>of();
+    var index = 0;
+    for (int i = 0; i < kinds.length; i++) {
+      if (kinds[i] == DEF_FN) result.append(fn(cast(defs.get(index++))));
+      else if (kinds[i] == DEF_DATA) {
+        result.append(data(cast(defs.get(index)), index + 1, ctorCounts[i]));
+        index += ctorCounts[i] + 1;
+      } else throw new IOException("Unknown definition kind " + kinds[i]);
+    }
+    var exports = MutableHashMap.<Seq<String>, MutableMap<String, Var>>of();
+    for (int i = 0, size = in.readInt(); i < size; i++) {
+      var path = path();
+      var module = MutableHashMap.<String, Var>of();
+      for (int j = 0, count = in.readInt(); j < count; j++) module.put(in.readUTF(), def());
+      exports.put(path, module);
+    }
+    return new CompiledModule(header, result.toImmutableSeq(), exports);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <Core, Concrete> @NotNull DefVar<Core, Concrete> cast(@NotNull DefVar<?, ?> ref) {
+    return (DefVar<Core, Concrete>) ref;
+  }
+
+  private @NotNull ImmutableSeq<String> path() throws IOException {
+    var path = new String[in.readInt()];
+    for (int i = 0; i < path.length; i++) path[i] = in.readUTF();
+    return ImmutableSeq.of(path);
+  }
+
+  private <Core, Concrete> @NotNull DefVar<Core, Concrete> def() throws IOException {
+    var tag = in.readByte();
+    if (tag == REF_LOCAL) return cast(defs.get(in.readInt()));
+    var module = in.readUTF();
+    var key = in.readUTF();
+    var ref = table.get(module, key);
+    if (ref == null) throw new IOException("Definition " + key + " not found in " + module);
+    return cast(ref);
+  }
+
+  private @NotNull Var var() throws IOException {
+    return switch (in.readByte()) {
+      case VAR_NEW -> {
+        var var = new LocalVar(in.readUTF());
+        vars.append(var);
+        yield var;
+      }
+      case VAR_SEEN -> vars.get(in.readInt());
+      case VAR_DEF -> def();
+      default -> throw new IOException("Unknown variable");
+    };
+  }
+
+  private @NotNull LocalVar localVar() throws IOException {
+    if (var() instanceof LocalVar local) return local;
+    throw new IOException("Expected a local variable");
+  }
+
+  private @Nullable LocalVar optionalVar() throws IOException {
+    return in.readBoolean() ? localVar() : null;
+  }
+
+  private @NotNull FnDef fn(@NotNull DefVar<FnDef, ?> ref) throws IOException {
+    vars.clear();
+    var telescope = params();
+    var result = term();
+    var block = new byte[in.readInt()];
+    var checksum = in.readInt();
+    in.readFully(block);
+    var crc = new CRC32();
+    crc.update(block);
+    if ((int) crc.getValue() != checksum) throw new IOException("Corrupted body of " + ref.name());
+    var table = this.table;
+    var defs = this.defs;
+    var scope = vars.toImmutableSeq();
+    return new FnDef(cast(ref), telescope, result, FnDef.lazy(() -> {
+      try {
+        return FnDef.Body.of(new CoreReader(new ByteArrayInputStream(block), table, defs, scope).body(), telescope);
+      } catch (IOException e) {
+        throw new IllegalStateException("Corrupted body of " + ref.name(), e);
+      }
+    }));
+  }
+
+  private @NotNull Either<Term, ImmutableSeq<Pat.Clause>> body() throws IOException {
+    return in.readBoolean()
+      ? Either.left(term())
+      : Either.right(clauses());
+  }
+
+  private @NotNull DataDef data(@NotNull DefVar<DataDef, ?> ref, int firstCtor, int ctorCount) throws IOException {
+    vars.clear();
+    var telescope = params();
+    var result = term();
+    var ctors = Buffer.<DataDef.Ctor>of();
+    for (int i = 0; i < ctorCount; i++) {
+      var conTelescope = params();
+      var clauses = clauses();
+      ctors.append(new DataDef.Ctor(cast(ref), cast(defs.get(firstCtor + i)), conTelescope, clauses, in.readBoolean()));
+    }
+    var clauses = MutableHashMap.<Pat, DataDef.Ctor>of();
+    for (int i = 0, size = in.readInt(); i < size; i++) clauses.put(pat(), ctors.get(in.readInt()));
+    return new DataDef(cast(ref), telescope, result, ctors, clauses);
+  }
+
+  private @NotNull ImmutableSeq<Pat.Clause> clauses() throws IOException {
+    var clauses = Buffer.<Pat.Clause>of();
+    for (int i = 0, size = in.readInt(); i < size; i++) {
+      if (in.readByte() == CLAUSE_MATCH) {
+        var patterns = pats();
+        clauses.append(new Pat.Clause.Match(patterns, term()));
+      } else clauses.append(Pat.Clause.Absurd.INSTANCE);
+    }
+    return clauses.toImmutableSeq();
+  }
+
+  private @NotNull ImmutableSeq<Pat> pats() throws IOException {
+    var pats = Buffer.<Pat>of();
+    for (int i = 0, size = in.readInt(); i < size; i++) pats.append(pat());
+    return pats.toImmutableSeq();
+  }
+
+  private @NotNull Pat pat() throws IOException {
+    switch (in.readByte()) {
+      case PAT_BIND -> {
+        var as = localVar();
+        return new Pat.Bind(in.readBoolean(), as, term());
+      }
+      case PAT_TUPLE -> {
+        var pats = pats();
+        var as = optionalVar();
+        return new Pat.Tuple(in.readBoolean(), pats, as, term());
+      }
+      case PAT_CTOR -> {
+        DefVar<DataDef.Ctor, ?> ref = def();
+        var params = pats();
+        var as = optionalVar();
+        return new Pat.Ctor(in.readBoolean(), cast(ref), params, as, term());
+      }
+      default -> throw new IOException("Unknown pattern");
+    }
+  }
+
+  private @NotNull ImmutableSeq<Term.Param> params() throws IOException {
+    var params = Buffer.<Term.Param>of();
+    for (int i = 0, size = in.readInt(); i < size; i++) params.append(param());
+    return params.toImmutableSeq();
+  }
+
+  private Term.@NotNull Param param() throws IOException {
+    var ref = var();
+    var explicit = in.readBoolean();
+    return new Term.Param(ref, term(), explicit);
+  }
+
+  private @NotNull ImmutableSeq<Arg<Term>> args() throws IOException {
+    var args = Buffer.<Arg<Term>>of();
+    for (int i = 0, size = in.readInt(); i < size; i++) {
+      var explicit = in.readBoolean();
+      args.append(new Arg<>(term(), explicit));
+    }
+    return args.toImmutableSeq();
+  }
+
+  private @NotNull Term term() throws IOException {
+    switch (in.readByte()) {
+      case TERM_REF -> {
+        return new RefTerm(var());
+      }
+      case TERM_LAM -> {
+        var param = param();
+        return new LamTerm(param, term());
+      }
+      case TERM_PI -> {
+        var co = in.readBoolean();
+        var param = param();
+        return new PiTerm(co, param, term());
+      }
+      case TERM_SIGMA -> {
+        var co = in.readBoolean();
+        var params = params();
+        return new SigmaTerm(co, params, term());
+      }
+      case TERM_UNIV -> {
+        return UnivTerm.OMEGA;
+      }
+      case TERM_APP -> {
+        var fn = term();
+        return AppTerm.Apply.of(fn, args());
+      }
+      case TERM_FN_CALL -> {
+        return new AppTerm.FnCall(def(), args());
+      }
+      case TERM_DATA_CALL -> {
+        return new AppTerm.DataCall(def(), args());
+      }
+      case TERM_CON_CALL -> {
+        DefVar<DataDef.Ctor, ?> ref = def();
+        var dataArgs = args();
+        return new AppTerm.ConCall(cast(ref), dataArgs, args());
+      }
+      case TERM_TUP -> {
+        var items = Buffer.<Term>of();
+        for (int i = 0, size = in.readInt(); i < size; i++) items.append(term());
+        return new TupTerm(items.toImmutableSeq());
+      }
+      case TERM_PROJ -> {
+        var tup = term();
+        return new ProjTerm(tup, in.readInt());
+      }
+      default -> throw new IOException("Unknown term");
+    }
+  }
+}
@@ -0,0 +1,291 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.serde;
+
+import org.aya.api.ref.DefVar;
+import org.aya.api.ref.Var;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.Def;
+import org.aya.core.def.FnDef;
+import org.aya.core.pat.Pat;
+import org.aya.core.term.*;
+import org.aya.generic.Arg;
+import org.aya.ref.LocalVar;
+import org.glavo.kala.collection.SeqLike;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a checked module in the binary format of {@link CoreFormat}.
+ * Local variables are written once and referred to by index (in the definition) afterwards, so sharing is preserved,
+ * definitions of other modules are referred to by name through the {@link DefTable}.
+ * The body of a function is written as a block of bytes prefixed by its length and its CRC-32, so it can be read on demand,
+ * and a corrupted block is still found when the module is read.
+ *
+ * @see CoreReader
+ */
+public final class CoreWriter implements CoreFormat {
+  private final @NotNull DataOutputStream out;
+  private final @NotNull DefTable table;
+  private final @NotNull IdentityHashMap<DefVar<?, ?>, Integer> defs = new IdentityHashMap<>();
+  private final @NotNull IdentityHashMap<Var, Integer> vars = new IdentityHashMap<>();
+
+  private CoreWriter(@NotNull OutputStream out, @NotNull DefTable table) {
+    this.out = new DataOutputStream(out);
+    this.table = table;
+  }
+
+  /** Writes a part of the module, in the same scope as the given writer */
+  private CoreWriter(@NotNull OutputStream out, @NotNull CoreWriter writer) {
+    this.out = new DataOutputStream(out);
+    table = writer.table;
+    defs.putAll(writer.defs);
+    vars.putAll(writer.vars);
+  }
+
+  /** The module refers to something that cannot be written, so it is not cacheable */
+  public static final class UnwritableException extends IOException {
+    private UnwritableException(@NotNull String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * @throws UnwritableException if the module refers to something that cannot be written,
+   *                             like an unsolved hole or a definition not in the table
+   */
+  public static void write(@NotNull OutputStream out, @NotNull DefTable table, @NotNull CompiledModule module) throws IOException {
+    var writer = new CoreWriter(out, table);
+    writer.module(module);
+    writer.out.flush();
+  }
+
+  private void module(@NotNull CompiledModule module) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(module.header().sourceHash());
+    var dependencies = module.header().dependencies();
+    out.writeInt(dependencies.size());
+    for (var dep : dependencies) {
+      path(dep.path());
+      out.writeLong(dep.fingerprint());
+    }
+    // the symbols come first, so that the definitions can refer to each other
+    out.writeInt(module.defs().size());
+    for (var def : module.defs()) {
+      declare(def.ref());
+      if (def instanceof FnDef) out.writeByte(DEF_FN);
+      else if (def instanceof DataDef data) {
+        out.writeByte(DEF_DATA);
+        out.writeInt(data.ctors().size());
+        for (var ctor : data.ctors()) declare(ctor.ref());
+      } else throw new UnwritableException("Unknown definition " + def.ref().name());
+    }
+    for (var def : module.defs()) {
+      if (def instanceof FnDef fn) fn(fn);
+      else if (def instanceof DataDef data) data(data);
+    }
+    var exports = module.exports();
+    out.writeInt(exports.size());
+    for (var entry : exports) {
+      path(entry.getKey());
+      out.writeInt(entry.getValue().size());
+      for (var export : entry.getValue()) {
+        out.writeUTF(export.getKey());
+        if (!(export.getValue() instanceof DefVar<?, ?> ref)) throw new UnwritableException("Unknown export " + export.getKey());
+        def(ref);
+      }
+    }
+  }
+
+  private void declare(@NotNull DefVar<?, ?> ref) throws IOException {
+    defs.put(ref, defs.size());
+    out.writeUTF(ref.name());
+  }
+
+  private void path(@NotNull SeqLike<String> path) throws IOException {
+    out.writeInt(path.size());
+    for (var name : path) out.writeUTF(name);
+  }
+
+  private void def(@NotNull DefVar<?, ?> ref) throws IOException {
+    var index = defs.get(ref);
+    if (index != null) {
+      out.writeByte(REF_LOCAL);
+      out.writeInt(index);
+      return;
+    }
+    var owner = table.owner(ref);
+    if (owner == null) throw new UnwritableException("Unknown definition " + ref.name());
+    out.writeByte(REF_FOREIGN);
+    out.writeUTF(owner._1);
+    out.writeUTF(owner._2);
+  }
+
+  private void var(@NotNull Var var) throws IOException {
+    if (var instanceof DefVar<?, ?> ref) {
+      out.writeByte(VAR_DEF);
+      def(ref);
+      return;
+    }
+    if (!(var instanceof LocalVar local)) throw new UnwritableException("Unknown variable " + var.name());
+    var index = vars.get(local);
+    if (index != null) {
+      out.writeByte(VAR_SEEN);
+      out.writeInt(index);
+    } else {
+      vars.put(local, vars.size());
+      out.writeByte(VAR_NEW);
+      out.writeUTF(local.name());
+    }
+  }
+
+  private void optionalVar(@Nullable LocalVar var) throws IOException {
+    out.writeBoolean(var != null);
+    if (var != null) var(var);
+  }
+
+  private void fn(@NotNull FnDef fn) throws IOException {
+    vars.clear();
+    params(fn.telescope());
+    term(fn.result());
+    var block = new ByteArrayOutputStream();
+    var writer = new CoreWriter(block, this);
+    var body = fn.body();
+    writer.out.writeBoolean(body.isLeft());
+    if (body.isLeft()) writer.term(body.getLeftValue());
+    else writer.clauses(body.getRightValue());
+    writer.out.flush();
+    var bytes = block.toByteArray();
+    var crc = new CRC32();
+    crc.update(bytes);
+    out.writeInt(bytes.length);
+    out.writeInt((int) crc.getValue());
+    out.write(bytes);
+  }
+
+  private void data(@NotNull DataDef data) throws IOException {
+    vars.clear();
+    params(data.telescope());
+    term(data.result());
+    for (var ctor : data.ctors()) {
+      params(ctor.conTelescope());
+      clauses(ctor.clauses());
+      out.writeBoolean(ctor.coerce());
+    }
+    out.writeInt(data.clauses().size());
+    for (var clause : data.clauses()) {
+      pat(clause.getKey());
+      out.writeInt(data.ctors().indexOf(clause.getValue()));
+    }
+  }
+
+  private void clauses(@NotNull SeqLike<Pat.Clause> clauses) throws IOException {
+    out.writeInt(clauses.size());
+    for (var clause : clauses) {
+      if (clause instanceof Pat.Clause.Match match) {
+        out.writeByte(CLAUSE_MATCH);
+        pats(match.patterns());
+        term(match.expr());
+      } else out.writeByte(CLAUSE_ABSURD);
+    }
+  }
+
+  private void pats(@NotNull SeqLike<Pat> pats) throws IOException {
+    out.writeInt(pats.size());
+    for (var pat : pats) pat(pat);
+  }
+
+  private void pat(@NotNull Pat pat) throws IOException {
+    if (pat instanceof Pat.Bind bind) {
+      out.writeByte(PAT_BIND);
+      var(bind.as());
+    } else if (pat instanceof Pat.Tuple tuple) {
+      out.writeByte(PAT_TUPLE);
+      pats(tuple.pats());
+      optionalVar(tuple.as());
+    } else if (pat instanceof Pat.Ctor ctor) {
+      out.writeByte(PAT_CTOR);
+      def(ctor.ref());
+      pats(ctor.params());
+      optionalVar(ctor.as());
+    }
+    out.writeBoolean(pat.explicit());
+    term(pat.type());
+  }
+
+  private void params(@NotNull SeqLike<Term.Param> params) throws IOException {
+    out.writeInt(params.size());
+    for (var param : params) param(param);
+  }
+
+  private void param(Term.@NotNull Param param) throws IOException {
+    var(param.ref());
+    out.writeBoolean(param.explicit());
+    term(param.type());
+  }
+
+  private void args(@NotNull SeqLike<? extends Arg<? extends Term>> args) throws IOException {
+    out.writeInt(args.size());
+    for (var arg : args) {
+      out.writeBoolean(arg.explicit());
+      term(arg.term());
+    }
+  }
+
+  private void term(@NotNull Term term) throws IOException {
+    if (term instanceof RefTerm ref) {
+      out.writeByte(TERM_REF);
+      var(ref.var());
+    } else if (term instanceof LamTerm lam) {
+      out.writeByte(TERM_LAM);
+      param(lam.param());
+      term(lam.body());
+    } else if (term instanceof PiTerm pi) {
+      out.writeByte(TERM_PI);
+      out.writeBoolean(pi.co());
+      param(pi.param());
+      term(pi.body());
+    } else if (term instanceof SigmaTerm sigma) {
+      out.writeByte(TERM_SIGMA);
+      out.writeBoolean(sigma.co());
+      params(sigma.params());
+      term(sigma.body());
+    } else if (term instanceof UnivTerm) {
+      // TODO[level]: levels are not implemented yet, every sort is omega
+      out.writeByte(TERM_UNIV);
+    } else if (term instanceof AppTerm.Apply app) {
+      out.writeByte(TERM_APP);
+      term(app.fn());
+      args(app.args());
+    } else if (term instanceof AppTerm.FnCall fnCall) {
+      out.writeByte(TERM_FN_CALL);
+      def(fnCall.fnRef());
+      args(fnCall.args());
+    } else if (term instanceof AppTerm.DataCall dataCall) {
+      out.writeByte(TERM_DATA_CALL);
+      def(dataCall.dataRef());
+      args(dataCall.args());
+    } else if (term instanceof AppTerm.ConCall conCall) {
+      out.writeByte(TERM_CON_CALL);
+      def(conCall.conHead());
+      args(conCall.dataArgs());
+      args(conCall.conArgs());
+    } else if (term instanceof TupTerm tup) {
+      out.writeByte(TERM_TUP);
+      out.writeInt(tup.items().size());
+      for (var item : tup.items()) term(item);
+    } else if (term instanceof ProjTerm proj) {
+      out.writeByte(TERM_PROJ);
+      term(proj.tup());
+      out.writeInt(proj.ix());
+    } else throw new UnwritableException("Cannot write " + term.getClass().getSimpleName());
+  }
+}
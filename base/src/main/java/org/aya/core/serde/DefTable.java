@@ -0,0 +1,78 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.serde;
+
+import org.aya.api.ref.DefVar;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.Def;
+import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.glavo.kala.collection.mutable.MutableMap;
+import org.glavo.kala.tuple.Tuple;
+import org.glavo.kala.tuple.Tuple2;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
+
+/**
+ * The definitions and fingerprints of the modules loaded in a session,
+ * so that references to the definitions of other modules can be written and read by name.
+ * It is shared by the modules loaded in parallel, so the methods are synchronized.
+ */
+public final class DefTable {
+  private final @NotNull MutableMap<String, Long> fingerprints = new MutableHashMap<>();
+  private final @NotNull MutableMap<String, MutableMap<String, DefVar<?, ?>>> defs = new MutableHashMap<>();
+  /** Definition to (module key, definition key) */
+  private final @NotNull IdentityHashMap<DefVar<?, ?>, Tuple2<String, String>> owners = new IdentityHashMap<>();
+
+  public static @NotNull String moduleKey(@NotNull Seq<String> path) {
+    return path.joinToString("::");
+  }
+
+  /** Constructors are qualified by their data types, as in the scope */
+  public static @NotNull String ctorKey(@NotNull DefVar<?, ?> dataRef, @NotNull DefVar<?, ?> ctorRef) {
+    return dataRef.name() + "::" + ctorRef.name();
+  }
+
+  /**
+   * @param fingerprint a hash of the source of the module and the fingerprints of its dependencies
+   */
+  public synchronized void register(@NotNull String module, long fingerprint, @NotNull Seq<Def> defs) {
+    fingerprints.put(module, fingerprint);
+    var table = this.defs.getOrPut(module, MutableHashMap::new);
+    for (var def : defs) {
+      register(module, table, def.ref().name(), def.ref());
+      if (def instanceof DataDef data) for (var ctor : data.ctors())
+        register(module, table, ctorKey(data.ref(), ctor.ref()), ctor.ref());
+    }
+  }
+
+  private void register(@NotNull String module, @NotNull MutableMap<String, DefVar<?, ?>> table, @NotNull String key, @NotNull DefVar<?, ?> ref) {
+    table.put(key, ref);
+    owners.put(ref, Tuple.of(module, key));
+  }
+
+  public synchronized @Nullable Long fingerprint(@NotNull String module) {
+    return fingerprints.getOrNull(module);
+  }
+
+  public synchronized @Nullable DefVar<?, ?> get(@NotNull String module, @NotNull String key) {
+    var table = defs.getOrNull(module);
+    return table == null ? null : table.getOrNull(key);
+  }
+
+  /** @return the definition registered now with the keys of the given one, which may be of an earlier load of its module */
+  @SuppressWarnings("unchecked")
+  public synchronized <Core, Concrete> @NotNull DefVar<Core, Concrete> current(@NotNull DefVar<Core, Concrete> ref) {
+    var owner = owners.get(ref);
+    if (owner == null) return ref;
+    var current = get(owner._1, owner._2);
+    return current != null ? (DefVar<Core, Concrete>) current : ref;
+  }
+
+  /** @return the module key and the definition key, or null if the definition is not from a registered module */
+  public synchronized @Nullable Tuple2<String, String> owner(@NotNull DefVar<?, ?> ref) {
+    return owners.get(ref);
+  }
+}
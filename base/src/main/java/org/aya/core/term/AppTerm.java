@@ -4,6 +4,7 @@ package org.aya.core.term;
 
 import org.aya.api.ref.DefVar;
 import org.aya.api.ref.Var;
+import org.aya.api.util.KernelCounter;
 import org.aya.concrete.Decl;
 import org.aya.core.def.DataDef;
 import org.aya.core.def.FnDef;
@@ -13,7 +14,9 @@ import org.aya.util.Decision;
 import org.glavo.kala.collection.Seq;
 import org.glavo.kala.collection.SeqLike;
 import org.glavo.kala.collection.SeqView;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
 import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.collection.mutable.MutableHashMap;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
@@ -30,25 +33,44 @@ public sealed interface AppTerm extends Term {
       holeApp.argsBuf().append(arg);
       return holeApp;
     }
-    if (!(f instanceof LamTerm lam)) return new Apply(f, arg);
+    if (!(f instanceof LamTerm lam)) return Apply.of(f, arg);
+    KernelCounter.BetaReduction.increment();
     var param = lam.param();
     return lam.body().subst(new Substituter.TermSubst(param.ref(), arg.term()));
   }
 
+  /**
+   * Consecutive lambdas are instantiated by one simultaneous substitution,
+   * so that the body is traversed once, and the remaining arguments are applied in one {@link Apply}.
+   */
   @Contract(pure = true) static @NotNull Term make(@NotNull Term f, @NotNull SeqLike<Arg<Term>> args) {
-    if (args.isEmpty()) return f;
-    if (f instanceof HoleApp holeApp) {
-      holeApp.argsBuf().appendAll(args.view());
-      return holeApp;
-    }
-    if (!(f instanceof LamTerm lam)) return make(new Apply(f, args.first()), args.view().drop(1));
-    return make(make(lam, args.first()), args.view().drop(1));
+    var size = args.size();
+    for (int i = 0; i < size; ) {
+      if (f instanceof HoleApp holeApp) {
+        holeApp.argsBuf().appendAll(args.view().drop(i));
+        return holeApp;
+      }
+      if (!(f instanceof LamTerm)) return Apply.of(f, args.view().drop(i).toImmutableSeq());
+      var subst = new Substituter.TermSubst(MutableHashMap.of());
+      while (f instanceof LamTerm lam && i < size) {
+        KernelCounter.BetaReduction.increment();
+        subst.put(lam.param().ref(), args.get(i++).term());
+        f = lam.body();
+      }
+      f = f.subst(subst);
+    }
+    return f;
   }
 
   record FnCall(
     @NotNull DefVar<FnDef, Decl.FnDecl> fnRef,
-    @NotNull SeqLike<Arg<@NotNull Term>> args
+    @NotNull SeqLike<Arg<@NotNull Term>> args,
+    @NotNull TermSummary summary
   ) implements AppTerm {
+    public FnCall(@NotNull DefVar<FnDef, Decl.FnDecl> fnRef, @NotNull SeqLike<Arg<@NotNull Term>> args) {
+      this(fnRef, args, TermSummary.ofArgs(fnRef, args));
+    }
+
     @Override public <P, R> R doAccept(@NotNull Visitor<P, R> visitor, P p) {
       return visitor.visitFnCall(this, p);
     }
@@ -70,8 +92,13 @@ public sealed interface AppTerm extends Term {
 
   record DataCall(
     @NotNull DefVar<DataDef, Decl.DataDecl> dataRef,
-    @NotNull SeqLike<Arg<@NotNull Term>> args
+    @NotNull SeqLike<Arg<@NotNull Term>> args,
+    @NotNull TermSummary summary
   ) implements AppTerm {
+    public DataCall(@NotNull DefVar<DataDef, Decl.DataDecl> dataRef, @NotNull SeqLike<Arg<@NotNull Term>> args) {
+      this(dataRef, args, TermSummary.ofArgs(dataRef, args));
+    }
+
     @Override public <P, R> R doAccept(@NotNull Visitor<P, R> visitor, P p) {
       return visitor.visitDataCall(this, p);
     }
@@ -93,8 +120,17 @@ public sealed interface AppTerm extends Term {
   record ConCall(
     @NotNull DefVar<DataDef.Ctor, Decl.DataCtor> conHead,
     @NotNull SeqLike<Arg<Term>> dataArgs,
-    @NotNull SeqLike<Arg<Term>> conArgs
+    @NotNull SeqLike<Arg<Term>> conArgs,
+    @NotNull TermSummary summary
   ) implements AppTerm {
+    public ConCall(
+      @NotNull DefVar<DataDef.Ctor, Decl.DataCtor> conHead,
+      @NotNull SeqLike<Arg<Term>> dataArgs,
+      @NotNull SeqLike<Arg<Term>> conArgs
+    ) {
+      this(conHead, dataArgs, conArgs, TermSummary.ofArgs(conHead, dataArgs.view().concat(conArgs.view())));
+    }
+
     @Override public <P, R> R doAccept(@NotNull Visitor<P, R> visitor, P p) {
       return visitor.visitConCall(this, p);
     }
@@ -123,10 +159,33 @@ public sealed interface AppTerm extends Term {
     }
   }
 
+  /**
+   * A head applied to all of its arguments at once, so the head and each argument are found in constant time.
+   * Applying an {@link Apply} to more arguments extends its arguments instead of nesting it,
+   * so the head is never an {@link Apply}.
+   * A head that is a {@link LamTerm} is a redex, which is reduced by {@link #make(Term, SeqLike)}.
+   *
+   * @author ice1000
+   */
   record Apply(
     @NotNull Term fn,
-    @NotNull Arg<@NotNull Term> arg
+    @NotNull ImmutableSeq<@NotNull Arg<@NotNull Term>> args,
+    @NotNull TermSummary summary
   ) implements AppTerm {
+    /** @return the application, with the arguments of an {@link Apply} head prepended to the given ones */
+    @Contract(pure = true)
+    public static @NotNull Apply of(@NotNull Term fn, @NotNull ImmutableSeq<@NotNull Arg<@NotNull Term>> args) {
+      if (fn instanceof Apply inner) {
+        args = inner.args.view().concat(args).toImmutableSeq();
+        fn = inner.fn;
+      }
+      return new Apply(fn, args, TermSummary.ofArgs(Apply.class, fn, args));
+    }
+
+    @Contract(pure = true) public static @NotNull Apply of(@NotNull Term fn, @NotNull Arg<@NotNull Term> arg) {
+      return of(fn, ImmutableSeq.of(arg));
+    }
+
     @Contract(pure = true) @Override public @NotNull Decision whnf() {
       if (fn() instanceof LamTerm) return Decision.NO;
       return fn().whnf();
@@ -139,11 +198,6 @@ public sealed interface AppTerm extends Term {
     @Override public <P, Q, R> R doAccept(@NotNull BiVisitor<P, Q, R> visitor, P p, Q q) {
       return visitor.visitApp(this, p, q);
     }
-
-    @Contract(" -> new")
-    @Override public @NotNull Seq<Arg<@NotNull Term>> args() {
-      return Seq.of(arg());
-    }
   }
 
   /**
@@ -157,6 +211,10 @@ public sealed interface AppTerm extends Term {
       this(var, Buffer.of());
     }
 
+    @Override public @NotNull TermSummary summary() {
+      return TermSummary.UNKNOWN;
+    }
+
     @Override public @NotNull Seq<Arg<Term>> args() {
       return argsBuf;
     }
@@ -9,7 +9,11 @@ import org.jetbrains.annotations.NotNull;
 /**
  * @author ice1000
  */
-public record LamTerm(@NotNull Term.Param param, @NotNull Term body) implements Term {
+public record LamTerm(@NotNull Term.Param param, @NotNull Term body, @NotNull TermSummary summary) implements Term {
+  public LamTerm(@NotNull Term.Param param, @NotNull Term body) {
+    this(param, body, TermSummary.of(LamTerm.class, param.type(), body));
+  }
+
   @Override public <P, R> R doAccept(@NotNull Visitor<P, R> visitor, P p) {
     return visitor.visitLam(this, p);
   }
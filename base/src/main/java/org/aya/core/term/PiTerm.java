@@ -10,7 +10,14 @@ import org.jetbrains.annotations.NotNull;
 /**
  * @author re-xyr, kiva, ice1000
  */
-public record PiTerm(boolean co, @NotNull Term.Param param, @NotNull Term body) implements Term {
+public record PiTerm(
+  boolean co, @NotNull Term.Param param, @NotNull Term body,
+  @NotNull TermSummary summary
+) implements Term {
+  public PiTerm(boolean co, @NotNull Term.Param param, @NotNull Term body) {
+    this(co, param, body, TermSummary.of(PiTerm.class, param.type(), body));
+  }
+
   @Override @Contract(pure = true) public @NotNull Decision whnf() {
     return Decision.YES;
   }
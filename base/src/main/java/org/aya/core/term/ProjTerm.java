@@ -10,6 +10,10 @@ import org.jetbrains.annotations.NotNull;
  * @author re-xyr
  */
 public record ProjTerm(@NotNull Term tup, int ix) implements Term {
+  @Override public @NotNull TermSummary summary() {
+    return tup.summary();
+  }
+
   @Override public <P, R> R doAccept(@NotNull Visitor<P, R> visitor, P p) {
     return visitor.visitProj(this, p);
   }
@@ -12,7 +12,11 @@ import org.jetbrains.annotations.NotNull;
 /**
  * @author ice1000
  */
-public record RefTerm(@NotNull Var var) implements Term {
+public record RefTerm(@NotNull Var var, @NotNull TermSummary summary) implements Term {
+  public RefTerm(@NotNull Var var) {
+    this(var, TermSummary.of(var));
+  }
+
   @Override public <P, R> R doAccept(@NotNull Visitor<P, R> visitor, P p) {
     return visitor.visitRef(this, p);
   }
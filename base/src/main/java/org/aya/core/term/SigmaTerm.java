@@ -10,7 +10,14 @@ import org.jetbrains.annotations.NotNull;
 /**
  * @author re-xyr
  */
-public record SigmaTerm(boolean co, @NotNull ImmutableSeq<@NotNull Param> params, @NotNull Term body) implements Term {
+public record SigmaTerm(
+  boolean co, @NotNull ImmutableSeq<@NotNull Param> params, @NotNull Term body,
+  @NotNull TermSummary summary
+) implements Term {
+  public SigmaTerm(boolean co, @NotNull ImmutableSeq<@NotNull Param> params, @NotNull Term body) {
+    this(co, params, body, TermSummary.ofParams(SigmaTerm.class, params, body));
+  }
+
   @Override @Contract(pure = true) public @NotNull Decision whnf() {
     return Decision.YES;
   }
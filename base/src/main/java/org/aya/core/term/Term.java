@@ -7,9 +7,11 @@ import org.aya.api.ref.Bind;
 import org.aya.api.ref.Var;
 import org.aya.api.util.NormalizeMode;
 import org.aya.core.pretty.TermPrettyConsumer;
+import org.aya.core.value.Evaluator;
 import org.aya.core.visitor.Normalizer;
 import org.aya.core.visitor.Stripper;
 import org.aya.core.visitor.Substituter;
+import org.aya.core.visitor.TermSize;
 import org.aya.generic.Arg;
 import org.aya.generic.ParamLike;
 import org.aya.pretty.doc.Doc;
@@ -18,6 +20,7 @@ import org.aya.tyck.MetaContext;
 import org.aya.tyck.sort.LevelSubst;
 import org.aya.util.Constants;
 import org.aya.util.Decision;
+import org.aya.util.JfrEvents;
 import org.glavo.kala.collection.Seq;
 import org.glavo.kala.collection.SeqLike;
 import org.glavo.kala.collection.immutable.ImmutableSeq;
@@ -49,6 +52,8 @@ public interface Term extends CoreTerm {
     return ret;
   }
   @Contract(pure = true) @NotNull Decision whnf();
+  /** @see TermSummary */
+  @NotNull TermSummary summary();
 
   default @NotNull Term subst(@NotNull Var var, @NotNull Term term) {
     return subst(new Substituter.TermSubst(var, term));
@@ -67,7 +72,8 @@ public interface Term extends CoreTerm {
   }
 
   @Override default @NotNull Term normalize(@NotNull NormalizeMode mode) {
-    return accept(Normalizer.INSTANCE, mode);
+    return JfrEvents.normalize(mode, () -> TermSize.of(this), () ->
+      mode == NormalizeMode.NBE ? Evaluator.normalize(this) : accept(Normalizer.INSTANCE, mode));
   }
 
   default @NotNull Doc toDoc() {
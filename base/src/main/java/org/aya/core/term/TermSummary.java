@@ -0,0 +1,98 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.term;
+
+import org.aya.api.ref.Var;
+import org.aya.generic.Arg;
+import org.glavo.kala.collection.SeqLike;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An over-approximation of what occurs in a term, built from the summaries of the children
+ * when a node is constructed, so that visitors can tell in constant time that a subterm is unaffected.
+ * Structurally equal terms have equal summaries, so it does not interfere with term equality.
+ *
+ * @param vars    a bloom filter of the variables referred to by {@link RefTerm}s
+ * @param hasHole whether there may be an {@link AppTerm.HoleApp}
+ * @param hasSort whether there may be a {@link UnivTerm}, which is subject to level substitution
+ * @param hash    a structural hash, computed from the head of the node and the hashes of the children
+ * @see org.aya.core.visitor.TermInterner
+ */
+public record TermSummary(long vars, boolean hasHole, boolean hasSort, int hash) {
+  public static final @NotNull TermSummary EMPTY = new TermSummary(0, false, false, 1);
+  public static final @NotNull TermSummary SORT = new TermSummary(0, false, true, 2);
+  /** For holes, whose arguments are mutable */
+  public static final @NotNull TermSummary UNKNOWN = new TermSummary(-1, true, true, 3);
+
+  /** Consistent with {@link Var#equals}, for {@link org.aya.ref.LocalVar}s are compared by name */
+  public static long bit(@NotNull Var var) {
+    return 1L << (var.hashCode() * 0x9E3779B9 >>> 26);
+  }
+
+  @Contract(pure = true) public static @NotNull TermSummary of(@NotNull Var var) {
+    return new TermSummary(bit(var), false, false, var.hashCode());
+  }
+
+  /** @param head what the node is besides its children, like its class or the definition it refers to */
+  @Contract(pure = true) public static @NotNull TermSummary of(@NotNull Object head, @NotNull Term a, @NotNull Term b) {
+    return new Builder(head).add(a).add(b).build();
+  }
+
+  @Contract(pure = true) public static @NotNull TermSummary of(@NotNull Object head, @NotNull SeqLike<? extends Term> terms) {
+    var builder = new Builder(head);
+    terms.forEach(builder::add);
+    return builder.build();
+  }
+
+  @Contract(pure = true)
+  public static @NotNull TermSummary ofArgs(@NotNull Object head, @NotNull SeqLike<? extends Arg<? extends Term>> args) {
+    var builder = new Builder(head);
+    args.forEach(arg -> builder.add(arg.term()));
+    return builder.build();
+  }
+
+  @Contract(pure = true) public static @NotNull TermSummary ofArgs(
+    @NotNull Object head, @NotNull Term fn,
+    @NotNull SeqLike<? extends Arg<? extends Term>> args
+  ) {
+    var builder = new Builder(head).add(fn);
+    args.forEach(arg -> builder.add(arg.term()));
+    return builder.build();
+  }
+
+  @Contract(pure = true)
+  public static @NotNull TermSummary ofParams(@NotNull Object head, @NotNull SeqLike<Term.Param> params, @NotNull Term body) {
+    var builder = new Builder(head);
+    params.forEach(param -> builder.add(param.type()));
+    return builder.add(body).build();
+  }
+
+  private static final class Builder {
+    private long vars = 0;
+    private boolean hasHole = false, hasSort = false;
+    private int hash;
+
+    private Builder(@NotNull Object head) {
+      hash = head.hashCode();
+    }
+
+    private @NotNull Builder add(@NotNull Term child) {
+      var summary = child.summary();
+      vars |= summary.vars;
+      hasHole |= summary.hasHole;
+      hasSort |= summary.hasSort;
+      hash = 31 * hash + summary.hash;
+      return this;
+    }
+
+    private @NotNull TermSummary build() {
+      return new TermSummary(vars, hasHole, hasSort, hash);
+    }
+  }
+
+  /** @return false if none of the variables in the bloom filter <code>bits</code> occurs */
+  @Contract(pure = true) public boolean mayContain(long bits) {
+    return (vars & bits) != 0;
+  }
+}
@@ -9,7 +9,11 @@ import org.jetbrains.annotations.NotNull;
 /**
  * @author re-xyr
  */
-public record TupTerm(@NotNull ImmutableSeq<Term> items) implements Term {
+public record TupTerm(@NotNull ImmutableSeq<Term> items, @NotNull TermSummary summary) implements Term {
+  public TupTerm(@NotNull ImmutableSeq<Term> items) {
+    this(items, TermSummary.of(TupTerm.class, items));
+  }
+
   @Override public <P, R> R doAccept(@NotNull Visitor<P, R> visitor, P p) {
     return visitor.visitTup(this, p);
   }
@@ -12,6 +12,10 @@ import org.jetbrains.annotations.NotNull;
 public record UnivTerm(@NotNull Sort sort) implements Term {
   public static final /*@NotNull*/ UnivTerm OMEGA = new UnivTerm(Sort.OMEGA);
 
+  @Override public @NotNull TermSummary summary() {
+    return TermSummary.SORT;
+  }
+
   @Override public <P, R> R doAccept(@NotNull Visitor<P, R> visitor, P p) {
     return visitor.visitUniv(this, p);
   }
@@ -0,0 +1,144 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.value;
+
+import org.aya.api.util.KernelCounter;
+import org.aya.core.pat.Pat;
+import org.aya.core.term.*;
+import org.aya.generic.Arg;
+import org.glavo.kala.collection.SeqLike;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.value.Ref;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Evaluates terms into {@link Value}s. Beta reduction extends the environment of a
+ * {@link Value.Closure} instead of substituting into the body, and arguments are evaluated
+ * only once no matter how many times they are used.
+ * Unfolding follows {@link org.aya.core.visitor.Unfolder}: clauses are tried in order,
+ * and a clause whose pattern meets a neutral value is skipped.
+ *
+ * @see Quoter
+ */
+public final class Evaluator implements Term.Visitor<Value.@Nullable Env, @NotNull Value> {
+  public static final @NotNull Evaluator INSTANCE = new Evaluator();
+
+  @Contract(pure = true) private Evaluator() {
+  }
+
+  /** The normal form of a term, computed by evaluating and then quoting it. */
+  public static @NotNull Term normalize(@NotNull Term term) {
+    return Quoter.quote(term.accept(INSTANCE, null));
+  }
+
+  public static @NotNull Value apply(@NotNull Value fn, @NotNull Arg<Value> arg) {
+    if (fn instanceof Value.Lam lam) {
+      KernelCounter.BetaReduction.increment();
+      return lam.closure().apply(arg.term());
+    }
+    if (fn instanceof Value.Neu neu) return neu.elim(new Value.Elim.App(arg));
+    throw new IllegalStateException("Applying a non-function value: " + fn);
+  }
+
+  public static @NotNull Value proj(@NotNull Value tup, int ix) {
+    if (tup instanceof Value.Tup t) return t.items().get(ix - 1);
+    if (tup instanceof Value.Neu neu) return neu.elim(new Value.Elim.Proj(ix));
+    throw new IllegalStateException("Projecting a non-tuple value: " + tup);
+  }
+
+  private @NotNull ImmutableSeq<Arg<Value>>
+  visitArgs(@NotNull SeqLike<? extends Arg<? extends Term>> args, Value.@Nullable Env env) {
+    return args.view().map(arg -> new Arg<>(arg.term().accept(this, env), arg.explicit())).toImmutableSeq();
+  }
+
+  @Override public @NotNull Value visitRef(@NotNull RefTerm term, Value.@Nullable Env env) {
+    var value = Value.Env.lookup(env, term.var());
+    return value != null ? value : new Value.Neu(new Value.Head.Ref(term.var()));
+  }
+
+  @Override public @NotNull Value visitLam(@NotNull LamTerm term, Value.@Nullable Env env) {
+    return new Value.Lam(new Value.Closure(env, term.param(), term.body()));
+  }
+
+  @Override public @NotNull Value visitPi(@NotNull PiTerm term, Value.@Nullable Env env) {
+    return new Value.Pi(term.co(), new Value.Closure(env, term.param(), term.body()));
+  }
+
+  @Override public @NotNull Value visitSigma(@NotNull SigmaTerm term, Value.@Nullable Env env) {
+    return new Value.Sigma(term.co(), env, term.params(), term.body());
+  }
+
+  @Override public @NotNull Value visitUniv(@NotNull UnivTerm term, Value.@Nullable Env env) {
+    return new Value.Univ(term.sort());
+  }
+
+  @Override public @NotNull Value visitApp(AppTerm.@NotNull Apply term, Value.@Nullable Env env) {
+    var fn = term.fn().accept(this, env);
+    for (var arg : term.args()) fn = apply(fn, new Arg<>(arg.term().accept(this, env), arg.explicit()));
+    return fn;
+  }
+
+  @Override public @NotNull Value visitFnCall(AppTerm.@NotNull FnCall fnCall, Value.@Nullable Env env) {
+    KernelCounter.Unfold.increment();
+    var def = fnCall.fnRef().core;
+    var args = visitArgs(fnCall.args(), env);
+    Value.Env defEnv = null;
+    for (var i = 0; i < args.size(); i++)
+      defEnv = new Value.Env(def.telescope().get(i).ref(), args.get(i).term(), defEnv);
+    var body = def.body();
+    if (body.isLeft()) return body.getLeftValue().accept(this, defEnv);
+    for (var clause : body.getRightValue()) {
+      if (!(clause instanceof Pat.Clause.Match matchy)) continue;
+      KernelCounter.ClauseMatch.increment();
+      var matchEnv = new Ref<>(defEnv);
+      if (matchList(matchy.patterns(), args.view().map(Arg::term), matchEnv))
+        return matchy.expr().accept(this, matchEnv.value);
+    }
+    return new Value.Neu(new Value.Head.Fn(fnCall.fnRef(), args));
+  }
+
+  private boolean matchList(@NotNull ImmutableSeq<Pat> pats, @NotNull SeqLike<Value> values, @NotNull Ref<Value.Env> env) {
+    assert pats.sizeEquals(values.size());
+    for (var i = 0; i < pats.size(); i++) if (!match(pats.get(i), values.get(i), env)) return false;
+    return true;
+  }
+
+  private boolean match(@NotNull Pat pat, @NotNull Value value, @NotNull Ref<Value.Env> env) {
+    if (pat instanceof Pat.Bind bind) {
+      env.value = new Value.Env(bind.as(), value, env.value);
+      return true;
+    }
+    if (pat instanceof Pat.Tuple tuple) {
+      if (!(value instanceof Value.Tup tup)) return false;
+      if (tuple.as() != null) env.value = new Value.Env(tuple.as(), value, env.value);
+      return matchList(tuple.pats(), tup.items(), env);
+    }
+    var ctor = (Pat.Ctor) pat;
+    if (!(value instanceof Value.Con con) || ctor.ref() != con.conHead()) return false;
+    if (ctor.as() != null) env.value = new Value.Env(ctor.as(), value, env.value);
+    return matchList(ctor.params(), con.conArgs().view().map(Arg::term), env);
+  }
+
+  @Override public @NotNull Value visitDataCall(AppTerm.@NotNull DataCall dataCall, Value.@Nullable Env env) {
+    return new Value.Data(dataCall.dataRef(), visitArgs(dataCall.args(), env));
+  }
+
+  @Override public @NotNull Value visitConCall(AppTerm.@NotNull ConCall conCall, Value.@Nullable Env env) {
+    return new Value.Con(conCall.conHead(), visitArgs(conCall.dataArgs(), env), visitArgs(conCall.conArgs(), env));
+  }
+
+  @Override public @NotNull Value visitTup(@NotNull TupTerm term, Value.@Nullable Env env) {
+    return new Value.Tup(term.items().map(item -> item.accept(this, env)));
+  }
+
+  @Override public @NotNull Value visitProj(@NotNull ProjTerm term, Value.@Nullable Env env) {
+    return proj(term.tup().accept(this, env), term.ix());
+  }
+
+  @Override public @NotNull Value visitHole(AppTerm.@NotNull HoleApp term, Value.@Nullable Env env) {
+    return visitArgs(term.argsBuf(), env).view().foldLeft(new Value.Neu(new Value.Head.Hole(term.var())),
+      (neu, arg) -> neu.elim(new Value.Elim.App(arg)));
+  }
+}
@@ -0,0 +1,92 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.value;
+
+import org.aya.core.term.*;
+import org.aya.generic.Arg;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads {@link Value}s back to normal {@link Term}s.
+ * Binders are opened with their original variables, as {@link org.aya.core.visitor.Normalizer} does.
+ *
+ * @see Evaluator
+ */
+public final class Quoter {
+  private Quoter() {
+  }
+
+  public static @NotNull Term quote(@NotNull Value value) {
+    if (value instanceof Value.Lam lam) {
+      var closure = lam.closure();
+      return new LamTerm(quoteParam(closure), quote(closure.apply(neutral(closure.param()))));
+    }
+    if (value instanceof Value.Pi pi) {
+      var closure = pi.closure();
+      return new PiTerm(pi.co(), quoteParam(closure), quote(closure.apply(neutral(closure.param()))));
+    }
+    if (value instanceof Value.Sigma sigma) {
+      var env = sigma.env();
+      var params = Buffer.<Term.Param>of();
+      for (var param : sigma.params()) {
+        params.append(new Term.Param(param.ref(), quote(param.type().accept(Evaluator.INSTANCE, env)), param.explicit()));
+        env = new Value.Env(param.ref(), neutral(param), env);
+      }
+      return new SigmaTerm(sigma.co(), params.toImmutableSeq(), quote(sigma.body().accept(Evaluator.INSTANCE, env)));
+    }
+    if (value instanceof Value.Univ univ) return new UnivTerm(univ.sort());
+    if (value instanceof Value.Tup tup) return new TupTerm(tup.items().map(Quoter::quote));
+    if (value instanceof Value.Data data) return new AppTerm.DataCall(data.dataRef(), quoteArgs(data.args()));
+    if (value instanceof Value.Con con)
+      return new AppTerm.ConCall(con.conHead(), quoteArgs(con.dataArgs()), quoteArgs(con.conArgs()));
+    var neu = (Value.Neu) value;
+    var spine = neu.spine().view();
+    Term head;
+    if (neu.head() instanceof Value.Head.Hole hole) {
+      // Applications directly on a hole go to its argument buffer, see AppTerm#make
+      var args = Buffer.<Arg<Term>>of();
+      for (var elim : neu.spine()) {
+        if (!(elim instanceof Value.Elim.App app)) break;
+        args.append(quoteArg(app.arg()));
+      }
+      spine = spine.drop(args.size());
+      head = new AppTerm.HoleApp(hole.var(), args);
+    } else if (neu.head() instanceof Value.Head.Fn fn) head = new AppTerm.FnCall(fn.fnRef(), quoteArgs(fn.args()));
+    else head = new RefTerm(((Value.Head.Ref) neu.head()).var());
+    // Consecutive applications make one spine, see AppTerm.Apply
+    var term = head;
+    var args = Buffer.<Arg<Term>>of();
+    for (var elim : spine) {
+      if (elim instanceof Value.Elim.App app) {
+        args.append(quoteArg(app.arg()));
+        continue;
+      }
+      term = new ProjTerm(apply(term, args), ((Value.Elim.Proj) elim).ix());
+      args = Buffer.of();
+    }
+    return apply(term, args);
+  }
+
+  private static @NotNull Term apply(@NotNull Term fn, @NotNull Buffer<Arg<Term>> args) {
+    return args.isEmpty() ? fn : AppTerm.Apply.of(fn, args.toImmutableSeq());
+  }
+
+  private static @NotNull Value neutral(Term.@NotNull Param param) {
+    return new Value.Neu(new Value.Head.Ref(param.ref()));
+  }
+
+  private static Term.@NotNull Param quoteParam(Value.@NotNull Closure closure) {
+    var param = closure.param();
+    return new Term.Param(param.ref(), quote(closure.paramType()), param.explicit());
+  }
+
+  private static @NotNull Arg<Term> quoteArg(@NotNull Arg<Value> arg) {
+    return new Arg<>(quote(arg.term()), arg.explicit());
+  }
+
+  private static @NotNull ImmutableSeq<Arg<Term>> quoteArgs(@NotNull ImmutableSeq<Arg<Value>> args) {
+    return args.map(Quoter::quoteArg);
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.value;
+
+import org.aya.api.ref.DefVar;
+import org.aya.api.ref.Var;
+import org.aya.concrete.Decl;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.FnDef;
+import org.aya.core.term.Term;
+import org.aya.generic.Arg;
+import org.aya.tyck.sort.Sort;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Semantic values used by normalization by evaluation.
+ * Binders are {@link Closure}s, stuck computations are {@link Neu}tral terms with a spine.
+ *
+ * @see Evaluator
+ * @see Quoter
+ */
+public sealed interface Value {
+  record Lam(@NotNull Closure closure) implements Value {
+  }
+
+  record Pi(boolean co, @NotNull Closure closure) implements Value {
+  }
+
+  /**
+   * Sigma types are telescopic, so we keep the environment and evaluate the types during quotation.
+   */
+  record Sigma(
+    boolean co,
+    @Nullable Env env,
+    @NotNull ImmutableSeq<Term.@NotNull Param> params,
+    @NotNull Term body
+  ) implements Value {
+  }
+
+  record Univ(@NotNull Sort sort) implements Value {
+  }
+
+  record Tup(@NotNull ImmutableSeq<@NotNull Value> items) implements Value {
+  }
+
+  record Data(
+    @NotNull DefVar<DataDef, Decl.DataDecl> dataRef,
+    @NotNull ImmutableSeq<@NotNull Arg<Value>> args
+  ) implements Value {
+  }
+
+  record Con(
+    @NotNull DefVar<DataDef.Ctor, Decl.DataCtor> conHead,
+    @NotNull ImmutableSeq<@NotNull Arg<Value>> dataArgs,
+    @NotNull ImmutableSeq<@NotNull Arg<Value>> conArgs
+  ) implements Value {
+  }
+
+  record Neu(@NotNull Head head, @NotNull ImmutableSeq<@NotNull Elim> spine) implements Value {
+    public Neu(@NotNull Head head) {
+      this(head, ImmutableSeq.empty());
+    }
+
+    @Contract("_ -> new") public @NotNull Neu elim(@NotNull Elim elim) {
+      return new Neu(head, spine.appended(elim));
+    }
+  }
+
+  /**
+   * The head of a neutral value.
+   */
+  sealed interface Head {
+    record Ref(@NotNull Var var) implements Head {
+    }
+
+    record Hole(@NotNull Var var) implements Head {
+    }
+
+    /** A function call where no clause matches. */
+    record Fn(
+      @NotNull DefVar<FnDef, Decl.FnDecl> fnRef,
+      @NotNull ImmutableSeq<@NotNull Arg<Value>> args
+    ) implements Head {
+    }
+  }
+
+  sealed interface Elim {
+    record App(@NotNull Arg<Value> arg) implements Elim {
+    }
+
+    record Proj(int ix) implements Elim {
+    }
+  }
+
+  /**
+   * A linked environment, {@code null} stands for the empty one.
+   */
+  record Env(@NotNull Var var, @NotNull Value value, @Nullable Env next) {
+    public static @Nullable Value lookup(@Nullable Env env, @NotNull Var var) {
+      for (; env != null; env = env.next)
+        if (env.var.equals(var)) return env.value;
+      return null;
+    }
+  }
+
+  record Closure(@Nullable Env env, Term.@NotNull Param param, @NotNull Term body) {
+    public @NotNull Value apply(@NotNull Value arg) {
+      return body.accept(Evaluator.INSTANCE, new Env(param.ref(), arg, env));
+    }
+
+    public @NotNull Value paramType() {
+      return param.type().accept(Evaluator.INSTANCE, env);
+    }
+  }
+}
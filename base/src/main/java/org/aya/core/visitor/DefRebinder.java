@@ -0,0 +1,99 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.visitor;
+
+import org.aya.api.ref.DefVar;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.Def;
+import org.aya.core.def.FnDef;
+import org.aya.core.pat.Pat;
+import org.aya.core.serde.DefTable;
+import org.aya.core.term.AppTerm;
+import org.aya.core.term.RefTerm;
+import org.aya.core.term.Term;
+import org.glavo.kala.collection.Map;
+import org.glavo.kala.collection.SeqLike;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.glavo.kala.tuple.Unit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Moves core definitions to other {@link DefVar}s, like when a declaration is parsed again
+ * (thus gets a new {@link DefVar}) but its checked definition is reused.
+ *
+ * @param map   from the old references to the new ones
+ * @param table the others are mapped to the definitions registered with the same keys, if any
+ * @see org.aya.tyck.order.TyckCache
+ */
+public record DefRebinder(
+  @NotNull Map<DefVar<?, ?>, DefVar<?, ?>> map,
+  @Nullable DefTable table
+) implements TermFixpoint<Unit> {
+  @SuppressWarnings("unchecked")
+  public <Core, Concrete> @NotNull DefVar<Core, Concrete> rebind(@NotNull DefVar<Core, Concrete> ref) {
+    var mapped = map.getOrNull(ref);
+    if (mapped != null) return (DefVar<Core, Concrete>) mapped;
+    return table != null ? table.current(ref) : ref;
+  }
+
+  public @NotNull Term term(@NotNull Term term) {
+    return term.accept(this, Unit.unit());
+  }
+
+  public @NotNull Def def(@NotNull Def def) {
+    if (def instanceof FnDef fn) return new FnDef(rebind(fn.ref()), params(fn.telescope()), term(fn.result()),
+      fn.body().map(this::term, clauses -> clauses.map(this::clause)));
+    if (def instanceof DataDef data) {
+      var dataRef = rebind(data.ref());
+      var ctors = data.ctors().view().map(ctor -> new DataDef.Ctor(dataRef, rebind(ctor.ref()),
+        params(ctor.conTelescope()), ctor.clauses().map(this::clause), ctor.coerce())).collect(Buffer.factory());
+      var clauses = MutableHashMap.<Pat, DataDef.Ctor>of();
+      data.clauses().forEach((pat, ctor) -> clauses.put(pat(pat), ctors.get(data.ctors().indexOf(ctor))));
+      return new DataDef(dataRef, params(data.telescope()), term(data.result()), ctors, clauses);
+    }
+    throw new IllegalArgumentException("Unknown definition " + def.ref().name());
+  }
+
+  private @NotNull ImmutableSeq<Term.Param> params(@NotNull SeqLike<Term.Param> params) {
+    return params.view().map(param -> new Term.Param(param.ref(), term(param.type()), param.explicit())).toImmutableSeq();
+  }
+
+  private Pat.@NotNull Clause clause(Pat.@NotNull Clause clause) {
+    if (!(clause instanceof Pat.Clause.Match match)) return clause;
+    return new Pat.Clause.Match(match.patterns().map(this::pat), term(match.expr()));
+  }
+
+  private @NotNull Pat pat(@NotNull Pat pat) {
+    if (pat instanceof Pat.Tuple tuple)
+      return new Pat.Tuple(tuple.explicit(), tuple.pats().map(this::pat), tuple.as(), term(tuple.type()));
+    if (pat instanceof Pat.Ctor ctor) return new Pat.Ctor(ctor.explicit(), rebind(ctor.ref()),
+      ctor.params().map(this::pat), ctor.as(), term(ctor.type()));
+    var bind = (Pat.Bind) pat;
+    return new Pat.Bind(bind.explicit(), bind.as(), term(bind.type()));
+  }
+
+  @Override public @NotNull Term visitRef(@NotNull RefTerm term, Unit unit) {
+    if (!(term.var() instanceof DefVar<?, ?> ref)) return term;
+    var rebound = rebind(ref);
+    return rebound == ref ? term : new RefTerm(rebound);
+  }
+
+  @Override public @NotNull Term visitFnCall(AppTerm.@NotNull FnCall fnCall, Unit unit) {
+    var args = fnCall.args().view().map(arg -> visitArg(arg, unit)).toImmutableSeq();
+    return new AppTerm.FnCall(rebind(fnCall.fnRef()), args);
+  }
+
+  @Override public @NotNull Term visitDataCall(AppTerm.@NotNull DataCall dataCall, Unit unit) {
+    var args = dataCall.args().view().map(arg -> visitArg(arg, unit)).toImmutableSeq();
+    return new AppTerm.DataCall(rebind(dataCall.dataRef()), args);
+  }
+
+  @Override public @NotNull Term visitConCall(AppTerm.@NotNull ConCall conCall, Unit unit) {
+    var dataArgs = conCall.dataArgs().view().map(arg -> visitArg(arg, unit)).toImmutableSeq();
+    var conArgs = conCall.conArgs().view().map(arg -> visitArg(arg, unit)).toImmutableSeq();
+    return new AppTerm.ConCall(rebind(conCall.conHead()), dataArgs, conArgs);
+  }
+}
@@ -16,13 +16,16 @@ public final class Normalizer implements Unfolder<NormalizeMode> {
 
   @Override
   public @NotNull Term visitApp(AppTerm.@NotNull Apply term, NormalizeMode mode) {
-    var fn = term.fn();
-    if (term.whnf() != Decision.NO) {
-      if (mode != NormalizeMode.NF) return term;
-      else return AppTerm.make(fn, visitArg(term.arg(), mode));
+    var head = term.fn();
+    if (head instanceof LamTerm) return AppTerm.make(head, term.args()).accept(this, mode);
+    if (head.whnf() == Decision.NO) {
+      var whnf = head.accept(this, NormalizeMode.WHNF);
+      if (whnf != head) return AppTerm.make(whnf, term.args()).accept(this, mode);
     }
-    if (fn instanceof LamTerm lam) return AppTerm.make(lam, term.arg()).accept(this, mode);
-    else return AppTerm.make(fn.accept(this, mode), term.arg()).accept(this, mode);
+    if (mode != NormalizeMode.NF) return term;
+    var args = term.args().map(arg -> visitArg(arg, mode));
+    if (args.sameElements(term.args(), true)) return term;
+    return AppTerm.make(head, args);
   }
 
   @Override
@@ -16,12 +16,17 @@ import org.jetbrains.annotations.NotNull;
  * @author ice1000
  */
 public final record Stripper(@NotNull MetaContext metaContext) implements TermFixpoint<Unit> {
+  @Override public boolean unchanged(@NotNull Term term, Unit emptyTuple) {
+    return !term.summary().hasHole();
+  }
+
   @Contract(pure = true) @Override public @NotNull Term visitHole(@NotNull AppTerm.HoleApp term, Unit emptyTuple) {
-    var sol = metaContext.solutions().getOption(term);
-    if (sol.isEmpty()) {
+    var sol = metaContext.metas().solution(term.var());
+    if (sol == null) {
       // TODO[ice]: unsolved meta
       throw new ExprTycker.TyckerException();
     }
-    return sol.get();
+    var args = term.argsBuf().view().map(arg -> visitArg(arg, emptyTuple));
+    return AppTerm.make(sol.accept(this, emptyTuple), args.toImmutableSeq());
   }
 }
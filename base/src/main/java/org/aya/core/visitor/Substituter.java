@@ -3,14 +3,18 @@
 package org.aya.core.visitor;
 
 import org.aya.api.ref.Var;
+import org.aya.api.util.KernelCounter;
 import org.aya.core.term.RefTerm;
 import org.aya.core.term.Term;
+import org.aya.core.term.TermSummary;
 import org.aya.tyck.sort.LevelSubst;
 import org.aya.tyck.sort.Sort;
+import org.glavo.kala.collection.mutable.Buffer;
 import org.glavo.kala.collection.mutable.MutableHashMap;
 import org.glavo.kala.collection.mutable.MutableMap;
 import org.glavo.kala.tuple.Unit;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This doesn't substitute references underlying function calls.
@@ -18,48 +22,141 @@ import org.jetbrains.annotations.NotNull;
  * @author ice1000
  */
 public record Substituter(
-  @NotNull TermSubst termSubst, @NotNull LevelSubst levelSubst) implements TermFixpoint<Unit> {
+  @NotNull TermSubst termSubst, @NotNull LevelSubst levelSubst, long vars
+) implements TermFixpoint<Unit> {
+  public Substituter(@NotNull TermSubst termSubst, @NotNull LevelSubst levelSubst) {
+    this(termSubst, levelSubst, termSubst.vars());
+  }
+
+  @Override public boolean unchanged(@NotNull Term term, Unit unused) {
+    KernelCounter.SubstituteNode.increment();
+    var summary = term.summary();
+    if (summary.mayContain(vars)) return false;
+    return !summary.hasSort() || levelSubst == LevelSubst.EMPTY;
+  }
+
   @Override public @NotNull Sort visitSort(@NotNull Sort sort, Unit unused) {
     return sort.substSort(levelSubst);
   }
 
   @Override public @NotNull Term visitRef(@NotNull RefTerm term, Unit unused) {
-    return termSubst.map.getOrDefault(term.var(), term);
+    if (unchanged(term, unused)) return term;
+    var subst = termSubst.get(term.var());
+    return subst != null ? subst : term;
   }
 
   /**
+   * A substitution. Composing it sequentially with another one ({@link #add}, {@link #subst})
+   * does not rewrite the existing values right away: the composed substitutions are kept as layers,
+   * and a value is brought up to date only when it is looked up, so building one is linear.
+   * <p>
+   * Since even {@link #get} updates the value in place, a substitution is confined to the thread using it,
+   * like the mutable map it replaces. They are built and used within one unfolding, matching or comparison,
+   * never shared by the declarations checked concurrently. {@link #EMPTY} is the exception: it is shared,
+   * but it has no value to update, so only the mutators must not be called on it.
+   *
    * @author ice1000
    */
-  public static record TermSubst(@NotNull MutableMap<@NotNull Var, @NotNull Term> map) {
+  public static final class TermSubst {
     // TODO[JDK-8247334]: uncomment when we move to JDK16
     public static final /*@NotNull*/ TermSubst EMPTY = new TermSubst(MutableHashMap.of());
 
+    private final @NotNull MutableMap<@NotNull Var, @NotNull Term> map;
+    /** Substitutions composed after the values were put, not yet applied to all of them */
+    private final @NotNull Buffer<@NotNull TermSubst> layers = Buffer.of();
+    /** Number of layers already applied to a value, absent means zero */
+    private final @NotNull MutableMap<@NotNull Var, @NotNull Integer> stamps = new MutableHashMap<>();
+
+    public TermSubst(@NotNull MutableMap<@NotNull Var, @NotNull Term> map) {
+      this.map = map;
+    }
+
     public TermSubst(@NotNull Var var, @NotNull Term term) {
       this(MutableHashMap.of(var, term));
     }
 
+    /** @return the bloom filter of the substituted variables, see {@link TermSummary} */
+    public long vars() {
+      var obj = new Object() {
+        long vars = 0;
+      };
+      map.forEach((var, term) -> obj.vars |= TermSummary.bit(var));
+      return obj.vars;
+    }
+
+    public boolean containsKey(@NotNull Var var) {
+      return map.containsKey(var);
+    }
+
+    public boolean isEmpty() {
+      return map.isEmpty();
+    }
+
+    public @Nullable Term get(@NotNull Var var) {
+      var term = map.getOrNull(var);
+      if (term == null) return null;
+      var stamp = stamps.getOrDefault(var, 0);
+      if (stamp == layers.size()) return term;
+      term = applyLayers(term, stamp);
+      map.put(var, term);
+      stamps.put(var, layers.size());
+      return term;
+    }
+
+    private @NotNull Term applyLayers(@NotNull Term term, int since) {
+      for (int i = since; i < layers.size(); i++) term = term.subst(layers.get(i));
+      return term;
+    }
+
+    /** @return the underlying map with all the composed substitutions applied */
+    public @NotNull MutableMap<@NotNull Var, @NotNull Term> map() {
+      if (layers.isEmpty()) return map;
+      map.replaceAll((var, term) -> applyLayers(term, stamps.getOrDefault(var, 0)));
+      layers.clear();
+      stamps.clear();
+      return map;
+    }
+
+    /**
+     * Extends this substitution in parallel, that is,
+     * the substituted term is not affected by the existing bindings.
+     */
+    public void put(@NotNull Var var, @NotNull Term term) {
+      map.put(var, term);
+      if (layers.isEmpty()) stamps.remove(var);
+      else stamps.put(var, layers.size());
+    }
+
+    /** Composes this substitution with the given one (sequentially) */
     public void subst(@NotNull TermSubst subst) {
-      if (map.isEmpty()) return;
-      map.replaceAll((var, term) -> term.subst(subst));
+      if (map.isEmpty() || subst.isEmpty()) return;
+      layers.append(subst.copy());
     }
 
     public void addAll(@NotNull TermSubst subst) {
-      map.putAll(subst.map);
+      subst.map().forEach(this::put);
     }
 
     public void add(@NotNull Var var, @NotNull Term term) {
       subst(new TermSubst(var, term));
-      map.put(var, term);
+      put(var, term);
     }
 
     public void add(@NotNull TermSubst subst) {
-      if (subst.map.isEmpty()) return;
-      subst(subst);
-      addAll(subst);
+      if (subst.isEmpty()) return;
+      var copy = subst.copy();
+      subst(copy);
+      addAll(copy);
+    }
+
+    private @NotNull TermSubst copy() {
+      return new TermSubst(MutableHashMap.from(map()));
     }
 
     public void clear() {
       map.clear();
+      layers.clear();
+      stamps.clear();
     }
   }
 }
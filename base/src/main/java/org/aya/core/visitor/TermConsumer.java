@@ -43,7 +43,7 @@ public interface TermConsumer<P> extends Term.Visitor<P, Unit> {
   }
 
   @Override default Unit visitApp(@NotNull AppTerm.Apply term, P p) {
-    visitArg(term.arg(), p);
+    term.args().forEach(arg -> visitArg(arg, p));
     return term.fn().accept(this, p);
   }
 
@@ -54,7 +54,7 @@ public interface TermConsumer<P> extends Term.Visitor<P, Unit> {
 
   @Override default Unit visitTup(@NotNull TupTerm term, P p) {
     term.items().forEach(item -> item.accept(this, p));
-    return term.accept(this, p);
+    return Unit.unit();
   }
 
   @Override default Unit visitProj(@NotNull ProjTerm term, P p) {
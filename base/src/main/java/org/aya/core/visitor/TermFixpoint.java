@@ -14,6 +14,14 @@ import java.util.function.BiFunction;
  * @author ice1000
  */
 public interface TermFixpoint<P> extends Term.Visitor<P, @NotNull Term> {
+  /**
+   * @return true if the term is known to be returned as-is, judging from its {@link org.aya.core.term.TermSummary},
+   * which saves the traversal of the whole subtree.
+   */
+  default boolean unchanged(@NotNull Term term, P p) {
+    return false;
+  }
+
   @Override default @NotNull Term visitHole(@NotNull AppTerm.HoleApp term, P p) {
     var args = term.argsBuf().view().map(arg -> visitArg(arg, p));
     if (!args.sameElements(term.argsBuf())) {
@@ -23,14 +31,16 @@ public interface TermFixpoint<P> extends Term.Visitor<P, @NotNull Term> {
   }
 
   @Override default @NotNull Term visitDataCall(@NotNull AppTerm.DataCall dataCall, P p) {
-    var args = dataCall.args().view().map(arg -> visitArg(arg, p));
+    if (unchanged(dataCall, p)) return dataCall;
+    var args = dataCall.args().view().map(arg -> visitArg(arg, p)).toImmutableSeq();
     if (dataCall.args().sameElements(args, true)) return dataCall;
     return new AppTerm.DataCall(dataCall.dataRef(), args);
   }
 
   @Override default @NotNull Term visitConCall(@NotNull AppTerm.ConCall conCall, P p) {
-    var dataArgs = conCall.dataArgs().view().map(arg -> visitArg(arg, p));
-    var conArgs = conCall.conArgs().view().map(arg -> visitArg(arg, p));
+    if (unchanged(conCall, p)) return conCall;
+    var dataArgs = conCall.dataArgs().view().map(arg -> visitArg(arg, p)).toImmutableSeq();
+    var conArgs = conCall.conArgs().view().map(arg -> visitArg(arg, p)).toImmutableSeq();
     if (conCall.dataArgs().sameElements(dataArgs, true)
       && conCall.conArgs().sameElements(conArgs, true)) return conCall;
     return new AppTerm.ConCall(conCall.conHead(), dataArgs, conArgs);
@@ -47,20 +57,24 @@ public interface TermFixpoint<P> extends Term.Visitor<P, @NotNull Term> {
   }
 
   @Override default @NotNull Term visitLam(@NotNull LamTerm term, P p) {
+    if (unchanged(term, p)) return term;
     return visitParameterized(term.param(), term.body(), p, term, LamTerm::new);
   }
 
   @Override default @NotNull Term visitUniv(@NotNull UnivTerm term, P p) {
+    if (unchanged(term, p)) return term;
     var sort = visitSort(term.sort(), p);
     if (sort == term.sort()) return term;
     return new UnivTerm(sort);
   }
 
   @Override default @NotNull Term visitPi(@NotNull PiTerm term, P p) {
+    if (unchanged(term, p)) return term;
     return visitParameterized(term.param(), term.body(), p, term, (a, t) -> new PiTerm(term.co(), a, t));
   }
 
   @Override default @NotNull Term visitSigma(@NotNull SigmaTerm term, P p) {
+    if (unchanged(term, p)) return term;
     var params = term.params().map(param ->
       new Term.Param(param.ref(), param.type().accept(this, p), param.explicit()));
     var body = term.body().accept(this, p);
@@ -83,25 +97,29 @@ public interface TermFixpoint<P> extends Term.Visitor<P, @NotNull Term> {
   }
 
   @Override default @NotNull Term visitApp(AppTerm.@NotNull Apply term, P p) {
+    if (unchanged(term, p)) return term;
     var function = term.fn().accept(this, p);
-    var arg = visitArg(term.arg(), p);
-    if (function == term.fn() && arg == term.arg()) return term;
-    return AppTerm.make(function, arg);
+    var args = term.args().view().map(arg -> visitArg(arg, p)).toImmutableSeq();
+    if (function == term.fn() && term.args().sameElements(args, true)) return term;
+    return AppTerm.make(function, args);
   }
 
   @Override default @NotNull Term visitFnCall(AppTerm.@NotNull FnCall fnCall, P p) {
-    var args = fnCall.args().view().map(arg -> visitArg(arg, p));
+    if (unchanged(fnCall, p)) return fnCall;
+    var args = fnCall.args().view().map(arg -> visitArg(arg, p)).toImmutableSeq();
     if (fnCall.args().sameElements(args, true)) return fnCall;
     return new AppTerm.FnCall(fnCall.fnRef(), args);
   }
 
   @Override default @NotNull Term visitTup(@NotNull TupTerm term, P p) {
+    if (unchanged(term, p)) return term;
     var items = term.items().map(x -> x.accept(this, p));
     if (term.items().sameElements(items, true)) return term;
     return new TupTerm(items);
   }
 
   @Override default @NotNull Term visitProj(@NotNull ProjTerm term, P p) {
+    if (unchanged(term, p)) return term;
     var tuple = term.tup().accept(this, p);
     if (tuple == term.tup()) return term;
     return new ProjTerm(tuple, term.ix());
@@ -0,0 +1,244 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.visitor;
+
+import org.aya.api.ref.Var;
+import org.aya.core.term.*;
+import org.aya.generic.Arg;
+import org.glavo.kala.collection.SeqLike;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.tuple.Unit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash-consing factory of core terms: interning two structurally equal terms
+ * (up to the identity of the variables in them) gives the same node,
+ * so that {@link org.aya.tyck.unify.TypedDefEq#compare} can decide them by reference.
+ * Children are interned first, so a node is looked up by the identities of its children
+ * and by the hash cached in its {@link TermSummary}, instead of walking the whole term.
+ * Interning a term whose subterms are already interned only looks up the new nodes.
+ * Holes are never interned since their argument buffers are mutable.
+ * <p>
+ * The {@link #INSTANCE} is shared by all the declarations and modules checked in the process,
+ * concurrently by the threads of {@link org.aya.tyck.order.TyckScheduler}.
+ * It only refers weakly to the interned nodes, so it keeps nothing alive that is no longer used.
+ *
+ * @see org.aya.tyck.TyckOptions#HASH_CONSING
+ */
+public final class TermInterner implements Term.Visitor<Unit, @NotNull Term> {
+  public static final @NotNull TermInterner INSTANCE = new TermInterner();
+  private final @NotNull ConcurrentHashMap<Key, Entry> table = new ConcurrentHashMap<>();
+  private final @NotNull ReferenceQueue<Term> collected = new ReferenceQueue<>();
+
+  public @NotNull Term intern(@NotNull Term term) {
+    if (term instanceof AppTerm.HoleApp) return term;
+    if (lookup(new Key(term)) == term) return term;
+    return term.accept(this, Unit.unit());
+  }
+
+  /** @return the number of interned nodes that are still alive, or not yet known to be collected */
+  public int size() {
+    expunge();
+    return table.size();
+  }
+
+  /**
+   * The head of a node and its children, which are compared by reference like the variables.
+   * The rest (classes, sorts, booleans and indices) are compared by equality.
+   */
+  private static final class Key {
+    private final Object @NotNull [] parts;
+    private final int hash;
+
+    private Key(@NotNull Term term) {
+      this.parts = parts(term);
+      this.hash = term.summary().hash();
+    }
+
+    private static boolean byReference(Object part) {
+      return part instanceof Term || part instanceof Var;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key key) || hash != key.hash || parts.length != key.parts.length) return false;
+      for (int i = 0; i < parts.length; i++) {
+        var part = parts[i];
+        if (byReference(part) ? part != key.parts[i] : !Objects.equals(part, key.parts[i])) return false;
+      }
+      return true;
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+  }
+
+  /** Removed from the table once its node is collected */
+  private static final class Entry extends WeakReference<Term> {
+    private final @NotNull Key key;
+
+    private Entry(@NotNull Term term, @NotNull Key key, @NotNull ReferenceQueue<Term> queue) {
+      super(term, queue);
+      this.key = key;
+    }
+  }
+
+  private static Object @NotNull [] parts(@NotNull Term term) {
+    var parts = new ArrayList<>();
+    parts.add(term.getClass());
+    if (term instanceof RefTerm ref) parts.add(ref.var());
+    else if (term instanceof LamTerm lam) {
+      param(lam.param(), parts);
+      parts.add(lam.body());
+    } else if (term instanceof PiTerm pi) {
+      parts.add(pi.co());
+      param(pi.param(), parts);
+      parts.add(pi.body());
+    } else if (term instanceof SigmaTerm sigma) {
+      parts.add(sigma.co());
+      parts.add(sigma.params().size());
+      sigma.params().forEach(param -> param(param, parts));
+      parts.add(sigma.body());
+    } else if (term instanceof UnivTerm univ) parts.add(univ.sort());
+    else if (term instanceof AppTerm.Apply app) {
+      parts.add(app.fn());
+      args(app.args(), parts);
+    } else if (term instanceof AppTerm.FnCall fnCall) {
+      parts.add(fnCall.fnRef());
+      args(fnCall.args(), parts);
+    } else if (term instanceof AppTerm.DataCall dataCall) {
+      parts.add(dataCall.dataRef());
+      args(dataCall.args(), parts);
+    } else if (term instanceof AppTerm.ConCall conCall) {
+      parts.add(conCall.conHead());
+      args(conCall.dataArgs(), parts);
+      args(conCall.conArgs(), parts);
+    } else if (term instanceof TupTerm tup) {
+      parts.add(tup.items().size());
+      tup.items().forEach(parts::add);
+    } else if (term instanceof ProjTerm proj) {
+      parts.add(proj.tup());
+      parts.add(proj.ix());
+    } else throw new IllegalArgumentException(term.getClass().getName());
+    return parts.toArray();
+  }
+
+  private static void param(Term.@NotNull Param param, @NotNull List<Object> parts) {
+    parts.add(param.ref());
+    parts.add(param.type());
+    parts.add(param.explicit());
+  }
+
+  private static void args(@NotNull SeqLike<? extends Arg<? extends Term>> args, @NotNull List<Object> parts) {
+    parts.add(args.size());
+    args.forEach(arg -> {
+      parts.add(arg.term());
+      parts.add(arg.explicit());
+    });
+  }
+
+  private @Nullable Term lookup(@NotNull Key key) {
+    var entry = table.get(key);
+    return entry == null ? null : entry.get();
+  }
+
+  /** @param term a node whose children are interned */
+  private @NotNull Term unique(@NotNull Term term) {
+    expunge();
+    var key = new Key(term);
+    while (true) {
+      var entry = table.get(key);
+      var existing = entry == null ? null : entry.get();
+      if (existing != null) return existing;
+      if (entry == null ? table.putIfAbsent(key, new Entry(term, key, collected)) == null
+        : table.replace(key, entry, new Entry(term, key, collected))) return term;
+    }
+  }
+
+  private void expunge() {
+    for (Entry entry; (entry = (Entry) collected.poll()) != null; ) table.remove(entry.key, entry);
+  }
+
+  private Term.@NotNull Param param(Term.@NotNull Param param) {
+    var type = intern(param.type());
+    if (type == param.type()) return param;
+    return new Term.Param(param.ref(), type, param.explicit());
+  }
+
+  private @NotNull ImmutableSeq<Arg<Term>> args(@NotNull SeqLike<? extends Arg<? extends Term>> args) {
+    return args.toImmutableSeq().map(arg -> new Arg<>(intern(arg.term()), arg.explicit()));
+  }
+
+  @Override public @NotNull Term visitRef(@NotNull RefTerm term, Unit unit) {
+    return unique(term);
+  }
+
+  @Override public @NotNull Term visitLam(@NotNull LamTerm term, Unit unit) {
+    var param = param(term.param());
+    var body = intern(term.body());
+    if (param == term.param() && body == term.body()) return unique(term);
+    return unique(new LamTerm(param, body));
+  }
+
+  @Override public @NotNull Term visitPi(@NotNull PiTerm term, Unit unit) {
+    var param = param(term.param());
+    var body = intern(term.body());
+    if (param == term.param() && body == term.body()) return unique(term);
+    return unique(new PiTerm(term.co(), param, body));
+  }
+
+  @Override public @NotNull Term visitSigma(@NotNull SigmaTerm term, Unit unit) {
+    var params = term.params().map(this::param);
+    var body = intern(term.body());
+    if (params.sameElements(term.params(), true) && body == term.body()) return unique(term);
+    return unique(new SigmaTerm(term.co(), params, body));
+  }
+
+  @Override public @NotNull Term visitUniv(@NotNull UnivTerm term, Unit unit) {
+    return unique(term);
+  }
+
+  @Override public @NotNull Term visitApp(AppTerm.@NotNull Apply term, Unit unit) {
+    var fn = intern(term.fn());
+    var args = args(term.args());
+    if (fn == term.fn() && args.view().map(Arg::term).sameElements(term.args().view().map(Arg::term), true))
+      return unique(term);
+    return unique(AppTerm.Apply.of(fn, args));
+  }
+
+  @Override public @NotNull Term visitFnCall(AppTerm.@NotNull FnCall fnCall, Unit unit) {
+    return unique(new AppTerm.FnCall(fnCall.fnRef(), args(fnCall.args())));
+  }
+
+  @Override public @NotNull Term visitDataCall(AppTerm.@NotNull DataCall dataCall, Unit unit) {
+    return unique(new AppTerm.DataCall(dataCall.dataRef(), args(dataCall.args())));
+  }
+
+  @Override public @NotNull Term visitConCall(AppTerm.@NotNull ConCall conCall, Unit unit) {
+    return unique(new AppTerm.ConCall(conCall.conHead(), args(conCall.dataArgs()), args(conCall.conArgs())));
+  }
+
+  @Override public @NotNull Term visitTup(@NotNull TupTerm term, Unit unit) {
+    var items = term.items().map(this::intern);
+    if (items.sameElements(term.items(), true)) return unique(term);
+    return unique(new TupTerm(items));
+  }
+
+  @Override public @NotNull Term visitProj(@NotNull ProjTerm term, Unit unit) {
+    var tup = intern(term.tup());
+    return unique(tup == term.tup() ? term : new ProjTerm(tup, term.ix()));
+  }
+
+  @Override public @NotNull Term visitHole(AppTerm.@NotNull HoleApp term, Unit unit) {
+    return term;
+  }
+}
@@ -0,0 +1,29 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core.visitor;
+
+import org.aya.api.ref.Var;
+import org.aya.core.term.Term;
+import org.glavo.kala.tuple.Unit;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Counts the nodes of a term, including the types of the binders.
+ */
+public final class TermSize implements VarConsumer<Unit> {
+  private int size = 0;
+
+  public static int of(@NotNull Term term) {
+    var counter = new TermSize();
+    term.accept(counter, Unit.unit());
+    return counter.size;
+  }
+
+  @Contract(mutates = "this") @Override public void traceEntrance(@NotNull Term term, Unit unit) {
+    size++;
+  }
+
+  @Override public void visitVar(Var usage, Unit unit) {
+  }
+}
@@ -3,8 +3,8 @@
 package org.aya.core.visitor;
 
 import org.aya.api.ref.Var;
+import org.aya.api.util.KernelCounter;
 import org.aya.core.pat.Pat;
-import org.aya.core.pat.PatMatcher;
 import org.aya.core.term.AppTerm;
 import org.aya.core.term.Term;
 import org.aya.generic.Arg;
@@ -16,6 +16,8 @@ import org.glavo.kala.tuple.Unit;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Objects;
+
 /**
  * @author ice1000
  */
@@ -30,6 +32,7 @@ public interface Unfolder<P> extends TermFixpoint<P> {
   }
 
   @Override default @NotNull Term visitFnCall(@NotNull AppTerm.FnCall fnCall, P p) {
+    KernelCounter.Unfold.increment();
     var def = fnCall.fnRef().core;
     var args = fnCall.args();
     // This shouldn't fail
@@ -38,17 +41,12 @@ public interface Unfolder<P> extends TermFixpoint<P> {
     var subst = buildSubst(def.telescope(), args);
     var body = def.body();
     if (body.isLeft()) return body.getLeftValue().subst(subst).accept(this, p);
-    var clauses = body.getRightValue();
-    for (var clause : clauses) {
-      if (!(clause instanceof Pat.Clause.Match matchy)) continue;
-      var termSubst = PatMatcher.tryBuildSubst(matchy.patterns(), args);
-      if (termSubst != null) {
-        subst.add(termSubst);
-        return matchy.expr().subst(subst);
-      }
-    }
+    var termSubst = new Substituter.TermSubst(new MutableHashMap<>());
+    var clause = Objects.requireNonNull(def.caseTree()).match(args, termSubst);
     // Unfold failed
-    return fnCall;
+    if (clause < 0) return fnCall;
+    subst.add(termSubst);
+    return ((Pat.Clause.Match) body.getRightValue().get(clause)).expr().subst(subst);
   }
 
   /**
@@ -16,10 +16,12 @@ import org.aya.core.def.Def;
 import org.aya.core.def.FnDef;
 import org.aya.core.term.*;
 import org.aya.core.visitor.Substituter;
+import org.aya.core.visitor.TermInterner;
 import org.aya.generic.Arg;
 import org.aya.pretty.doc.Doc;
 import org.aya.ref.LocalVar;
 import org.aya.tyck.error.BadTypeError;
+import org.aya.tyck.error.HoleBadSpineWarn;
 import org.aya.tyck.error.UnifyError;
 import org.aya.tyck.sort.Sort;
 import org.aya.tyck.trace.Trace;
@@ -47,6 +49,7 @@ public class ExprTycker implements Expr.BaseVisitor<Term, ExprTycker.Result> {
   public final @NotNull MetaContext metaContext;
   public final @NotNull MutableMap<Var, Term> localCtx;
   public Trace.@Nullable Builder traceBuilder = null;
+  private final @Nullable TermInterner interner = TyckOptions.HASH_CONSING ? TermInterner.INSTANCE : null;
 
   private void tracing(@NotNull Consumer<Trace.@NotNull Builder> consumer) {
     if (traceBuilder != null) consumer.accept(traceBuilder);
@@ -77,11 +80,27 @@ public class ExprTycker implements Expr.BaseVisitor<Term, ExprTycker.Result> {
     this.metaContext = metaContext;
   }
 
-  public @NotNull Result finalize(@NotNull Result result) {
-    return new Result(
+  public @NotNull Result finalize(@NotNull Result result) throws TyckInterruptedException {
+    var postponed = metaContext.postponed();
+    if (!postponed.isEmpty()) {
+      var failed = postponed.wakeAll(metaContext);
+      if (failed != null) {
+        metaContext.report(new UnifyError(failed.defeq().pos, failed.rhs(), failed.hole()));
+        throw new TyckInterruptedException();
+      }
+      var stuck = postponed.pending();
+      if (stuck.isNotEmpty()) {
+        stuck.forEach(c -> {
+          metaContext.report(new HoleBadSpineWarn(c.hole(), c.defeq().pos));
+          metaContext.report(new UnifyError(c.defeq().pos, c.rhs(), c.hole()));
+        });
+        throw new TyckInterruptedException();
+      }
+    }
+    return intern(new Result(
       result.wellTyped.strip(metaContext),
       result.type.strip(metaContext)
-    );
+    ));
   }
 
   public @NotNull Result checkExpr(@NotNull Expr expr, @Nullable Term type) throws TyckInterruptedException {
@@ -148,7 +167,7 @@ public class ExprTycker implements Expr.BaseVisitor<Term, ExprTycker.Result> {
           telescopes._2.view().map(Term.Param::toArg));
         var tele = Def.defTele(conVar);
         var type = PiTerm.make(false, tele, Def.defResult(conVar));
-        return new Result(LamTerm.make(tele, body), type);
+        return intern(new Result(LamTerm.make(tele, body), type));
       } else {
         final var msg = "Def var `" + var.name() + "` has core `" + defVar.core + "` which we don't know.";
         throw new IllegalStateException(msg);
@@ -167,7 +186,17 @@ public class ExprTycker implements Expr.BaseVisitor<Term, ExprTycker.Result> {
     // ice: should we rename the vars in this telescope? Probably not.
     var body = function.apply(defVar, tele.view().map(Term.Param::toArg));
     var type = PiTerm.make(false, tele, Def.defResult(defVar));
-    return new Result(LamTerm.make(tele, body), type);
+    return intern(new Result(LamTerm.make(tele, body), type));
+  }
+
+  /**
+   * References to the same definition are elaborated to the same nodes when hash-consing is enabled,
+   * so that unifying them is trivial, and so are the checked terms, which share their subterms
+   * with the ones of the other declarations.
+   */
+  private @NotNull Result intern(@NotNull Result result) {
+    if (interner == null) return result;
+    return new Result(interner.intern(result.wellTyped), interner.intern(result.type));
   }
 
   private boolean unifyTy(Term upper, Term lower, Expr loc) {
@@ -258,7 +287,7 @@ public class ExprTycker implements Expr.BaseVisitor<Term, ExprTycker.Result> {
 
   @Rule.Synth @Override public Result visitApp(Expr.@NotNull AppExpr expr, @Nullable Term term) {
     var f = expr.function().accept(this, null);
-    var resultTerm = f.wellTyped;
+    var args = Buffer.<Arg<Term>>of();
     if (!(f.type instanceof PiTerm piTerm)) return wantButNo(expr, f.type, "pi type");
     var pi = piTerm;
     var subst = new Substituter.TermSubst(new MutableHashMap<>());
@@ -280,7 +309,7 @@ public class ExprTycker implements Expr.BaseVisitor<Term, ExprTycker.Result> {
         // TODO[ice]: no implicit argument expected, but inserted.
         throw new TyckerException();
       }
-      resultTerm = AppTerm.make(resultTerm, newArg);
+      args.append(newArg);
       // so, in the end, the pi term is not updated, its body would be the eliminated type
       if (iter.hasNext()) {
         subst.add(param.ref(), newArg.term());
@@ -288,7 +317,7 @@ public class ExprTycker implements Expr.BaseVisitor<Term, ExprTycker.Result> {
         else wantButNo(expr, pi.body(), "pi type");
       }
     }
-    return new Result(resultTerm, pi.body());
+    return new Result(AppTerm.make(f.wellTyped, args), pi.body());
   }
 
   @Rule.Check(partialSynth = true)
@@ -327,12 +356,10 @@ public class ExprTycker implements Expr.BaseVisitor<Term, ExprTycker.Result> {
           items.append(result.wellTyped);
           var ref = againstTele.first().ref();
           resultTele.append(new Term.Param(ref, result.type, againstTele.first().explicit()));
-          againstTele = againstTele.drop(1);
-          if (!againstTele.isEmpty()) {
-            final var subst = new Substituter.TermSubst(ref, result.wellTyped);
-            againstTele = againstTele.map(param -> param.subst(subst));
-            last = last.subst(subst);
-          }
+          final var subst = new Substituter.TermSubst(ref, result.wellTyped);
+          againstTele = againstTele.drop(1).map(param -> param.subst(subst)).toImmutableSeq().view();
+          // the last field may depend on all the others
+          last = last.subst(subst);
         }
       }
     }
@@ -4,24 +4,44 @@ package org.aya.tyck;
 
 import org.aya.api.error.Problem;
 import org.aya.api.error.Reporter;
-import org.aya.core.term.AppTerm;
-import org.aya.core.term.Term;
 import org.aya.tyck.sort.LevelEqn;
+import org.aya.tyck.unify.Postponed;
 import org.glavo.kala.collection.mutable.Buffer;
-import org.glavo.kala.collection.mutable.MutableHashMap;
-import org.glavo.kala.collection.mutable.MutableMap;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.function.BooleanSupplier;
+
 public record MetaContext(
   @NotNull Reporter reporter,
   LevelEqn.@NotNull Set levelEqns,
-  MutableMap<AppTerm.HoleApp, Term> solutions
+  @NotNull MetaStore metas,
+  @NotNull Postponed postponed
 ) {
   public MetaContext(@NotNull Reporter reporter) {
-    this(reporter, new LevelEqn.Set(Buffer.of(), Buffer.of()), new MutableHashMap<>());
+    this(reporter, new LevelEqn.Set(Buffer.of(), Buffer.of()), new MetaStore(), new Postponed());
   }
 
   public void report(@NotNull Problem problem) {
     reporter.report(problem);
   }
+
+  /**
+   * Runs a speculative unification: if it fails (or throws), the metas it solved
+   * and the constraints it postponed or woke are restored to what they were before.
+   */
+  public boolean attempt(@NotNull BooleanSupplier unify) {
+    var mark = metas.mark();
+    var snapshot = postponed.snapshot();
+    var ok = false;
+    try {
+      ok = unify.getAsBoolean();
+    } finally {
+      if (ok) metas.commit(mark);
+      else {
+        metas.rollback(mark);
+        postponed.restore(snapshot);
+      }
+    }
+    return ok;
+  }
 }
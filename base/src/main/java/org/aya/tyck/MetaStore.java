@@ -0,0 +1,152 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.tyck;
+
+import org.aya.api.ref.Var;
+import org.aya.api.util.KernelCounter;
+import org.aya.core.term.AppTerm;
+import org.aya.core.term.Term;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Solutions of the metavariables (holes) of a declaration.
+ * A meta is identified by (the identity of) the {@link AppTerm.HoleApp#var()},
+ * which is given a dense id when first seen, and its solution lives in an array slot.
+ * A meta solved to another meta is merged into it (union-find), and the changes can be
+ * undone to a {@link #mark()} for speculative unification.
+ */
+public final class MetaStore {
+  private final @NotNull IdentityHashMap<@NotNull Var, @NotNull Integer> ids = new IdentityHashMap<>();
+  private @Nullable Term @NotNull [] solutions = new Term[16];
+  /** Union-find parents, a root is its own parent */
+  private int @NotNull [] parents = new int[16];
+  private int size = 0;
+  /** Undo log of slot writes: (id, old parent, old solution), only kept when there are marks */
+  private int @NotNull [] trailIds = new int[16];
+  private int @NotNull [] trailParents = new int[16];
+  private @Nullable Term @NotNull [] trailSolutions = new Term[16];
+  private int trailSize = 0;
+  private int marks = 0;
+
+  public int size() {
+    return size;
+  }
+
+  public int id(@NotNull Var meta) {
+    var id = ids.get(meta);
+    if (id != null) return id;
+    if (size == parents.length) {
+      parents = Arrays.copyOf(parents, size * 2);
+      solutions = Arrays.copyOf(solutions, size * 2);
+    }
+    parents[size] = size;
+    ids.put(meta, size);
+    return size++;
+  }
+
+  /** @return the representative of the meta, compressing the path to it */
+  private int find(int id) {
+    var root = id;
+    while (parents[root] != root) root = parents[root];
+    while (parents[id] != root) {
+      var next = parents[id];
+      write(id, root, solutions[id]);
+      id = next;
+    }
+    return root;
+  }
+
+  private void write(int id, int parent, @Nullable Term solution) {
+    if (marks > 0) {
+      if (trailSize == trailIds.length) {
+        trailIds = Arrays.copyOf(trailIds, trailSize * 2);
+        trailParents = Arrays.copyOf(trailParents, trailSize * 2);
+        trailSolutions = Arrays.copyOf(trailSolutions, trailSize * 2);
+      }
+      trailIds[trailSize] = id;
+      trailParents[trailSize] = parents[id];
+      trailSolutions[trailSize++] = solutions[id];
+    }
+    parents[id] = parent;
+    solutions[id] = solution;
+  }
+
+  /** @return the id of the representative of the meta */
+  public int root(@NotNull Var meta) {
+    return find(id(meta));
+  }
+
+  public @Nullable Term solution(@NotNull Var meta) {
+    var id = ids.get(meta);
+    return id == null ? null : solutions[find(id)];
+  }
+
+  public boolean isSolved(@NotNull Var meta) {
+    return solution(meta) != null;
+  }
+
+  /**
+   * A meta that is already solved keeps its solution, which is unified with the new one instead.
+   *
+   * @param solution a function of the arguments of the hole, or another hole applied to nothing,
+   *                 in which case the two metas are merged
+   * @param unify    tells if the existing solution of the meta is equal to the new one
+   * @return the id of the slot that was written, which was a representative before,
+   * or -1 if the meta is already solved to something else
+   */
+  public int solve(@NotNull Var meta, @NotNull Term solution, @NotNull Predicate<@NotNull Term> unify) {
+    KernelCounter.MetaSolution.increment();
+    var root = find(id(meta));
+    var existing = solutions[root];
+    if (solution instanceof AppTerm.HoleApp hole && hole.args().isEmpty()) {
+      var other = find(id(hole.var()));
+      if (other == root) return root;
+      if (existing == null) {
+        write(root, other, null);
+        return root;
+      }
+      if (solutions[other] == null || unify.test(existing)) {
+        write(other, root, null);
+        return other;
+      }
+      return -1;
+    }
+    if (existing != null) return unify.test(existing) ? root : -1;
+    write(root, root, solution);
+    return root;
+  }
+
+  /** Starts recording the changes, pass the result to {@link #rollback} or {@link #commit} */
+  @Contract(mutates = "this") public int mark() {
+    marks++;
+    return trailSize;
+  }
+
+  /** Undoes every change made after the mark */
+  public void rollback(int mark) {
+    while (trailSize > mark) {
+      var i = --trailSize;
+      parents[trailIds[i]] = trailParents[i];
+      solutions[trailIds[i]] = trailSolutions[i];
+      trailSolutions[i] = null;
+    }
+    release();
+  }
+
+  /** Keeps the changes made after the mark */
+  public void commit(int mark) {
+    release();
+  }
+
+  private void release() {
+    if (--marks > 0) return;
+    Arrays.fill(trailSolutions, 0, trailSize, null);
+    trailSize = 0;
+  }
+}
@@ -10,4 +10,6 @@ package org.aya.tyck;
  */
 public final class TyckOptions {
   public static boolean TYPE_IN_TYPE = true;
+  /** @see org.aya.core.visitor.TermInterner */
+  public static boolean HASH_CONSING = false;
 }
@@ -16,7 +16,11 @@ public record HoleBadSpineWarn(
   @NotNull SourcePos sourcePos
 ) implements Problem {
   @Override public @NotNull Doc describe() {
-    return Doc.plain("Can't perform pattern unification on hole with spine " + term.args() + ".");
+    return Doc.hcat(
+      Doc.plain("Can't perform pattern unification on the hole application `"),
+      term.toDoc(),
+      Doc.plain("`, its spine is not a pattern.")
+    );
   }
 
   @Override public @NotNull Problem.Severity level() {
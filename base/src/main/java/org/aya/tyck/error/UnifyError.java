@@ -3,16 +3,21 @@
 package org.aya.tyck.error;
 
 import org.aya.api.error.Problem;
+import org.aya.api.error.SourcePos;
 import org.aya.concrete.Expr;
 import org.aya.core.term.Term;
 import org.aya.pretty.doc.Doc;
 import org.jetbrains.annotations.NotNull;
 
 public record UnifyError(
-  @NotNull Expr expr,
+  @NotNull SourcePos sourcePos,
   @NotNull Term expected,
   @NotNull Term actual
-) implements Problem.Error, TyckProblem {
+) implements Problem.Error {
+  public UnifyError(@NotNull Expr expr, @NotNull Term expected, @NotNull Term actual) {
+    this(expr.sourcePos(), expected, actual);
+  }
+
   @Override public @NotNull Doc describe() {
     return Doc.hcat(
       Doc.plain("The expected type `"),
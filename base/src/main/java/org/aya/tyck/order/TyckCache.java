@@ -0,0 +1,62 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.tyck.order;
+
+import org.aya.core.def.Def;
+import org.aya.core.serde.DefTable;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.glavo.kala.collection.mutable.MutableMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The checked definitions of the previous run on (an earlier version of) a module,
+ * keyed by the names of the declarations. A declaration is checked again only if its fingerprint,
+ * which covers its syntax and the fingerprints of its dependencies, changed.
+ * Definitions of other modules are identified by their keys in the {@link DefTable},
+ * the declarations referring to definitions not in the table are always checked again.
+ * The declarations that had problems are not kept either, since the positions of the problems may have moved.
+ *
+ * @see TyckScheduler#tyck(ImmutableSeq, org.aya.api.error.Reporter, org.aya.tyck.trace.Trace.Builder, TyckCache)
+ */
+public final class TyckCache {
+  public static record Entry(long fingerprint, @NotNull Def def) {
+  }
+
+  private final @Nullable DefTable table;
+  private final @NotNull MutableMap<String, Entry> entries = new MutableHashMap<>();
+  private int reused = 0;
+
+  public TyckCache() {
+    this(null);
+  }
+
+  /** @param table where the modules imported by the checked module are registered */
+  public TyckCache(@Nullable DefTable table) {
+    this.table = table;
+  }
+
+  public @Nullable DefTable table() {
+    return table;
+  }
+
+  public @Nullable Entry get(@NotNull String name) {
+    return entries.getOrNull(name);
+  }
+
+  /** @param newEntries null for the declarations not to be kept */
+  void update(@NotNull ImmutableSeq<String> names, @NotNull ImmutableSeq<@Nullable Entry> newEntries, int reused) {
+    entries.clear();
+    names.forEachIndexed((i, name) -> {
+      var entry = newEntries.get(i);
+      if (entry != null) entries.put(name, entry);
+    });
+    this.reused = reused;
+  }
+
+  /** @return the number of definitions reused by the last run */
+  public int reused() {
+    return reused;
+  }
+}
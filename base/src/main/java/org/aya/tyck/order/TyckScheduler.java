@@ -0,0 +1,285 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.tyck.order;
+
+import org.aya.api.error.CollectReporter;
+import org.aya.api.error.Reporter;
+import org.aya.api.ref.DefVar;
+import org.aya.concrete.Decl;
+import org.aya.concrete.visitor.DeclHasher;
+import org.aya.concrete.visitor.DeclRefFinder;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.Def;
+import org.aya.core.serde.DefTable;
+import org.aya.core.visitor.DefRebinder;
+import org.aya.tyck.trace.Trace;
+import org.aya.util.cancel.CancellationIndicator;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.glavo.kala.collection.mutable.MutableMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Type checks the top-level declarations of a module by strongly connected components
+ * of their (concrete) dependency graph. Independent components are checked concurrently
+ * on a work-stealing pool, the declarations inside one component are checked in source order.
+ * Every declaration gets its own {@link org.aya.tyck.StmtTycker} (thus its own expr tycker and meta context),
+ * and problems are replayed to the real reporter in source order, so the output is deterministic.
+ * A component only starts after the ones it depends on complete, which also
+ * safely publishes their {@link DefVar#core} and signatures to it.
+ * <p>
+ * With a {@link TyckCache}, every component gets a fingerprint out of the syntax of its members
+ * and the fingerprints of the components it depends on, and the ones whose fingerprints did not change
+ * since the last run are not checked again, their definitions are moved to the new references instead.
+ */
+public final class TyckScheduler {
+  private final @NotNull ImmutableSeq<Decl> decls;
+  private final @NotNull MutableMap<DefVar<?, ?>, Integer> indices = new MutableHashMap<>();
+  private final int @NotNull [][] edges;
+  private final int @NotNull [] dfn;
+  private final int @NotNull [] low;
+  private final int @NotNull [] stack;
+  private final boolean @NotNull [] inStack;
+  /** the definitions of other modules referred to */
+  private final @NotNull DefVar<?, ?> @NotNull [] @NotNull [] foreign;
+  /** SCCs in reverse topological order (dependencies come first), members in source order */
+  private final @NotNull Buffer<int[]> sccs = Buffer.of();
+  private int counter = 0;
+  private int top = 0;
+
+  private TyckScheduler(@NotNull ImmutableSeq<Decl> decls) {
+    this.decls = decls;
+    var size = decls.size();
+    edges = new int[size][];
+    dfn = new int[size];
+    low = new int[size];
+    stack = new int[size];
+    inStack = new boolean[size];
+    foreign = new DefVar<?, ?>[size][];
+    decls.forEachIndexed((i, decl) -> {
+      indices.put(decl.ref(), i);
+      ctors(decl).forEach(ctor -> indices.put(ctor.ref, i));
+    });
+  }
+
+  private static @NotNull ImmutableSeq<Decl.DataCtor> ctors(@NotNull Decl decl) {
+    if (!(decl instanceof Decl.DataDecl data)) return ImmutableSeq.of();
+    return data.body.fold(Decl.DataDecl.Ctors::ctors, clauses -> clauses.clauses().map(clause -> clause._2));
+  }
+
+  /**
+   * @param builder tracing needs a single thread, so the components are checked sequentially if present
+   * @return the core definitions, in the same order as the given declarations
+   */
+  public static @NotNull ImmutableSeq<Def> tyck(
+    @NotNull ImmutableSeq<Decl> decls,
+    @NotNull Reporter reporter,
+    Trace.@Nullable Builder builder
+  ) {
+    return tyck(decls, reporter, builder, null);
+  }
+
+  /**
+   * @param cache updated if all the declarations are checked without exceptions
+   * @see #tyck(ImmutableSeq, Reporter, Trace.Builder)
+   */
+  public static @NotNull ImmutableSeq<Def> tyck(
+    @NotNull ImmutableSeq<Decl> decls,
+    @NotNull Reporter reporter,
+    Trace.@Nullable Builder builder,
+    @Nullable TyckCache cache
+  ) {
+    return tyck(decls, reporter, builder, cache, null);
+  }
+
+  /**
+   * @param indicator checked before every declaration
+   * @throws org.aya.util.cancel.CancellationException if canceled, and the cache is not updated
+   * @see #tyck(ImmutableSeq, Reporter, Trace.Builder, TyckCache)
+   */
+  public static @NotNull ImmutableSeq<Def> tyck(
+    @NotNull ImmutableSeq<Decl> decls,
+    @NotNull Reporter reporter,
+    Trace.@Nullable Builder builder,
+    @Nullable TyckCache cache,
+    @Nullable CancellationIndicator indicator
+  ) {
+    var executor = builder != null || decls.size() <= 1 || ForkJoinPool.getCommonPoolParallelism() < 2
+      ? (Executor) Runnable::run : ForkJoinPool.commonPool();
+    return new TyckScheduler(decls).run(executor, reporter, builder, cache, indicator);
+  }
+
+  private int @NotNull [] dependencies(int i) {
+    var refs = Buffer.<DefVar<?, ?>>of();
+    decls.get(i).accept(DeclRefFinder.INSTANCE, refs);
+    foreign[i] = refs.stream()
+      .filter(ref -> !indices.containsKey(ref))
+      .distinct()
+      .toArray(DefVar<?, ?>[]::new);
+    return refs.stream()
+      .mapToInt(ref -> indices.getOrDefault(ref, -1))
+      .filter(j -> j >= 0 && j != i)
+      .distinct()
+      .toArray();
+  }
+
+  /** Tarjan's algorithm, note that {@link #dfn} starts from 1 so that 0 means unvisited */
+  private void visit(int i) {
+    dfn[i] = low[i] = ++counter;
+    stack[top++] = i;
+    inStack[i] = true;
+    edges[i] = dependencies(i);
+    for (var j : edges[i]) {
+      if (dfn[j] == 0) {
+        visit(j);
+        low[i] = Math.min(low[i], low[j]);
+      } else if (inStack[j]) low[i] = Math.min(low[i], dfn[j]);
+    }
+    if (low[i] != dfn[i]) return;
+    var bottom = top;
+    while (stack[--bottom] != i) inStack[stack[bottom]] = false;
+    inStack[i] = false;
+    var scc = Arrays.copyOfRange(stack, bottom, top);
+    top = bottom;
+    Arrays.sort(scc);
+    sccs.append(scc);
+  }
+
+  /** @return the components the given one depends on */
+  private int @NotNull [] dependencies(int s, int @NotNull [] sccOf) {
+    return Arrays.stream(sccs.get(s))
+      .flatMap(i -> Arrays.stream(edges[i]))
+      .map(j -> sccOf[j])
+      .filter(t -> t != s)
+      .distinct()
+      .toArray();
+  }
+
+  /**
+   * Source positions are not hashed, so moving a declaration around does not change anything.
+   * A definition of another module is hashed by its keys and the fingerprint of its module.
+   *
+   * @return null for the components referring to definitions not in the table, or depending on such components
+   */
+  private @Nullable Long @NotNull [] fingerprints(int @NotNull [] sccOf, @Nullable DefTable table) {
+    var fingerprints = new Long[sccs.size()];
+    sccs.forEachIndexed((s, scc) -> {
+      var hasher = new DeclHasher.Hasher();
+      for (var i : scc) {
+        hasher.put(DeclHasher.hash(decls.get(i)));
+        for (var ref : foreign[i]) {
+          var owner = table != null ? table.owner(ref) : null;
+          var fingerprint = owner != null ? table.fingerprint(owner._1) : null;
+          if (fingerprint == null) return;
+          hasher.put(owner._1);
+          hasher.put(owner._2);
+          hasher.put(fingerprint);
+        }
+      }
+      var dependencies = Arrays.stream(dependencies(s, sccOf)).mapToObj(t -> fingerprints[t]).toArray(Long[]::new);
+      if (Arrays.stream(dependencies).anyMatch(Objects::isNull)) return;
+      Arrays.stream(dependencies).mapToLong(Long::longValue).sorted().forEach(hasher::put);
+      fingerprints[s] = hasher.hash();
+    });
+    return fingerprints;
+  }
+
+  /** @return the cached entries of the declarations that are not checked again, indexed like the declarations */
+  private TyckCache.@Nullable Entry @NotNull [] reused(@NotNull TyckCache cache, @Nullable Long @NotNull [] fingerprints) {
+    var reused = new TyckCache.Entry[decls.size()];
+    sccs.forEachIndexed((s, scc) -> {
+      if (fingerprints[s] == null) return;
+      var entries = Arrays.stream(scc).mapToObj(i -> cache.get(decls.get(i).ref().name())).toArray(TyckCache.Entry[]::new);
+      if (Arrays.stream(entries).allMatch(entry -> entry != null && entry.fingerprint() == fingerprints[s]))
+        for (int k = 0; k < scc.length; k++) reused[scc[k]] = entries[k];
+    });
+    return reused;
+  }
+
+  /**
+   * Maps the references of the reused definitions (and their constructors) to the new ones,
+   * and the definitions of other modules to the ones registered now, as the modules may have been loaded again
+   */
+  private @NotNull DefRebinder rebinder(TyckCache.@Nullable Entry @NotNull [] reused, @Nullable DefTable table) {
+    var map = MutableHashMap.<DefVar<?, ?>, DefVar<?, ?>>of();
+    for (int i = 0; i < reused.length; i++) {
+      if (reused[i] == null) continue;
+      var decl = decls.get(i);
+      var def = reused[i].def();
+      map.put(def.ref(), decl.ref());
+      if (def instanceof DataDef data) for (var ctor : ctors(decl)) data.ctors()
+        .find(old -> old.ref().name().equals(ctor.ref.name()))
+        .forEach(old -> map.put(old.ref(), ctor.ref));
+    }
+    return new DefRebinder(map, table);
+  }
+
+  private @NotNull ImmutableSeq<Def> run(
+    @NotNull Executor executor, @NotNull Reporter reporter,
+    Trace.@Nullable Builder builder, @Nullable TyckCache cache,
+    @Nullable CancellationIndicator indicator
+  ) {
+    for (int i = 0; i < decls.size(); i++) if (dfn[i] == 0) visit(i);
+    var sccOf = new int[decls.size()];
+    sccs.forEachIndexed((s, scc) -> {
+      for (var i : scc) sccOf[i] = s;
+    });
+    var table = cache != null ? cache.table() : null;
+    var fingerprints = cache != null ? fingerprints(sccOf, table) : null;
+    var reused = cache != null ? reused(cache, fingerprints) : new TyckCache.Entry[decls.size()];
+    var rebinder = rebinder(reused, table);
+    var results = new Def[decls.size()];
+    var failures = new Throwable[decls.size()];
+    var problems = new CollectReporter[decls.size()];
+    var futures = new CompletableFuture<?>[sccs.size()];
+    sccs.forEachIndexed((s, scc) -> {
+      var deps = Arrays.stream(dependencies(s, sccOf))
+        .mapToObj(t -> futures[t])
+        .toArray(CompletableFuture<?>[]::new);
+      futures[s] = CompletableFuture.allOf(deps).thenRunAsync(() -> {
+        for (var i : scc) {
+          problems[i] = new CollectReporter();
+          try {
+            if (indicator != null) indicator.checkCanceled();
+            var entry = reused[i];
+            results[i] = entry != null ? rebinder.def(entry.def()) : decls.get(i).tyck(problems[i], builder);
+          } catch (RuntimeException | Error e) {
+            failures[i] = e;
+            throw e;
+          }
+        }
+      }, executor);
+    });
+    CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+    for (int i = 0; i < decls.size(); i++) {
+      if (problems[i] != null) problems[i].errors().forEach(reporter::report);
+      var failure = failures[i];
+      // skipped because an earlier member or a dependency failed
+      if (failure == null && results[i] == null) failure = futures[sccOf[i]].handle((v, e) -> e).join();
+      if (failure instanceof CompletionException completion && completion.getCause() != null)
+        failure = completion.getCause();
+      if (failure instanceof RuntimeException e) throw e;
+      if (failure instanceof Error e) throw e;
+    }
+    if (cache != null) {
+      var entries = Buffer.<TyckCache.Entry>of();
+      for (int i = 0; i < results.length; i++) {
+        var fingerprint = fingerprints[sccOf[i]];
+        entries.append(fingerprint != null && problems[i].errors().isEmpty()
+          ? new TyckCache.Entry(fingerprint, results[i]) : null);
+      }
+      cache.update(decls.map(decl -> decl.ref().name()), entries.toImmutableSeq(),
+        (int) Arrays.stream(reused).filter(Objects::nonNull).count());
+    }
+    return ImmutableSeq.of(results);
+  }
+}
@@ -2,17 +2,18 @@
 // Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
 package org.aya.tyck.unify;
 
+import org.aya.api.util.NormalizeMode;
 import org.aya.core.def.Def;
 import org.aya.core.term.*;
 import org.aya.core.visitor.Substituter;
 import org.aya.generic.Arg;
 import org.aya.ref.LocalVar;
 import org.aya.tyck.MetaContext;
-import org.aya.tyck.error.HoleBadSpineWarn;
 import org.aya.util.Constants;
 import org.aya.util.Decision;
 import org.aya.util.Ordering;
 import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.mutable.Buffer;
 import org.glavo.kala.collection.mutable.MutableHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -70,7 +71,9 @@ public final class PatDefEq implements Term.BiVisitor<@NotNull Term, @NotNull Te
       if (lhs.whnf() != Decision.NO) return false;
       return defeq.compareWHNF(lhs, preRhs, type);
     }
-    return defeq.visitArgs(lhs.args(), rhs.args(), Def.defTele(lhs.fnRef()));
+    // equal arguments are sufficient but not necessary, so unfold if they are not
+    if (metaContext.attempt(() -> defeq.visitArgs(lhs.args(), rhs.args(), Def.defTele(lhs.fnRef())))) return true;
+    return lhs.whnf() == Decision.NO && defeq.compareWHNF(lhs, rhs, type);
   }
 
   @Override
@@ -109,40 +112,74 @@ public final class PatDefEq implements Term.BiVisitor<@NotNull Term, @NotNull Te
     this.metaContext = metaContext;
   }
 
+  /**
+   * @return the solution as a function of the spine, which is applied to the arguments of the hole
+   */
   private @Nullable Term extract(Seq<? extends Arg<? extends Term>> spine, Term rhs) {
     var subst = new Substituter.TermSubst(new MutableHashMap<>(/*spine.size() * 2*/));
+    var params = Buffer.<Term.Param>of();
     for (var arg : spine.view()) {
       if (arg.term() instanceof RefTerm ref && ref.var() instanceof LocalVar var) {
-        rhs = extractVar(rhs, subst, arg, var);
-        if (rhs == null) return null;
+        var param = extractVar(subst, arg, var);
+        if (param == null) return null;
+        params.append(param);
       } else return null;
       // TODO[ice]: ^ eta var
     }
-    return rhs.subst(subst);
+    return LamTerm.make(params, rhs.subst(subst));
   }
 
-  private @Nullable Term extractVar(Term rhs, Substituter.TermSubst subst, Arg<? extends Term> arg, LocalVar var) {
-    if (subst.map().containsKey(var)) {
+  private Term.@Nullable Param extractVar(Substituter.TermSubst subst, Arg<? extends Term> arg, LocalVar var) {
+    if (subst.containsKey(var)) {
       // TODO[ice]: report errors for duplicated vars in spine
       return null;
     }
     var type = new AppTerm.HoleApp(new LocalVar(Constants.ANONYMOUS_PREFIX));
     var abstracted = new LocalVar(var.name() + "'");
-    var param = new Term.Param(abstracted, type, arg.explicit());
-    subst.add(var, new RefTerm(abstracted));
-    return new LamTerm(param, new LamTerm(param, rhs));
+    subst.put(var, new RefTerm(abstracted));
+    return new Term.Param(abstracted, type, arg.explicit());
+  }
+
+  /**
+   * @return the argument with the solved meta at its head replaced by the solution
+   */
+  private @NotNull Arg<Term> force(@NotNull Arg<? extends Term> arg) {
+    var term = arg.term();
+    while (term instanceof AppTerm.HoleApp hole) {
+      var solution = metaContext.metas().solution(hole.var());
+      if (solution == null) break;
+      term = AppTerm.make(solution, hole.args()).normalize(NormalizeMode.WHNF);
+    }
+    return new Arg<>(term, arg.explicit());
+  }
+
+  /**
+   * A spine that is not a pattern may become one when the metas in it are solved,
+   * so the problem is postponed until then, see {@link Postponed}.
+   */
+  private void postpone(AppTerm.@NotNull HoleApp lhs, Seq<Arg<Term>> spine, @NotNull Term rhs, @NotNull Term type) {
+    var blockers = Buffer.of(lhs.var());
+    for (var arg : spine) if (arg.term() instanceof AppTerm.HoleApp hole) blockers.append(hole.var());
+    var snapshot = new TypedDefEq(eq -> new PatDefEq(eq, ord, metaContext), MutableHashMap.from(defeq.localCtx), defeq.pos);
+    snapshot.varSubst.putAll(defeq.varSubst);
+    var constraint = new Postponed.Constraint(lhs, rhs, type, snapshot);
+    metaContext.postponed().postpone(metaContext.metas(), constraint, blockers);
   }
 
   @Override
   public @NotNull Boolean visitHole(AppTerm.@NotNull HoleApp lhs, @NotNull Term rhs, @NotNull Term type) {
-    var solved = extract(lhs.args(), rhs);
+    var metas = metaContext.metas();
+    var solution = metas.solution(lhs.var());
+    if (solution != null) return compare(AppTerm.make(solution, lhs.args()), rhs, type);
+    var spine = lhs.args().view().map(this::force).toImmutableSeq();
+    var solved = extract(spine, rhs);
     if (solved == null) {
-      metaContext.report(new HoleBadSpineWarn(lhs, defeq.pos));
-      return false;
+      postpone(lhs, spine, rhs, type);
+      return true;
     }
-    var solution = metaContext.solutions().getOption(lhs);
-    if (solution.isDefined()) return compare(AppTerm.make(solution.get(), lhs.args()), rhs, type);
-    metaContext.solutions().put(lhs, solved);
-    return true;
+    return metaContext.attempt(() -> {
+      var id = metas.solve(lhs.var(), solved, existing -> compare(AppTerm.make(existing, lhs.args()), rhs, type));
+      return id >= 0 && metaContext.postponed().wake(id, metaContext) == null;
+    });
   }
 }
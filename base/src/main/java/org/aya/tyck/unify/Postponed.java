@@ -0,0 +1,109 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.tyck.unify;
+
+import org.aya.api.ref.Var;
+import org.aya.core.term.AppTerm;
+import org.aya.core.term.Term;
+import org.aya.tyck.MetaContext;
+import org.aya.tyck.MetaStore;
+import org.glavo.kala.collection.SeqLike;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.glavo.kala.collection.mutable.MutableMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Unification problems on holes whose spines are not (yet) patterns,
+ * indexed by the ids of the metas blocking them, and retried when one of them is solved.
+ */
+public final class Postponed {
+  /**
+   * @param defeq a snapshot of the unifier that postponed the constraint
+   */
+  public static record Constraint(
+    @NotNull AppTerm.HoleApp hole,
+    @NotNull Term rhs,
+    @NotNull Term type,
+    @NotNull TypedDefEq defeq
+  ) {
+    public boolean retry() {
+      return defeq.compare(hole, rhs, type);
+    }
+  }
+
+  private final @NotNull MutableMap<@NotNull Integer, @NotNull Buffer<Constraint>> blocked = new MutableHashMap<>();
+  private final @NotNull Set<Constraint> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  public boolean isEmpty() {
+    return pending.isEmpty();
+  }
+
+  public @NotNull ImmutableSeq<Constraint> pending() {
+    return ImmutableSeq.from(pending);
+  }
+
+  /** The postponed constraints at some point, see {@link #restore} */
+  public static record Snapshot(
+    @NotNull ImmutableSeq<Constraint> pending,
+    @NotNull MutableMap<@NotNull Integer, @NotNull Buffer<Constraint>> blocked
+  ) {
+  }
+
+  public @NotNull Snapshot snapshot() {
+    var copy = new MutableHashMap<@NotNull Integer, @NotNull Buffer<Constraint>>();
+    blocked.forEach((id, constraints) -> copy.set(id, Buffer.from(constraints)));
+    return new Snapshot(pending(), copy);
+  }
+
+  /** Forgets the constraints postponed and woken after the snapshot was taken */
+  public void restore(@NotNull Snapshot snapshot) {
+    pending.clear();
+    snapshot.pending.forEach(pending::add);
+    blocked.clear();
+    snapshot.blocked.forEach((id, constraints) -> blocked.set(id, Buffer.from(constraints)));
+  }
+
+  /**
+   * @param blockers the unsolved metas whose solutions may turn the spine into a pattern
+   */
+  public void postpone(@NotNull MetaStore metas, @NotNull Constraint constraint, @NotNull SeqLike<@NotNull Var> blockers) {
+    pending.add(constraint);
+    for (var blocker : blockers) blocked.getOrPut(metas.root(blocker), Buffer::of).append(constraint);
+  }
+
+  /**
+   * @param id      the slot of the meta that was just solved, as returned by {@link MetaStore#solve}
+   * @param context where each retry is {@link MetaContext#attempt}ed, so a failed one solves nothing
+   * @return the first woken constraint that turns out to be unsolvable, if any
+   */
+  public @Nullable Constraint wake(int id, @NotNull MetaContext context) {
+    var woken = blocked.remove(id);
+    if (woken.isEmpty()) return null;
+    for (var constraint : woken.get()) {
+      // the same constraint may be blocked by several metas
+      if (pending.remove(constraint) && !context.attempt(constraint::retry)) return constraint;
+    }
+    return null;
+  }
+
+  /**
+   * Retries every constraint once more, those that are still blocked remain pending.
+   *
+   * @param context see {@link #wake}
+   * @return the first one that turns out to be unsolvable, if any
+   */
+  public @Nullable Constraint wakeAll(@NotNull MetaContext context) {
+    var constraints = pending();
+    pending.clear();
+    blocked.clear();
+    for (var constraint : constraints) if (!context.attempt(constraint::retry)) return constraint;
+    return null;
+  }
+}
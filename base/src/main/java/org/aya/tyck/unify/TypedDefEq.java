@@ -4,11 +4,14 @@ package org.aya.tyck.unify;
 
 import org.aya.api.error.SourcePos;
 import org.aya.api.ref.Var;
+import org.aya.api.util.KernelCounter;
 import org.aya.api.util.NormalizeMode;
 import org.aya.core.term.*;
+import org.aya.core.visitor.TermSize;
 import org.aya.generic.Arg;
 import org.aya.ref.LocalVar;
 import org.aya.tyck.trace.Trace;
+import org.aya.util.JfrEvents;
 import org.glavo.kala.collection.SeqLike;
 import org.glavo.kala.collection.immutable.ImmutableSeq;
 import org.glavo.kala.collection.mutable.MutableHashMap;
@@ -61,7 +64,15 @@ public final class TypedDefEq implements Term.BiVisitor<@NotNull Term, @NotNull
   }
 
   public boolean compare(@NotNull Term lhs, @NotNull Term rhs, @NotNull Term type) {
-    if (lhs == rhs) return true;
+    return JfrEvents.unify(pos, () -> TermSize.of(lhs) + TermSize.of(rhs), () -> doCompare(lhs, rhs, type));
+  }
+
+  private boolean doCompare(@NotNull Term lhs, @NotNull Term rhs, @NotNull Term type) {
+    KernelCounter.DefEqCompare.increment();
+    if (lhs == rhs) {
+      KernelCounter.DefEqFastPath.increment();
+      return true;
+    }
     type = type.normalize(NormalizeMode.WHNF);
     // at least one of them is not an FnCall
     if (isNotCall(lhs) || isNotCall(rhs)) {
@@ -179,8 +190,9 @@ public final class TypedDefEq implements Term.BiVisitor<@NotNull Term, @NotNull
     var typesSubstituted = types;
     for (int i = 0; i < l.size(); i++) {
       var li = l.get(i);
-      if (!compare(li, r.get(i), typesSubstituted.first().type())) return false;
-      typesSubstituted = types.view().drop(1).map(type -> type.subst(types.first().ref(), li));
+      var param = typesSubstituted.first();
+      if (!compare(li, r.get(i), param.type())) return false;
+      typesSubstituted = typesSubstituted.view().drop(1).map(type -> type.subst(param.ref(), li)).toImmutableSeq();
     }
     return true;
   }
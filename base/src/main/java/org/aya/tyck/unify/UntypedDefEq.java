@@ -42,10 +42,16 @@ public record UntypedDefEq(
   public @Nullable
   Term visitApp(@NotNull AppTerm.Apply lhs, @NotNull Term preRhs) {
     if (!(preRhs instanceof AppTerm.Apply rhs)) return null;
-    var preFnType = compare(lhs.fn(), rhs.fn());
-    if (!(preFnType instanceof PiTerm fnType)) return null;
-    if (!defeq.compare(lhs.arg().term(), rhs.arg().term(), fnType.param().type())) return null;
-    return fnType.body().subst(fnType.param().ref(), lhs.arg().term());
+    if (!lhs.args().sizeEquals(rhs.args())) return null;
+    var type = compare(lhs.fn(), rhs.fn());
+    for (int i = 0; i < lhs.args().size(); i++) {
+      if (i > 0) type = type.normalize(NormalizeMode.WHNF);
+      if (!(type instanceof PiTerm fnType)) return null;
+      var arg = lhs.args().get(i).term();
+      if (!defeq.compare(arg, rhs.args().get(i).term(), fnType.param().type())) return null;
+      type = fnType.body().subst(fnType.param().ref(), arg);
+    }
+    return type;
   }
 
   @Override
@@ -58,7 +64,7 @@ public record UntypedDefEq(
     var params = tupType.params();
     var body = tupType.body();
     for (int i = 1; i < lhs.ix(); i++) {
-      var l = new ProjTerm(lhs, i);
+      var l = new ProjTerm(lhs.tup(), i);
       var currentParam = params.first();
       params = params.drop(1).map(x -> x.subst(currentParam.ref(), l));
       body = body.subst(currentParam.ref(), l);
@@ -0,0 +1,141 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.util;
+
+import jdk.jfr.*;
+import org.aya.api.error.SourcePos;
+import org.aya.api.util.NormalizeMode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Events of the JDK Flight Recorder, so a recording shows the module and the declaration the checker works on.
+ * Like the other events of the JDK, they cost nothing unless they are enabled in a recording.
+ * The events of the unification and the normalization are only committed for terms of at least
+ * {@link #LARGE_TERM} nodes, whose sizes are only computed when the event is recorded,
+ * and only for the outermost ones of a thread, so that measuring them stays linear in the size of the terms.
+ */
+public final class JfrEvents {
+  /** @see org.aya.core.visitor.TermSize */
+  public static final int LARGE_TERM = 64;
+  private static final ThreadLocal<Declaration> CURRENT = new ThreadLocal<>();
+  /** the numbers of the enabled unification and normalization events this thread is inside of */
+  private static final ThreadLocal<int[]> NESTING = ThreadLocal.withInitial(() -> new int[2]);
+
+  private static record Declaration(@NotNull String name, @NotNull SourcePos sourcePos) {
+  }
+
+  private JfrEvents() {
+  }
+
+  @Category("Aya")
+  public abstract static class AyaEvent extends Event {
+    @Label("Declaration") String declaration;
+    @Label("Line") int line;
+    @Label("Column") int column;
+
+    void commit(@NotNull String name, @NotNull SourcePos sourcePos) {
+      declaration = name;
+      line = sourcePos.startLine();
+      column = sourcePos.startColumn();
+      commit();
+    }
+
+    /** Commits with the declaration checked by this thread, if any */
+    void commit(@NotNull SourcePos sourcePos) {
+      var current = CURRENT.get();
+      commit(current == null ? "" : current.name, sourcePos == SourcePos.NONE && current != null ? current.sourcePos : sourcePos);
+    }
+  }
+
+  @Name("org.aya.ModuleLoad")
+  @Label("Load Module")
+  public static final class ModuleLoad extends AyaEvent {
+  }
+
+  @Name("org.aya.Tyck")
+  @Label("Check Declaration")
+  public static final class Tyck extends AyaEvent {
+  }
+
+  @Name("org.aya.Unify")
+  @Label("Compare Terms")
+  public static final class Unify extends AyaEvent {
+    @Label("Size") int size;
+
+    void commit(@NotNull SourcePos sourcePos, int size) {
+      if (size < LARGE_TERM) return;
+      this.size = size;
+      commit(sourcePos);
+    }
+  }
+
+  @Name("org.aya.Normalize")
+  @Label("Normalize Term")
+  public static final class Normalize extends AyaEvent {
+    @Label("Mode") String mode;
+    @Label("Size") int size;
+
+    void commit(@NotNull NormalizeMode mode, int size) {
+      if (size < LARGE_TERM) return;
+      this.mode = mode.name();
+      this.size = size;
+      commit(SourcePos.NONE);
+    }
+  }
+
+  /** @param size of the compared terms, only computed if the event is recorded */
+  public static boolean unify(@NotNull SourcePos sourcePos, @NotNull IntSupplier size, @NotNull BooleanSupplier compare) {
+    var event = new Unify();
+    if (!event.isEnabled()) return compare.getAsBoolean();
+    var nesting = NESTING.get();
+    nesting[0]++;
+    event.begin();
+    try {
+      return compare.getAsBoolean();
+    } finally {
+      if (--nesting[0] == 0 && event.shouldCommit()) event.commit(sourcePos, size.getAsInt());
+    }
+  }
+
+  /** @param size of the normalized term, only computed if the event is recorded */
+  public static <T> T normalize(@NotNull NormalizeMode mode, @NotNull IntSupplier size, @NotNull Supplier<T> normalize) {
+    var event = new Normalize();
+    if (!event.isEnabled()) return normalize.get();
+    var nesting = NESTING.get();
+    nesting[1]++;
+    event.begin();
+    try {
+      return normalize.get();
+    } finally {
+      if (--nesting[1] == 0 && event.shouldCommit()) event.commit(mode, size.getAsInt());
+    }
+  }
+
+  /** @param module the qualified name of the module */
+  public static <T> @Nullable T load(@NotNull String module, @NotNull Supplier<@Nullable T> action) {
+    var event = new ModuleLoad();
+    event.begin();
+    var result = action.get();
+    if (event.shouldCommit()) event.commit(module, SourcePos.NONE);
+    return result;
+  }
+
+  /** Also makes the declaration the one of the events of the unification and the normalization inside */
+  public static <T> T tyck(@NotNull String name, @NotNull SourcePos sourcePos, @NotNull Supplier<T> action) {
+    var event = new Tyck();
+    var outer = CURRENT.get();
+    CURRENT.set(new Declaration(name, sourcePos));
+    event.begin();
+    try {
+      return action.get();
+    } finally {
+      if (event.shouldCommit()) event.commit(name, sourcePos);
+      CURRENT.set(outer);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.util;
+
+import com.sun.management.ThreadMXBean;
+import org.aya.api.error.SourcePos;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Records the wall time, the CPU time and the allocated bytes of the phases of the compiler,
+ * per module for parsing, and per statement or declaration for the others.
+ * Like {@link org.aya.tyck.TyckOptions}, it is global to the process, and it is off unless {@link #enable()}d,
+ * which costs a volatile read per statement.
+ * <p>
+ * The CPU time and the allocation are the ones of the recording thread,
+ * so a shallow resolved import includes loading the module only when it is loaded on the same thread.
+ * The entries measured inside another one on the same thread are subtracted from its self time,
+ * so that the self times of all the entries add up to the time spent in the phases.
+ */
+public final class Profiler {
+  public enum Phase {
+    Parse,
+    ShallowResolve,
+    Resolve,
+    Tyck,
+  }
+
+  public static record Entry(
+    @NotNull Phase phase,
+    @NotNull String name,
+    @NotNull SourcePos sourcePos,
+    long wallNanos,
+    long cpuNanos,
+    long allocatedBytes,
+    long selfWallNanos,
+    long selfCpuNanos,
+    long selfAllocatedBytes
+  ) {
+  }
+
+  /** The start of a measurement, see {@link #start()}, only used by the thread that started it */
+  public static final class Timer {
+    private final @NotNull Profiler profiler;
+    private final @Nullable Timer outer;
+    private final long wallNanos, cpuNanos, allocatedBytes;
+    private long nestedWallNanos, nestedCpuNanos, nestedAllocatedBytes;
+
+    private Timer(@NotNull Profiler profiler, @Nullable Timer outer) {
+      this.profiler = profiler;
+      this.outer = outer;
+      wallNanos = System.nanoTime();
+      cpuNanos = threadCpuNanos();
+      allocatedBytes = threadAllocatedBytes();
+    }
+
+    /** Also forgets the timers started inside this one and never stopped, like on an exception */
+    public void stop(@NotNull Phase phase, @NotNull String name, @NotNull SourcePos sourcePos) {
+      var wall = System.nanoTime() - wallNanos;
+      var cpu = threadCpuNanos() - cpuNanos;
+      var allocated = threadAllocatedBytes() - allocatedBytes;
+      profiler.entries.add(new Entry(phase, name, sourcePos, wall, cpu, allocated,
+        wall - nestedWallNanos, cpu - nestedCpuNanos, allocated - nestedAllocatedBytes));
+      if (outer != null) {
+        outer.nestedWallNanos += wall;
+        outer.nestedCpuNanos += cpu;
+        outer.nestedAllocatedBytes += allocated;
+      }
+      OPEN.set(outer);
+    }
+  }
+
+  private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+  /** the innermost timer started and not stopped by the thread */
+  private static final ThreadLocal<Timer> OPEN = new ThreadLocal<>();
+  private static volatile @Nullable Profiler current;
+  private final @NotNull ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+  private Profiler() {
+  }
+
+  /** @return the profiler recording from now on, instead of the previous one */
+  public static @NotNull Profiler enable() {
+    var profiler = new Profiler();
+    current = profiler;
+    return profiler;
+  }
+
+  public static void disable() {
+    current = null;
+  }
+
+  /** @return the recorded entries, in the order they are finished */
+  public @NotNull ImmutableSeq<Entry> entries() {
+    return ImmutableSeq.from(entries);
+  }
+
+  /** @return null if disabled, so nothing is measured */
+  public static @Nullable Timer start() {
+    var profiler = current;
+    if (profiler == null) return null;
+    var timer = new Timer(profiler, OPEN.get());
+    OPEN.set(timer);
+    return timer;
+  }
+
+  /**
+   * The action is measured even if it throws, like a declaration that fails to check.
+   *
+   * @param name only called if enabled
+   */
+  public static <T> T profile(
+    @NotNull Phase phase, @NotNull Supplier<@NotNull String> name,
+    @NotNull SourcePos sourcePos, @NotNull Supplier<T> action
+  ) {
+    var timer = start();
+    try {
+      return action.get();
+    } finally {
+      if (timer != null) timer.stop(phase, name.get(), sourcePos);
+    }
+  }
+
+  public static void profile(
+    @NotNull Phase phase, @NotNull Supplier<@NotNull String> name,
+    @NotNull SourcePos sourcePos, @NotNull Runnable action
+  ) {
+    var timer = start();
+    try {
+      action.run();
+    } finally {
+      if (timer != null) timer.stop(phase, name.get(), sourcePos);
+    }
+  }
+
+  private static long threadCpuNanos() {
+    return THREADS.getCurrentThreadCpuTime();
+  }
+
+  private static long threadAllocatedBytes() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,124 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.concrete;
+
+import org.aya.api.error.CollectReporter;
+import org.aya.api.ref.Var;
+import org.aya.concrete.resolve.context.Context;
+import org.aya.concrete.resolve.error.CyclicImportError;
+import org.aya.concrete.resolve.error.ShadowingWarn;
+import org.aya.concrete.resolve.module.CachedModuleLoader;
+import org.aya.concrete.resolve.module.FileModuleLoader;
+import org.aya.concrete.resolve.module.ModuleLoader;
+import org.aya.concrete.resolve.module.ModuleReporter;
+import org.aya.test.ThrowingReporter;
+import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.collection.mutable.MutableMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModuleLoaderTest {
+  private static final int WIDTH = 8;
+
+  @Test
+  public void wideImports(@TempDir Path dir) throws IOException {
+    Files.writeString(dir.resolve("nat"), "\\open \\data Nat : \\Set | zero | suc Nat");
+    for (int i = 0; i < WIDTH; i++) Files.writeString(dir.resolve("a" + i), """
+      \\import nat
+      \\open nat
+      \\def one (n : Nat) : Nat => n""");
+    Files.writeString(dir.resolve("main"), IntStream.range(0, WIDTH)
+      .mapToObj(i -> "\\import a" + i)
+      .collect(Collectors.joining("\n")));
+    var loads = new ConcurrentHashMap<String, AtomicInteger>();
+    var file = new FileModuleLoader(dir, ThrowingReporter.INSTANCE, null);
+    var loader = new CachedModuleLoader((path, recurseLoader) -> {
+      loads.computeIfAbsent(path.joinToString("::"), p -> new AtomicInteger()).incrementAndGet();
+      return file.load(path, recurseLoader);
+    });
+    // the same module requested by several threads at the same time
+    var futures = IntStream.range(0, WIDTH)
+      .mapToObj(i -> CompletableFuture.supplyAsync(() -> loader.load(ImmutableSeq.of("main"))))
+      .collect(Collectors.toList());
+    var exports = futures.get(0).join();
+    assertNotNull(exports);
+    futures.forEach(future -> assertSame(exports, future.join()));
+    assertEquals(WIDTH + 2, loads.size());
+    loads.forEach((module, count) -> assertEquals(1, count.get(), module));
+    assertNotNull(export(loader.load(ImmutableSeq.of("a0"))));
+  }
+
+  @Test
+  public void cyclicImports(@TempDir Path dir) throws IOException {
+    Files.writeString(dir.resolve("a"), "\\import b");
+    Files.writeString(dir.resolve("b"), "\\import c");
+    Files.writeString(dir.resolve("c"), "\\import a");
+    var reporter = new CollectReporter();
+    ModuleLoader loader = new CachedModuleLoader(new FileModuleLoader(dir, reporter, null));
+    assertNull(loader.load(ImmutableSeq.of("a")));
+    assertTrue(reporter.errors().anyMatch(problem -> problem instanceof CyclicImportError error
+      && error.cycle().size() == 4 && error.cycle().first().equals(error.cycle().last())));
+  }
+
+  @Test
+  public void keptProblems(@TempDir Path dir) throws IOException {
+    Files.writeString(dir.resolve("bad"), "\\def one : Nat => suc zero");
+    Files.writeString(dir.resolve("a"), "\\import bad");
+    var outside = new CollectReporter();
+    var reporter = new ModuleReporter(outside);
+    var loader = new CachedModuleLoader(new FileModuleLoader(dir, reporter, null), null, reporter);
+    loader.load(ImmutableSeq.of("a"));
+    var problems = loader.problems(ImmutableSeq.of(ImmutableSeq.of("a")));
+    assertFalse(problems.isEmpty());
+    assertEquals(problems, outside.errors().toImmutableSeq());
+    // cached, but the problems are still known, and not reported again
+    loader.load(ImmutableSeq.of("a"));
+    assertEquals(problems, loader.problems(ImmutableSeq.of(ImmutableSeq.of("a"))));
+    assertEquals(problems.size(), outside.errors().size());
+    // the imported module first
+    assertEquals(ImmutableSeq.of(problems.first()), loader.problems(ImmutableSeq.of(ImmutableSeq.of("bad"))));
+    loader.invalidate(ImmutableSeq.of("bad"));
+    assertTrue(loader.problems(ImmutableSeq.of(ImmutableSeq.of("a"))).isEmpty());
+  }
+
+  @Test
+  public void orderedProblems(@TempDir Path dir) throws IOException {
+    var imports = Buffer.<Seq<String>>of();
+    var shadowed = Buffer.<String>of();
+    for (int i = 0; i < WIDTH; i++) {
+      var name = "A" + i;
+      Files.writeString(dir.resolve("bad" + i), "\\def shadowed (" + name + " : \\Set) (" + name + " : \\Set) : \\Set => " + name);
+      imports.append(ImmutableSeq.of("bad" + i));
+      shadowed.append(name);
+    }
+    Files.writeString(dir.resolve("main"), imports.view().map(path -> "\\import " + path.first()).joinToString("\n"));
+    for (int run = 0; run < WIDTH; run++) {
+      var outside = new CollectReporter();
+      var reporter = new ModuleReporter(outside);
+      // the imports are loaded in parallel, but their problems are reported in order
+      var loader = new CachedModuleLoader(new FileModuleLoader(dir, reporter, null), CachedModuleLoader.LOADERS, reporter);
+      loader.load(ImmutableSeq.of("main"));
+      var problems = outside.errors().toImmutableSeq();
+      assertEquals(loader.problems(imports), problems);
+      assertEquals(shadowed.toImmutableSeq(), problems.map(problem -> ((ShadowingWarn) problem).name()));
+    }
+  }
+
+  private static Var export(MutableMap<Seq<String>, MutableMap<String, Var>> exports) {
+    assertNotNull(exports);
+    return exports.get(Context.TOP_LEVEL_MOD_NAME).get("one");
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.concrete;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.aya.api.error.CollectReporter;
+import org.aya.api.util.InterruptException;
+import org.aya.concrete.parse.AyaTokenizer;
+import org.aya.concrete.parse.ReporterErrorListener;
+import org.aya.parser.AyaLexer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TokenizerTest {
+  @Test
+  public void sameAsAntlr() {
+    List.of(
+      "\\open \\data Nat : \\Set | zero | suc Nat",
+      "\\def add (a b : Nat) : Nat\n | zero, b => b\n | suc a, b => suc (add a b)",
+      "\\Type \\Type2 \\2-Type3 \\oo-Type \\h-Type \\hType1 \\Set0 \\Prop \\Sig \\Pi \\lam \\infixl \\infix",
+      "Σ λ Π → ⇒ ∀x x∀ a' a'b f.1 {? a ?} {a} (a, b) ** *** -> --> => | || : :: _ _a",
+      "`+` `+ `a'",
+      "a -- comment\nb --\nc --- d\n---\n--| e\n--a",
+      "{- a {- nested -} comment -} b {- not closed",
+      "\"string\" \"escape \\\" \\n \\u0041 \\uu00e9 \\12\" \"bad \\q\" \"line\nbreak",
+      "\\defx \\infixz \\Setx \\Typex \\2-",
+      "\\fuck",
+      "a $ `",
+      "x \\h-Typo",
+      "#a @b 'c"
+    ).forEach(TokenizerTest::assertSame);
+  }
+
+  @Test
+  public void fuzz() {
+    var fragments = List.of("\\", "def", "Type", "Set", "h", "-", "--", "{-", "-}", "{", "}", "?", "`", "\"",
+      "a", "1", "'", " ", "\n", "\t", ":", "|", "*", "=>", "->", "Σ", "(", ")", ".", ",", "_", "u", "oo");
+    var random = new Random(42);
+    for (var i = 0; i < 2000; i++) {
+      var builder = new StringBuilder();
+      for (var j = random.nextInt(12); j >= 0; j--) builder.append(fragments.get(random.nextInt(fragments.size())));
+      assertSame(builder.toString());
+    }
+  }
+
+  private static void assertSame(@NotNull String text) {
+    List<String> expected;
+    try {
+      expected = lex(text, listener -> {
+        var lexer = new AyaLexer(CharStreams.fromString(text));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(listener);
+        return lexer;
+      });
+    } catch (StackOverflowError e) {
+      // the `EOF` in INCOMPLETE_STRING loops forever in ANTLR, when a string is not closed at the end
+      return;
+    }
+    assertEquals(expected, lex(text, listener -> new AyaTokenizer(CharStreams.fromString(text), listener)), text);
+  }
+
+  private static @NotNull List<String> lex(@NotNull String text, @NotNull Function<ReporterErrorListener, TokenSource> lexer) {
+    var reporter = new CollectReporter();
+    var tokens = new ArrayList<String>();
+    try {
+      var source = lexer.apply(new ReporterErrorListener(reporter));
+      for (var token = source.nextToken(); ; token = source.nextToken()) {
+        if (token.getChannel() != Token.DEFAULT_CHANNEL) continue;
+        tokens.add(token.getType() + " " + token.getStartIndex() + ":" + token.getStopIndex()
+          + " " + token.getLine() + ":" + token.getCharPositionInLine());
+        if (token.getType() == Token.EOF) break;
+      }
+    } catch (InterruptException e) {
+      reporter.errors().forEach(problem ->
+        tokens.add(problem.describe().renderWithPageWidth(80) + " " + problem.sourcePos()));
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,54 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core;
+
+import org.aya.core.term.AppTerm;
+import org.aya.core.term.LamTerm;
+import org.aya.core.term.Term;
+import org.aya.core.term.UnivTerm;
+import org.aya.core.visitor.TermInterner;
+import org.aya.generic.Arg;
+import org.aya.ref.LocalVar;
+import org.aya.test.Lisp;
+import org.aya.test.LispTestCase;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InternTest extends LispTestCase {
+  @Test
+  public void sharing() {
+    var interner = new TermInterner();
+    var term = Lisp.parse("(app (lam (a (U) ex) a) (app f b))", vars);
+    var again = Lisp.parse("(app (lam (a (U) ex) a) (app f b))", vars);
+    assertNotSame(term, again);
+    var interned = interner.intern(term);
+    assertEquals(term, interned);
+    assertSame(interned, interner.intern(again));
+    assertSame(interned, interner.intern(interned));
+    var app = (AppTerm.Apply) interned;
+    assertSame(app.args().first().term(), interner.intern(Lisp.parse("(app f b)", vars)));
+    // the hash is cached when the node is built
+    assertEquals(again.summary().hash(), interned.summary().hash());
+    assertEquals(7, interner.size());
+  }
+
+  @Test
+  public void distinctVars() {
+    var interner = new TermInterner();
+    var term = interner.intern(Lisp.parse("(lam (a (U) ex) a)"));
+    var other = interner.intern(Lisp.parse("(lam (a (U) ex) a)"));
+    // binders with the same name are different variables
+    assertEquals(term.toDoc(), other.toDoc());
+    assertNotSame(term, other);
+  }
+
+  @Test
+  public void holes() {
+    var interner = new TermInterner();
+    var hole = AppTerm.make(new AppTerm.HoleApp(new LocalVar("h")), Arg.explicit(Lisp.parse("a", vars)));
+    assertSame(hole, interner.intern(hole));
+    var lam = new LamTerm(new Term.Param(new LocalVar("x"), UnivTerm.OMEGA, true), hole);
+    assertSame(hole, ((LamTerm) interner.intern(lam)).body());
+  }
+}
@@ -0,0 +1,112 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core;
+
+import org.aya.api.util.NormalizeMode;
+import org.aya.core.def.FnDef;
+import org.aya.core.term.AppTerm;
+import org.aya.core.term.Term;
+import org.aya.test.Lisp;
+import org.aya.test.LispTestCase;
+import org.aya.tyck.TyckDeclTest;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Differential tests of {@link NormalizeMode#NBE} against {@link NormalizeMode#NF}.
+ */
+public class NbeTest extends LispTestCase {
+  private static @NotNull String render(@NotNull Term term) {
+    return term.toDoc().renderWithPageWidth(114514);
+  }
+
+  /**
+   * The normalizer does not normalize the right hand side of a matched clause,
+   * so we iterate it until nothing changes.
+   */
+  private static @NotNull Term normalizeFully(@NotNull Term term) {
+    var last = render(term);
+    while (true) {
+      term = term.normalize(NormalizeMode.NF);
+      var now = render(term);
+      if (now.equals(last)) return term;
+      last = now;
+    }
+  }
+
+  private static void agree(@NotNull Term term) {
+    assertEquals(render(normalizeFully(term)), render(term.normalize(NormalizeMode.NBE)));
+  }
+
+  /**
+   * The normalizer does not unfold calls whose arguments are not constructors yet,
+   * so we can only expect the same normal form after applying NbE to its output.
+   */
+  private static void confluent(@NotNull Term term) {
+    var nbe = render(term.normalize(NormalizeMode.NBE));
+    assertEquals(nbe, render(normalizeFully(term).normalize(NormalizeMode.NBE)));
+  }
+
+  private void agree(@Language("TEXT") String code) {
+    agree(Lisp.parse(code, vars));
+  }
+
+  @Test
+  public void neutral() {
+    agree("(app f a)");
+    agree("(app (app f a) (lam (x (U) ex) x))");
+    agree("(proj t 1)");
+  }
+
+  @Test
+  public void canonical() {
+    agree("(lam (a (U) ex) a)");
+    agree("(Pi (a (U) ex) a)");
+    agree("(Sigma (a (U) ex null) a)");
+    agree("(Sigma (a (U) ex (b (app (lam (x (U) ex) x) a) ex null)) b)");
+  }
+
+  @Test
+  public void beta() {
+    agree("(app (lam (a (U) ex) a) b)");
+    agree("(lam (x (U) ex) (app (lam (a (U) ex) a) b))");
+    agree("(Pi (x (app (lam (a (U) ex) a) b) ex) (app (lam (a (U) ex) x) b))");
+    // church two applied to a free function
+    agree("(app (lam (f (U) ex) (lam (x (U) ex) (app f (app f x)))) g)");
+    agree("(app (app (lam (f (U) ex) (lam (x (U) ex) (app f (app f x)))) (lam (y (U) ex) y)) z)");
+    agree("(proj (tup a (app (lam (x (U) ex) x) b)) 2)");
+  }
+
+  @Test
+  public void unfold() {
+    var defs = TyckDeclTest.successTyckDecls("""
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def add (a, b : Nat) : Nat
+       | zero, a => a
+       | a, zero => a
+       | suc a, b => suc (add a b)
+       | a, suc b => suc (add a b)
+      \\def mul (a, b : Nat) : Nat
+       | zero, n => zero
+       | suc m, n => add n (mul m n)
+      \\def two : Nat => suc (suc zero)
+      \\def four : Nat => mul two two
+      \\def six : Nat => add (suc (suc zero)) (suc (suc (suc (suc zero))))
+      \\def twice (f : \\Pi Nat -> Nat) (a : Nat) : Nat => f (f a)
+      \\def stuck (a : Nat) : Nat => add (suc a) (twice (add two) zero)
+      \\def overlap (a : Nat) : Nat => add a zero""");
+    IntFunction<Term> body = i -> ((FnDef) defs.get(i)).body().getLeftValue();
+    agree(body.apply(5));
+    agree(body.apply(8));
+    for (int i = 4; i < defs.size(); i++) confluent(body.apply(i));
+    var four = body.apply(4).normalize(NormalizeMode.NBE);
+    assertTrue(four instanceof AppTerm.ConCall);
+    assertEquals("suc (suc (suc (suc (zero))))", render(four));
+  }
+}
@@ -3,19 +3,28 @@
 package org.aya.core;
 
 import org.aya.api.util.NormalizeMode;
+import org.aya.core.def.DataDef;
 import org.aya.core.def.FnDef;
+import org.aya.core.pat.Pat;
+import org.aya.core.pat.PatMatcher;
 import org.aya.core.term.AppTerm;
 import org.aya.core.term.LamTerm;
 import org.aya.core.term.RefTerm;
 import org.aya.core.term.Term;
+import org.aya.core.visitor.Substituter;
+import org.aya.generic.Arg;
+import org.aya.ref.LocalVar;
 import org.aya.test.Lisp;
 import org.aya.test.LispTestCase;
 import org.aya.tyck.TyckDeclTest;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.MutableHashMap;
 import org.intellij.lang.annotations.Language;
 import org.junit.jupiter.api.Test;
 
 import java.util.Objects;
 import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -65,6 +74,25 @@ public class NormalizeTest extends LispTestCase {
     assertTrue(((LamTerm) nf).body() instanceof RefTerm);
   }
 
+  @Test
+  public void nfNormalizeSpine() {
+    var term = Lisp.parse("(app (app f (app (lam (a (U) ex) a) b)) c)", vars);
+    assertEquals(term, term.normalize(NormalizeMode.WHNF));
+    assertEquals(Lisp.parse("(app (app f b) c)", vars), term.normalize(NormalizeMode.NF));
+    var app = (AppTerm.Apply) term;
+    assertEquals(Lisp.parse("f", vars), app.fn());
+    assertEquals(2, app.args().size());
+    assertEquals(term, AppTerm.make(app.fn(), app.args()));
+  }
+
+  @Test
+  public void betaSpine() {
+    var term = Lisp.parse("(app (app (lam (x (U) ex) (lam (x (U) ex) x)) a) b)", vars);
+    assertEquals(Lisp.parse("b", vars), term.normalize(NormalizeMode.WHNF));
+    term = Lisp.parse("(app (app (app (lam (x (U) ex) (lam (y (U) ex) (app y x))) a) (lam (z (U) ex) z)) c)", vars);
+    assertEquals(Lisp.parse("(app a c)", vars), term.normalize(NormalizeMode.NF));
+  }
+
   @Test
   public void unfoldDef() {
     // (x y : U)
@@ -103,4 +131,43 @@ public class NormalizeTest extends LispTestCase {
     assertTrue(normalizer.apply(5) instanceof RefTerm ref
       && Objects.equals(ref.var().name(), "a"));
   }
+
+  @Test
+  public void caseTreeAgreesWithClauses() {
+    var defs = TyckDeclTest.successTyckDecls("""
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def tracy (a, b : Nat) : Nat
+       | zero, a => a
+       | a, zero => a
+       | suc a, b => suc (tracy a b)
+       | a, suc b => suc (tracy a b)
+      \\def nested (a, b : Nat) : Nat
+       | suc zero, c => c
+       | suc a, suc b => a
+       | zero, b => b
+       | a, b => zero""");
+    var nat = (DataDef) defs.get(0);
+    var zero = new AppTerm.ConCall(nat.ctors().get(0).ref(), ImmutableSeq.empty(), ImmutableSeq.empty());
+    UnaryOperator<Term> suc = t -> new AppTerm.ConCall(nat.ctors().get(1).ref(), ImmutableSeq.empty(), ImmutableSeq.of(Arg.explicit(t)));
+    var x = new RefTerm(new LocalVar("x"));
+    var terms = ImmutableSeq.of(zero, suc.apply(zero), suc.apply(suc.apply(zero)), x, suc.apply(x));
+    for (var def : defs.view().drop(1).map(def -> (FnDef) def)) {
+      var clauses = def.body().getRightValue();
+      for (var a : terms)
+        for (var b : terms) {
+          var args = ImmutableSeq.of(Arg.explicit(a), Arg.explicit(b));
+          var expected = -1;
+          Substituter.TermSubst expectedSubst = null;
+          for (int i = 0; i < clauses.size() && expected < 0; i++) {
+            expectedSubst = PatMatcher.tryBuildSubst(((Pat.Clause.Match) clauses.get(i)).patterns(), args);
+            if (expectedSubst != null) expected = i;
+          }
+          var subst = new Substituter.TermSubst(new MutableHashMap<>());
+          assertEquals(expected, Objects.requireNonNull(def.caseTree()).match(args, subst));
+          if (expectedSubst == null) continue;
+          assertEquals(expectedSubst.map().size(), subst.map().size());
+          expectedSubst.map().forEach((var, term) -> assertEquals(term, subst.map().get(var)));
+        }
+    }
+  }
 }
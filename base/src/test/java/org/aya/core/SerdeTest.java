@@ -0,0 +1,180 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.core;
+
+import org.aya.api.error.CollectReporter;
+import org.aya.api.error.Problem;
+import org.aya.api.ref.DefVar;
+import org.aya.api.util.NormalizeMode;
+import org.aya.concrete.Decl;
+import org.aya.concrete.resolve.context.Context;
+import org.aya.concrete.resolve.module.CachedModuleLoader;
+import org.aya.concrete.resolve.module.CompiledModuleLoader;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.FnDef;
+import org.aya.core.serde.CompiledModule;
+import org.aya.core.serde.CoreReader;
+import org.aya.core.serde.CoreWriter;
+import org.aya.core.serde.DefTable;
+import org.aya.core.term.AppTerm;
+import org.aya.core.visitor.DefRebinder;
+import org.aya.test.ThrowingReporter;
+import org.aya.tyck.TyckDeclTest;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerdeTest {
+  @Test
+  public void roundTrip() throws IOException {
+    var defs = TyckDeclTest.successTyckDecls("""
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def add (a, b : Nat) : Nat
+       | zero, a => a
+       | suc a, b => suc (add a b)
+      \\def two : Nat => add (suc zero) (suc zero)""");
+    var table = new DefTable();
+    var nat = (DataDef) defs.first();
+    table.register("Nat", 0, ImmutableSeq.of(nat));
+    // the data type is referred to as a definition of another module
+    var header = new CompiledModule.Header(42, ImmutableSeq.of());
+    var out = new ByteArrayOutputStream();
+    CoreWriter.write(out, table, new CompiledModule(header, defs.drop(1), MutableHashMap.of()));
+    var reader = new CoreReader(new ByteArrayInputStream(out.toByteArray()), table);
+    assertEquals(header, reader.readHeader());
+    var read = reader.readBody(header).defs();
+    assertEquals(2, read.size());
+    var two = (FnDef) read.last();
+    assertSame(two, two.ref().core);
+    assertEquals("two", two.ref().name());
+    var normalized = two.body().getLeftValue().normalize(NormalizeMode.NF);
+    assertTrue(normalized instanceof AppTerm.ConCall conCall && conCall.conHead() == nat.ctors().last().ref());
+    assertEquals(((FnDef) defs.last()).result().toDoc(), two.result().toDoc());
+  }
+
+  @Test
+  public void lazyBody() throws IOException {
+    var defs = TyckDeclTest.successTyckDecls("""
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def nat : \\Set => Nat""");
+    var nat = (DataDef) defs.first();
+    var writeTable = new DefTable();
+    writeTable.register("Nat", 0, ImmutableSeq.of(nat));
+    var header = new CompiledModule.Header(42, ImmutableSeq.of());
+    var out = new ByteArrayOutputStream();
+    CoreWriter.write(out, writeTable, new CompiledModule(header, defs.drop(1), MutableHashMap.of()));
+    // the body refers to a definition not in the table yet, so it must not be read with the signature
+    var readTable = new DefTable();
+    var reader = new CoreReader(new ByteArrayInputStream(out.toByteArray()), readTable);
+    var fn = (FnDef) reader.readBody(reader.readHeader()).defs().first();
+    readTable.register("Nat", 0, ImmutableSeq.of(nat));
+    assertTrue(fn.body().getLeftValue() instanceof AppTerm.DataCall dataCall && dataCall.dataRef() == nat.ref());
+    assertSame(fn.body(), fn.body());
+  }
+
+  @Test
+  public void reloaded() {
+    var code = """
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def one : Nat => suc zero""";
+    var table = new DefTable();
+    var old = TyckDeclTest.successTyckDecls(code);
+    table.register("nat", 42, old);
+    var now = TyckDeclTest.successTyckDecls(code);
+    table.register("nat", 42, now);
+    assertSame(now.last().ref(), table.current(old.last().ref()));
+    // the definitions of the earlier load are moved to the ones registered now
+    var call = new AppTerm.FnCall(cast(old.last().ref()), ImmutableSeq.of());
+    var rebound = (AppTerm.FnCall) new DefRebinder(MutableHashMap.of(), table).term(call);
+    assertSame(now.last().ref(), rebound.fnRef());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static DefVar<FnDef, Decl.FnDecl> cast(DefVar<?, ?> ref) {
+    return (DefVar<FnDef, Decl.FnDecl>) ref;
+  }
+
+  @Test
+  public void corrupted() throws IOException {
+    var header = new CompiledModule.Header(42, ImmutableSeq.of());
+    var out = new ByteArrayOutputStream();
+    CoreWriter.write(out, new DefTable(), new CompiledModule(header, ImmutableSeq.of(), MutableHashMap.of()));
+    var bytes = out.toByteArray();
+    // the number of definitions, right after the header without dependencies
+    Arrays.fill(bytes, 20, 24, (byte) 0xFF);
+    var reader = new CoreReader(new ByteArrayInputStream(bytes), new DefTable());
+    assertEquals(header, reader.readHeader());
+    assertThrows(IOException.class, () -> reader.readBody(header));
+  }
+
+  @Test
+  public void corruptedBody() throws IOException {
+    var defs = TyckDeclTest.successTyckDecls("""
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def one : Nat => suc zero""");
+    var header = new CompiledModule.Header(42, ImmutableSeq.of());
+    var out = new ByteArrayOutputStream();
+    CoreWriter.write(out, new DefTable(), new CompiledModule(header, defs, MutableHashMap.of()));
+    var bytes = out.toByteArray();
+    // the last byte of the body of one, right before the number of exports
+    bytes[bytes.length - 5] ^= 1;
+    var reader = new CoreReader(new ByteArrayInputStream(bytes), new DefTable());
+    assertEquals(header, reader.readHeader());
+    assertThrows(IOException.class, () -> reader.readBody(header));
+  }
+
+  @Test
+  public void moduleCache(@TempDir Path dir) throws IOException {
+    Files.writeString(dir.resolve("a"), """
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def one : Nat => suc zero""");
+    Files.writeString(dir.resolve("b"), """
+      \\import a
+      \\open a
+      \\def two : Nat => one""");
+    var fresh = load(dir);
+    assertNotNull(((DefVar<?, ?>) fresh).concrete);
+    assertTrue(Files.exists(CompiledModuleLoader.cacheFile(dir.resolve("a"))));
+    assertTrue(Files.exists(CompiledModuleLoader.cacheFile(dir.resolve("b"))));
+    var cached = load(dir);
+    assertNull(((DefVar<?, ?>) cached).concrete);
+    assertTrue(((DefVar<?, ?>) cached).core instanceof FnDef);
+    Files.writeString(dir.resolve("a"), """
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def one : Nat => suc (suc zero)""");
+    // the dependency changed, so the module is checked again
+    assertNotNull(((DefVar<?, ?>) load(dir)).concrete);
+  }
+
+  @Test
+  public void cacheNotWritten(@TempDir Path dir) throws IOException {
+    Files.writeString(dir.resolve("a"), """
+      \\open \\data Nat : \\Set | zero | suc Nat""");
+    var cacheFile = CompiledModuleLoader.cacheFile(dir.resolve("a"));
+    Files.createDirectory(cacheFile);
+    var problems = new CollectReporter();
+    var loader = new CachedModuleLoader(new CompiledModuleLoader(dir, problems, null, new DefTable()));
+    // the module is still loaded, and the failure is reported
+    assertNotNull(loader.load(ImmutableSeq.of("a")));
+    assertEquals(1, problems.errors().size());
+    assertEquals(Problem.Severity.INFO, problems.errors().first().level());
+    assertTrue(problems.errors().first().describe().renderWithPageWidth(Integer.MAX_VALUE).contains(cacheFile.toString()));
+  }
+
+  private static Object load(Path dir) {
+    var loader = new CachedModuleLoader(new CompiledModuleLoader(dir, ThrowingReporter.INSTANCE, null, new DefTable()));
+    var exports = loader.load(ImmutableSeq.of("b"));
+    assertNotNull(exports);
+    return exports.get(Context.TOP_LEVEL_MOD_NAME).get("two");
+  }
+}
@@ -2,7 +2,9 @@
 // Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
 package org.aya.core;
 
+import org.aya.api.util.KernelCounter;
 import org.aya.core.term.AppTerm;
+import org.aya.core.term.TermSummary;
 import org.aya.core.term.UnivTerm;
 import org.aya.core.visitor.Substituter;
 import org.aya.test.Lisp;
@@ -32,4 +34,48 @@ public class SubstTest extends LispTestCase {
     assertTrue(term instanceof AppTerm);
     assertNotEquals(term, term.subst(new Substituter.TermSubst(vars.get("beta"), UnivTerm.OMEGA)));
   }
+
+  @Test
+  public void untouchedSubtrees() {
+    var term = Lisp.parse("(app (app c (lam (a (U) ex) a)) (app tony beta))", vars);
+    var app = (AppTerm.Apply) term;
+    assertFalse(app.fn().summary().mayContain(TermSummary.bit(vars.get("beta"))));
+    var subst = term.subst(new Substituter.TermSubst(vars.get("beta"), UnivTerm.OMEGA));
+    assertNotEquals(term, subst);
+    assertSame(app.fn(), ((AppTerm.Apply) subst).fn());
+    assertSame(app.args().first(), ((AppTerm.Apply) subst).args().first());
+    assertSame(term, term.subst(new Substituter.TermSubst(() -> "lambda", UnivTerm.OMEGA)));
+  }
+
+  @Test
+  public void countedOnce() {
+    var term = Lisp.parse("(app tony beta)", vars);
+    KernelCounter.enable(true);
+    try {
+      var before = KernelCounter.snapshot().get(KernelCounter.SubstituteNode);
+      term.subst(new Substituter.TermSubst(vars.get("beta"), UnivTerm.OMEGA));
+      // the application and the two references
+      assertEquals(3, KernelCounter.snapshot().get(KernelCounter.SubstituteNode) - before);
+    } finally {
+      KernelCounter.enable(false);
+    }
+  }
+
+  @Test
+  public void composition() {
+    var x = Lisp.parse("x", vars);
+    var y = Lisp.parse("y", vars);
+    var w = Lisp.parse("w", vars);
+    var subst = new Substituter.TermSubst(vars.get("x"), Lisp.parse("(app y z)", vars));
+    subst.add(vars.get("y"), Lisp.parse("a", vars));
+    subst.put(vars.get("w"), y);
+    assertEquals(Lisp.parse("(app a z)", vars), x.subst(subst));
+    assertEquals(y, w.subst(subst));
+    subst.add(vars.get("a"), Lisp.parse("b", vars));
+    subst.add(vars.get("y"), Lisp.parse("c", vars));
+    assertEquals(Lisp.parse("(app b z)", vars), x.subst(subst));
+    assertEquals(Lisp.parse("c", vars), y.subst(subst));
+    assertEquals(Lisp.parse("c", vars), w.subst(subst));
+    assertEquals(4, subst.map().size());
+  }
 }
@@ -2,19 +2,26 @@
 // Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
 package org.aya.tyck;
 
+import org.aya.api.error.SourcePos;
+import org.aya.api.util.KernelCounter;
+import org.aya.core.term.AppTerm;
 import org.aya.core.term.Term;
+import org.aya.generic.Arg;
 import org.aya.ref.LocalVar;
 import org.aya.test.Lisp;
 import org.aya.test.LispTestCase;
+import org.aya.tyck.unify.PatDefEq;
 import org.aya.tyck.unify.TypedDefEq;
+import org.aya.util.Ordering;
 import org.glavo.kala.collection.immutable.ImmutableSeq;
 import org.glavo.kala.collection.mutable.MutableHashMap;
 import org.glavo.kala.tuple.Tuple2;
 import org.intellij.lang.annotations.Language;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class DefEqTest extends LispTestCase {
   private final Term typeU = Lisp.parse("(U)");
@@ -111,6 +118,93 @@ public class DefEqTest extends LispTestCase {
     assertFalse(eq.compare(etaed, Lisp.parse("tt", vars), type));
   }
 
+  @Test
+  public void dependentSigma() {
+    var type = Lisp.parse("(Sigma (A (U) ex (a A ex null)) A)");
+    var lhs = "(tup (U) y y)";
+    assertTrue(eq.compare(Lisp.parse(lhs, vars), Lisp.parse(lhs, vars), type));
+    assertFalse(eq.compare(Lisp.parse(lhs, vars), Lisp.parse("(tup (U) y x)", vars), type));
+    assertFalse(eq.compare(Lisp.parse(lhs, vars), Lisp.parse("(tup (U) x y)", vars), type));
+  }
+
+  @Test
+  public void postponed() {
+    var x = Lisp.parse("x", vars);
+    var y = Lisp.parse("y", vars);
+    var metaContext = new MetaContext(reporter);
+    var defeq = new TypedDefEq(eq -> new PatDefEq(eq, Ordering.Eq, metaContext),
+      MutableHashMap.of(vars.get("x"), typeU, vars.get("y"), typeU), SourcePos.NONE);
+    var alpha = new AppTerm.HoleApp(new LocalVar("alpha"));
+    var beta = new AppTerm.HoleApp(new LocalVar("beta"));
+    // ?alpha ?beta is not a pattern until ?beta is solved
+    assertTrue(defeq.compare(AppTerm.make(alpha, Arg.explicit(beta)), x, typeU));
+    assertFalse(metaContext.postponed().isEmpty());
+    assertFalse(metaContext.metas().isSolved(alpha.var()));
+    assertTrue(defeq.compare(beta, y, typeU));
+    assertTrue(metaContext.postponed().isEmpty());
+    var solution = metaContext.metas().solution(alpha.var());
+    assertNotNull(solution);
+    assertEquals(x, AppTerm.make(solution, Arg.explicit(y)));
+  }
+
+  @Test
+  public void postponedFailure() {
+    var x = Lisp.parse("x", vars);
+    var metaContext = new MetaContext(reporter);
+    var defeq = new TypedDefEq(eq -> new PatDefEq(eq, Ordering.Eq, metaContext),
+      MutableHashMap.of(vars.get("x"), typeU, vars.get("y"), typeU), SourcePos.NONE);
+    var alpha = new AppTerm.HoleApp(new LocalVar("alpha"));
+    var beta = new AppTerm.HoleApp(new LocalVar("beta"));
+    assertTrue(defeq.compare(AppTerm.make(alpha, Arg.explicit(beta)), x, typeU));
+    var constraint = metaContext.postponed().pending().first();
+    // solved behind the back of the queue, so only waking all of them finds out
+    metaContext.metas().solve(alpha.var(), Lisp.parse("(lam (a (U) ex) y)", vars), existing -> false);
+    assertSame(constraint, metaContext.postponed().wakeAll(metaContext));
+  }
+
+  @Test
+  public void attempt() {
+    var x = Lisp.parse("x", vars);
+    var y = Lisp.parse("y", vars);
+    var metaContext = new MetaContext(reporter);
+    var defeq = new TypedDefEq(eq -> new PatDefEq(eq, Ordering.Eq, metaContext),
+      MutableHashMap.of(vars.get("x"), typeU, vars.get("y"), typeU), SourcePos.NONE);
+    var alpha = new AppTerm.HoleApp(new LocalVar("alpha"));
+    var beta = new AppTerm.HoleApp(new LocalVar("beta"));
+    // solves both metas through the postponed constraint, then fails
+    assertFalse(metaContext.attempt(() -> defeq.compare(AppTerm.make(alpha, Arg.explicit(beta)), x, typeU)
+      && defeq.compare(beta, x, typeU)
+      && defeq.compare(x, y, typeU)));
+    assertTrue(metaContext.postponed().isEmpty());
+    assertFalse(metaContext.metas().isSolved(alpha.var()));
+    assertFalse(metaContext.metas().isSolved(beta.var()));
+    assertTrue(metaContext.attempt(() -> defeq.compare(beta, y, typeU)));
+    assertEquals(y, metaContext.metas().solution(beta.var()));
+  }
+
+  @Test
+  public void counters() {
+    var x = Lisp.parse("x", vars);
+    var redex = Lisp.parse("(app (lam (a (U) ex) a) x)", vars);
+    KernelCounter.enable(true);
+    var before = KernelCounter.snapshot();
+    Map<KernelCounter, Long> same, after;
+    try {
+      assertTrue(eq.compare(x, x, typeU));
+      same = KernelCounter.snapshot();
+      assertTrue(eq.compare(redex, x, typeU));
+      after = KernelCounter.snapshot();
+    } finally {
+      KernelCounter.enable(false);
+    }
+    assertEquals(1, same.get(KernelCounter.DefEqCompare) - before.get(KernelCounter.DefEqCompare));
+    assertEquals(1, same.get(KernelCounter.DefEqFastPath) - before.get(KernelCounter.DefEqFastPath));
+    assertTrue(after.get(KernelCounter.BetaReduction) > same.get(KernelCounter.BetaReduction));
+    // nothing is counted when disabled
+    eq.compare(redex, x, typeU);
+    assertEquals(after, KernelCounter.snapshot());
+  }
+
   @Test
   public void projReduce() {
     assertTrue(eq.compare(Lisp.parse("(proj (tup (app (lam (a (U) ex) a) x) y) 1)", vars), Lisp.parse("(app (lam (a (U) ex) a) x)", vars), typeU));
@@ -0,0 +1,77 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.tyck;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.aya.api.error.SourcePos;
+import org.aya.api.util.NormalizeMode;
+import org.aya.core.term.UnivTerm;
+import org.aya.core.visitor.TermSize;
+import org.aya.test.Lisp;
+import org.aya.test.LispTestCase;
+import org.aya.tyck.unify.PatDefEq;
+import org.aya.tyck.unify.TypedDefEq;
+import org.aya.util.JfrEvents;
+import org.aya.util.Ordering;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JfrEventsTest extends LispTestCase {
+  @Test
+  public void events(@TempDir Path dir) throws IOException {
+    var depth = 20;
+    var big = Lisp.parse("(app (lam (a (U) ex) a) ".repeat(depth) + "b" + ")".repeat(depth), vars);
+    var pi = "(Pi (a (U) ex) ".repeat(2 * depth) + "(U)" + ")".repeat(2 * depth);
+    var size = TermSize.of(big);
+    var piSize = TermSize.of(Lisp.parse(pi));
+    assertTrue(size >= JfrEvents.LARGE_TERM);
+    var defeq = new TypedDefEq(eq -> new PatDefEq(eq, Ordering.Eq, new MetaContext(reporter)),
+      MutableHashMap.of(), SourcePos.NONE);
+    List<RecordedEvent> events;
+    try (var recording = new Recording()) {
+      recording.enable(JfrEvents.Tyck.class);
+      recording.enable(JfrEvents.Normalize.class);
+      recording.enable(JfrEvents.Unify.class);
+      recording.start();
+      TyckDeclTest.successTyckDecls("""
+        \\open \\data Nat : \\Set | zero | suc Nat
+        \\def one : Nat => suc zero""");
+      JfrEvents.tyck("big", SourcePos.NONE, () -> {
+        assertEquals(Lisp.parse("b", vars), big.normalize(NormalizeMode.NF));
+        return defeq.compare(big, big, UnivTerm.OMEGA);
+      });
+      JfrEvents.tyck("pi", SourcePos.NONE, () -> defeq.compare(Lisp.parse(pi), Lisp.parse(pi), UnivTerm.OMEGA));
+      recording.stop();
+      var file = dir.resolve("tyck.jfr");
+      recording.dump(file);
+      events = RecordingFile.readAllEvents(file);
+    }
+    assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("org.aya.Tyck")
+      && event.getString("declaration").equals("one") && event.getInt("line") == 2));
+    // the small terms, like the types of the declarations above, are not recorded
+    var normalize = events.stream().filter(event -> event.getEventType().getName().equals("org.aya.Normalize")
+      && !event.getString("declaration").equals("pi")).collect(Collectors.toList());
+    assertEquals(1, normalize.size());
+    assertEquals("big", normalize.get(0).getString("declaration"));
+    assertEquals("NF", normalize.get(0).getString("mode"));
+    assertEquals(size, normalize.get(0).getInt("size"));
+    // the comparisons of the large subterms are inside the ones of the whole terms, so they are not recorded
+    var unify = events.stream().filter(event -> event.getEventType().getName().equals("org.aya.Unify")).collect(Collectors.toList());
+    assertEquals(List.of(2 * size, 2 * piSize), unify.stream().map(event -> event.getInt("size")).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void tupleSize() {
+    assertEquals(4, TermSize.of(Lisp.parse("(tup (U) a b)", vars)));
+  }
+}
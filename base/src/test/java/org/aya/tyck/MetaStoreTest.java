@@ -0,0 +1,79 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.tyck;
+
+import org.aya.core.term.AppTerm;
+import org.aya.core.term.RefTerm;
+import org.aya.core.term.UnivTerm;
+import org.aya.ref.LocalVar;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetaStoreTest {
+  @Test
+  public void identity() {
+    var store = new MetaStore();
+    var a = new LocalVar("_");
+    var b = new LocalVar("_");
+    assertEquals(a, b);
+    assertNotEquals(store.id(a), store.id(b));
+    assertEquals(store.id(a), store.id(a));
+    store.solve(a, UnivTerm.OMEGA, existing -> false);
+    assertTrue(store.isSolved(a));
+    assertFalse(store.isSolved(b));
+  }
+
+  @Test
+  public void unionFind() {
+    var store = new MetaStore();
+    var metas = new LocalVar[5];
+    for (int i = 0; i < metas.length; i++) metas[i] = new LocalVar("m" + i);
+    for (int i = 0; i + 1 < metas.length; i++) store.solve(metas[i], new AppTerm.HoleApp(metas[i + 1]), existing -> false);
+    for (var meta : metas) assertNull(store.solution(meta));
+    store.solve(metas[2], UnivTerm.OMEGA, existing -> false);
+    for (var meta : metas) assertSame(UnivTerm.OMEGA, store.solution(meta));
+  }
+
+  @Test
+  public void bothSolved() {
+    var store = new MetaStore();
+    var a = new LocalVar("a");
+    var b = new LocalVar("b");
+    var a0 = new RefTerm(new LocalVar("a0"));
+    var b0 = new RefTerm(new LocalVar("b0"));
+    store.solve(a, a0, existing -> false);
+    store.solve(b, b0, existing -> false);
+    assertEquals(-1, store.solve(a, new AppTerm.HoleApp(b), existing -> false));
+    assertSame(a0, store.solution(a));
+    assertSame(b0, store.solution(b));
+    assertEquals(-1, store.solve(a, b0, existing -> existing == b0));
+    assertSame(a0, store.solution(a));
+    store.solve(a, new AppTerm.HoleApp(b), existing -> existing == a0);
+    assertSame(a0, store.solution(a));
+    assertSame(a0, store.solution(b));
+  }
+
+  @Test
+  public void rollback() {
+    var store = new MetaStore();
+    var a = new LocalVar("a");
+    var b = new LocalVar("b");
+    var c = new LocalVar("c");
+    store.solve(a, new AppTerm.HoleApp(b), existing -> false);
+    var mark = store.mark();
+    store.solve(b, new AppTerm.HoleApp(c), existing -> false);
+    store.solve(c, UnivTerm.OMEGA, existing -> false);
+    assertSame(UnivTerm.OMEGA, store.solution(a));
+    store.rollback(mark);
+    assertNull(store.solution(a));
+    assertNull(store.solution(c));
+    store.solve(b, UnivTerm.OMEGA, existing -> false);
+    assertSame(UnivTerm.OMEGA, store.solution(a));
+    assertNull(store.solution(c));
+    mark = store.mark();
+    store.solve(c, UnivTerm.OMEGA, existing -> false);
+    store.commit(mark);
+    assertSame(UnivTerm.OMEGA, store.solution(c));
+  }
+}
@@ -3,8 +3,9 @@
 package org.aya.tyck;
 
 import org.aya.api.ref.Var;
+import org.aya.api.util.NormalizeMode;
+import org.aya.concrete.Decl;
 import org.aya.concrete.ParseTest;
-import org.aya.concrete.Signatured;
 import org.aya.concrete.Stmt;
 import org.aya.concrete.parse.AyaParsing;
 import org.aya.concrete.resolve.context.EmptyContext;
@@ -14,17 +15,20 @@ import org.aya.core.def.DataDef;
 import org.aya.core.def.Def;
 import org.aya.core.def.FnDef;
 import org.aya.core.pat.Pat;
+import org.aya.core.term.AppTerm;
 import org.aya.core.term.RefTerm;
+import org.aya.tyck.order.TyckCache;
+import org.aya.tyck.order.TyckScheduler;
 import org.aya.test.Lisp;
 import org.aya.test.ThrowingReporter;
 import org.glavo.kala.collection.immutable.ImmutableSeq;
 import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.HashMap;
-import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -73,15 +77,77 @@ public class TyckDeclTest {
     assertEquals(zeroCtor.ref(), ((Pat.Ctor) zeroToZero.patterns().get(0)).ref());
   }
 
-  public static @NotNull ImmutableSeq<Def> successTyckDecls(@Language("TEXT") @NonNls @NotNull String text) {
+  @Test
+  public void scheduledTyck() {
+    var decls = resolveDecls("""
+      \\def two : Nat => suc one
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def one : Nat => suc zero
+      \\def id (n : Nat) : Nat => n
+      \\def idTwo : Nat => id two""");
+    var defs = TyckScheduler.tyck(decls, ThrowingReporter.INSTANCE, null);
+    assertEquals(decls.map(decl -> decl.ref().name()), defs.map(def -> def.ref().name()));
+    decls.forEach(decl -> assertNotNull(decl.ref().core));
+  }
+
+  @Test
+  public void incrementalTyck() {
+    var code = """
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def add (a, b : Nat) : Nat
+       | zero, a => a
+       | suc a, b => suc (%s)
+      \\def two : Nat => add (suc zero) (suc zero)""";
+    var cache = new TyckCache();
+    TyckScheduler.tyck(resolveDecls(code.formatted("add a b")), ThrowingReporter.INSTANCE, null, cache);
+    assertEquals(0, cache.reused());
+    // positions are not a part of fingerprints
+    var decls = resolveDecls("\n\n" + code.formatted("add a  b"));
+    var defs = TyckScheduler.tyck(decls, ThrowingReporter.INSTANCE, null, cache);
+    assertEquals(3, cache.reused());
+    decls.forEach(decl -> assertSame(decl.ref().core, defs.get(decls.indexOf(decl))));
+    var two = (FnDef) defs.last();
+    var call = (AppTerm.FnCall) two.body().getLeftValue();
+    assertSame(decls.get(1).ref(), call.fnRef());
+    var normalized = call.normalize(NormalizeMode.NF);
+    var suc = ((DataDef) defs.first()).ctors().last();
+    assertTrue(normalized instanceof AppTerm.ConCall conCall && conCall.conHead() == suc.ref());
+    // only the data type is reused, as the others depend on the changed function
+    TyckScheduler.tyck(resolveDecls(code.formatted("add b a")), ThrowingReporter.INSTANCE, null, cache);
+    assertEquals(1, cache.reused());
+  }
+
+  @Test
+  public void hashConsedTyck() {
+    TyckOptions.HASH_CONSING = true;
+    try {
+      var defs = successTyckDecls("""
+        \\open \\data Nat : \\Set | zero | suc Nat
+        \\def add (a, b : Nat) : Nat
+         | zero, a => a
+         | suc a, b => suc (add a b)
+        \\def two : Nat => add (suc zero) (suc zero)""");
+      assertEquals(3, defs.size());
+      defs.forEach(Assertions::assertNotNull);
+      // the declarations are checked by different tyckers sharing the table
+      var add = (FnDef) defs.get(1);
+      assertSame(add.telescope().first().type(), ((FnDef) defs.get(2)).result());
+    } finally {
+      TyckOptions.HASH_CONSING = false;
+    }
+  }
+
+  private static @NotNull ImmutableSeq<Decl> resolveDecls(@Language("TEXT") @NonNls @NotNull String text) {
     var decls = ParseTest.INSTANCE
       .visitProgram(AyaParsing.parser(text).program());
     var ssr = new StmtShallowResolver(new EmptyModuleLoader());
     var ctx = new EmptyContext(ThrowingReporter.INSTANCE).derive();
     decls.forEach(d -> d.accept(ssr, ctx));
     decls.forEach(Stmt::resolve);
-    return decls
-      .map(i -> i instanceof Signatured s ? s.tyck(ThrowingReporter.INSTANCE, null) : null)
-      .filter(Objects::nonNull);
+    return decls.view().filter(s -> s instanceof Decl).map(s -> (Decl) s).toImmutableSeq();
+  }
+
+  public static @NotNull ImmutableSeq<Def> successTyckDecls(@Language("TEXT") @NonNls @NotNull String text) {
+    return resolveDecls(text).map(decl -> decl.tyck(ThrowingReporter.INSTANCE, null));
   }
 }
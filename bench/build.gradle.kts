@@ -0,0 +1,29 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+dependencies {
+  val deps: java.util.Properties by rootProject.ext
+  implementation("org.openjdk.jmh", "jmh-core", version = deps.getProperty("version.jmh"))
+  annotationProcessor("org.openjdk.jmh", "jmh-generator-annprocess", version = deps.getProperty("version.jmh"))
+  implementation(project(":base"))
+  implementation(project(":parser"))
+  implementation(project(":pretty"))
+  implementation(project(":tester"))
+}
+
+plugins {
+  id("com.github.johnrengelman.shadow")
+}
+
+tasks.withType<Jar>().configureEach {
+  manifest.attributes["Main-Class"] = "org.openjdk.jmh.Main"
+}
+
+// ./gradlew :bench:jmh -PjmhArgs="Normalize -f 1"
+task<JavaExec>("jmh") {
+  group = "verification"
+  classpath = sourceSets.main.get().runtimeClasspath
+  mainClass.set("org.openjdk.jmh.Main")
+  workingDir = rootProject.projectDir
+  val jmhArgs = project.findProperty("jmhArgs")
+  if (jmhArgs != null) args(jmhArgs.toString().split(" "))
+}
@@ -0,0 +1,68 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.bench;
+
+import org.aya.concrete.parse.AyaParsing;
+import org.aya.concrete.parse.AyaProducer;
+import org.aya.core.def.Def;
+import org.aya.core.def.FnDef;
+import org.aya.pretty.backend.DocStringPrinter;
+import org.aya.pretty.doc.Doc;
+import org.aya.test.ThrowingReporter;
+import org.aya.tyck.ExprTycker;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the tester corpus and renders its checked definitions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontendBench {
+  @Param({"80"})
+  public int pageWidth;
+
+  private ImmutableSeq<String> sources;
+  private Doc doc;
+
+  @Setup
+  public void setup() throws IOException {
+    sources = Programs.corpus();
+    var docs = Buffer.<Doc>of();
+    for (var source : sources) {
+      try {
+        for (var def : Programs.tyck(source)) docs.appendAll(docs(def));
+      } catch (ExprTycker.TyckerException ignored) {
+        // implicit-pats.aya hits the unimplemented implicit patterns of constructors, it is still parsed
+      }
+    }
+    doc = Doc.vcat(docs.toArray(Doc.class));
+  }
+
+  private static ImmutableSeq<Doc> docs(Def def) {
+    var docs = def.telescope().view().map(param -> param.type().toDoc()).appended(def.result().toDoc());
+    if (def instanceof FnDef fn && fn.body().isLeft()) docs = docs.appended(fn.body().getLeftValue().toDoc());
+    return docs.toImmutableSeq();
+  }
+
+  @Benchmark
+  public void parse(Blackhole blackhole) {
+    var reporter = ThrowingReporter.INSTANCE;
+    for (var source : sources)
+      blackhole.consume(new AyaProducer(reporter).visitProgram(AyaParsing.program(source, reporter)));
+  }
+
+  @Benchmark
+  public String render() {
+    return new DocStringPrinter().render(new DocStringPrinter.Config(pageWidth), doc);
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.bench;
+
+import org.aya.api.error.SourcePos;
+import org.aya.api.ref.Var;
+import org.aya.api.util.NormalizeMode;
+import org.aya.core.def.FnDef;
+import org.aya.core.pat.Pat;
+import org.aya.core.pat.PatMatcher;
+import org.aya.core.term.AppTerm;
+import org.aya.core.term.Term;
+import org.aya.core.visitor.Substituter;
+import org.aya.generic.Arg;
+import org.aya.test.Lisp;
+import org.aya.test.ThrowingReporter;
+import org.aya.tyck.MetaContext;
+import org.aya.tyck.unify.PatDefEq;
+import org.aya.tyck.unify.TypedDefEq;
+import org.aya.util.Ordering;
+import org.glavo.kala.collection.SeqLike;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The terms are built from the addition of two numerals of the given size,
+ * and an application spine of the given length from the Lisp DSL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBench {
+  @Param({"16", "256"})
+  public int size;
+
+  private Term sum;
+  private Term sumNF;
+  private Term sumType;
+  private ImmutableSeq<ImmutableSeq<Pat>> patterns;
+  private SeqLike<Arg<Term>> args;
+  private Term spine;
+  private Substituter.TermSubst subst;
+
+  @Setup
+  public void setup() {
+    var numeral = Programs.numeral(size);
+    var defs = Programs.tyck(Programs.NAT + "\\def sum : Nat => add (" + numeral + ") (" + numeral + ")");
+    var add = (FnDef) defs.get(1);
+    var def = (FnDef) defs.last();
+    sum = def.body().getLeftValue();
+    sumNF = sum.normalize(NormalizeMode.NF);
+    sumType = def.result();
+    patterns = add.body().getRightValue().view()
+      .filter(clause -> clause instanceof Pat.Clause.Match)
+      .map(clause -> ((Pat.Clause.Match) clause).patterns())
+      .toImmutableSeq();
+    args = ((AppTerm.FnCall) sum).args();
+    Map<String, Var> vars = new HashMap<>();
+    // (app (app (app f x) x) x) with size applications
+    spine = Lisp.parse("(app ".repeat(size) + "f" + " x)".repeat(size), vars);
+    subst = new Substituter.TermSubst(vars.get("x"), sumNF);
+  }
+
+  @Benchmark
+  public Term normalizeWHNF() {
+    return sum.normalize(NormalizeMode.WHNF);
+  }
+
+  @Benchmark
+  public Term normalizeNF() {
+    return sum.normalize(NormalizeMode.NF);
+  }
+
+  @Benchmark
+  public Term substitute() {
+    return spine.subst(subst);
+  }
+
+  @Benchmark
+  public boolean compare() {
+    var eq = new TypedDefEq(eq1 -> new PatDefEq(eq1, Ordering.Eq, new MetaContext(ThrowingReporter.INSTANCE)),
+      MutableHashMap.of(), SourcePos.NONE);
+    return eq.compare(sum, sumNF, sumType);
+  }
+
+  @Benchmark
+  public void match(Blackhole blackhole) {
+    for (var pats : patterns) blackhole.consume(PatMatcher.tryBuildSubst(pats, args));
+  }
+}
@@ -0,0 +1,67 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.bench;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.aya.concrete.parse.AyaParsing;
+import org.aya.concrete.parse.AyaTokenizer;
+import org.aya.concrete.parse.ReporterErrorListener;
+import org.aya.parser.AyaLexer;
+import org.aya.parser.AyaParser;
+import org.aya.test.ThrowingReporter;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two-stage parsing of {@link AyaParsing#program(String, org.aya.api.error.Reporter)}
+ * with the full LL parsing, and {@link AyaTokenizer} with {@link AyaLexer},
+ * on the tester corpus repeated into a large file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBench {
+  @Param({"50"})
+  public int repeat;
+
+  private String corpus;
+
+  @Setup
+  public void setup() throws IOException {
+    corpus = Programs.corpus().joinToString("\n").repeat(repeat);
+  }
+
+  @Benchmark
+  public AyaParser.ProgramContext ll() {
+    return AyaParsing.parser(corpus, ThrowingReporter.INSTANCE).program();
+  }
+
+  @Benchmark
+  public AyaParser.ProgramContext sllThenLl() {
+    return AyaParsing.program(corpus, ThrowingReporter.INSTANCE);
+  }
+
+  @Benchmark
+  public int antlrLexer() {
+    return lex(new AyaLexer(CharStreams.fromString(corpus)));
+  }
+
+  @Benchmark
+  public int tokenizer() {
+    return lex(new AyaTokenizer(CharStreams.fromString(corpus), new ReporterErrorListener(ThrowingReporter.INSTANCE)));
+  }
+
+  private static int lex(@NotNull TokenSource lexer) {
+    var count = 0;
+    for (var token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) count++;
+    return count;
+  }
+}
@@ -0,0 +1,56 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.bench;
+
+import org.aya.concrete.parse.AyaParsing;
+import org.aya.concrete.parse.AyaProducer;
+import org.aya.concrete.resolve.module.EmptyModuleLoader;
+import org.aya.concrete.resolve.module.FileModuleLoader;
+import org.aya.core.def.Def;
+import org.aya.test.ThrowingReporter;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+
+/**
+ * The inputs of the benchmarks.
+ */
+public interface Programs {
+  /** The well-typed programs of the tester, relative to the project root, the working directory of the jmh task */
+  @NotNull Path CORPUS = Path.of("tester", "src", "test", "aya", "success");
+
+  @NotNull String NAT = """
+    \\open \\data Nat : \\Set | zero | suc Nat
+    \\def add (a, b : Nat) : Nat
+     | zero, a => a
+     | suc a, b => suc (add a b)
+    """;
+
+  static @NotNull ImmutableSeq<String> corpus() throws IOException {
+    try (var files = Files.list(CORPUS)) {
+      var paths = files.sorted().collect(Collectors.toList());
+      var sources = Buffer.<String>of();
+      for (var path : paths) sources.append(Files.readString(path));
+      return sources.toImmutableSeq();
+    }
+  }
+
+  /** @return the unary numeral of the given number, as Aya source code */
+  static @NotNull String numeral(int n) {
+    return "suc (".repeat(n) + "zero" + ")".repeat(n);
+  }
+
+  /** Checks a program without imports, which is expected to be well-typed */
+  static @NotNull ImmutableSeq<Def> tyck(@NotNull String text) {
+    var reporter = ThrowingReporter.INSTANCE;
+    var program = new AyaProducer(reporter).visitProgram(AyaParsing.program(text, reporter));
+    var defs = Buffer.<Def>of();
+    FileModuleLoader.tyckModule(new EmptyModuleLoader(), program, reporter, null, defs::appendAll);
+    return defs.toImmutableSeq();
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.bench;
+
+import org.aya.concrete.Stmt;
+import org.aya.concrete.parse.AyaParsing;
+import org.aya.concrete.parse.AyaProducer;
+import org.aya.concrete.resolve.context.EmptyContext;
+import org.aya.concrete.resolve.module.EmptyModuleLoader;
+import org.aya.concrete.resolve.module.FileModuleLoader;
+import org.aya.core.def.Def;
+import org.aya.test.ThrowingReporter;
+import org.aya.test.Workload;
+import org.aya.tyck.order.TyckScheduler;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and checks the {@link Workload}s as their sizes double,
+ * where a phase taking more than twice as long every time is superlinear.
+ * Run with {@code -prof gc} for the allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBench {
+  @Param({"INDEPENDENT", "CHAIN", "WIDE_DATA", "NAT_COMPUTATION", "TELESCOPE"})
+  public Workload workload;
+  @Param({"50", "100", "200", "400"})
+  public int size;
+
+  private String text;
+
+  @Setup
+  public void setup() {
+    text = workload.generate(size);
+  }
+
+  @Benchmark
+  public ImmutableSeq<Stmt> parse() {
+    var reporter = ThrowingReporter.INSTANCE;
+    return new AyaProducer(reporter).visitProgram(AyaParsing.program(text, reporter));
+  }
+
+  /** Resolving changes the statements, so they are parsed again every time */
+  @Benchmark
+  public ImmutableSeq<Def> check() {
+    var reporter = ThrowingReporter.INSTANCE;
+    var decls = FileModuleLoader.resolveModule(new EmptyContext(reporter).derive(), new EmptyModuleLoader(), parse());
+    return TyckScheduler.tyck(decls, reporter, null);
+  }
+}
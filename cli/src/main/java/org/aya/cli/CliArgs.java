@@ -14,12 +14,30 @@ public class CliArgs {
   public boolean help = false;
   @Parameter(names = {"--interrupted-trace"}, hidden = true)
   public boolean interruptedTrace = false;
+  @Parameter(names = {"--hash-consing"}, hidden = true)
+  public boolean hashConsing = false;
+  @Parameter(names = {"--pipeline"}, description = "Parse the file in another thread, while resolving the parsed statements")
+  public boolean pipeline = false;
+  @Parameter(names = {"--profile"}, description = "Print the time and the allocation of the phases and the slowest declarations, and the kernel counters")
+  public boolean profile = false;
+  @Parameter(names = {"--profile-top"}, description = "Print this many of the slowest declarations with --profile")
+  public int profileTop = 20;
+  @Parameter(names = {"--profile-json"}, description = "Also write the profile of every declaration to this JSON file")
+  public @Nullable String profileJson;
   @Parameter(names = {"--trace"}, description = "Print type checking traces")
   public @Nullable TraceFormat traceFormat;
   @Parameter(names = {"--ascii-only"}, description = "Do not show unicode in success/fail message")
   public boolean asciiOnly;
+  @Parameter(names = {"--daemon"}, description = "Keep running, check the file again on every change")
+  public boolean daemon = false;
+  @Parameter(names = {"--daemon-port"}, description = "Send the diagnostics of the daemon to the clients of this local port")
+  public int daemonPort = 0;
   @Parameter(names = {"--module-path"}, description = "Search for module under this path")
   public List<String> modulePaths;
+  @Parameter(names = {"--build"}, description = "Check all the modules under this source root instead of an input file")
+  public @Nullable String buildRoot;
+  @Parameter(names = {"--jobs", "-j"}, description = "Check this many modules in parallel with --build")
+  public int jobs = Runtime.getRuntime().availableProcessors();
   @Parameter(description = "<input-file>")
   public String inputFile;
 
@@ -0,0 +1,196 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.cli;
+
+import org.aya.api.error.Problem;
+import org.aya.api.error.Reporter;
+import org.aya.api.error.StreamReporter;
+import org.aya.concrete.resolve.module.CachedModuleLoader;
+import org.aya.concrete.resolve.module.CompiledModuleLoader;
+import org.aya.concrete.resolve.module.ModuleListLoader;
+import org.aya.concrete.resolve.module.ModuleReporter;
+import org.aya.core.serde.DefTable;
+import org.aya.tyck.order.TyckCache;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks a file again whenever it or a module changes, keeping the loaded modules
+ * (and a warmed-up JVM) between the checks. A changed module is loaded again together with the
+ * modules importing it, and only the changed declarations of the file (and the ones depending on them)
+ * are checked again, see {@link TyckCache}.
+ * The diagnostics of every check are printed and sent to the clients connected to {@link #port()},
+ * followed by a line like {@code :done 0 42ms} where 0 is the exit code of the check.
+ */
+public final class CompilerDaemon implements Closeable {
+  /** editors usually save a file with several events */
+  public static final long DEBOUNCE_MILLIS = 30;
+  public static final @NotNull String DONE = ":done";
+
+  private final @NotNull Path filePath;
+  private final @NotNull CompilerFlags flags;
+  private final @NotNull ImmutableSeq<Path> modulePaths;
+  private final @NotNull TyckCache cache;
+  private final @NotNull CachedModuleLoader loader;
+  private final @NotNull ServerSocket server;
+  private final @NotNull WatchService watcher;
+  private final @NotNull Buffer<PrintStream> clients = Buffer.of();
+  /** the reporter of the current check, the modules are loaded with a reporter delegating to it */
+  private volatile @NotNull Reporter reporter = problem -> {
+  };
+  private @NotNull String lastReport = "";
+
+  /** @param port 0 for any free port */
+  public CompilerDaemon(@NotNull Path filePath, @NotNull CompilerFlags flags, int port) throws IOException {
+    this.filePath = filePath.toAbsolutePath().normalize();
+    this.flags = flags;
+    modulePaths = flags.modulePaths().map(path -> path.toAbsolutePath().normalize());
+    var table = new DefTable();
+    cache = new TyckCache(table);
+    var delegate = new ModuleReporter(problem -> reporter.report(problem));
+    loader = new CachedModuleLoader(new ModuleListLoader(modulePaths.map(path ->
+      new CompiledModuleLoader(path, delegate, null, table))), CachedModuleLoader.LOADERS, delegate);
+    server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    watcher = FileSystems.getDefault().newWatchService();
+    register(this.filePath.getParent());
+    for (var path : modulePaths) registerTree(path);
+  }
+
+  public int port() {
+    return server.getLocalPort();
+  }
+
+  /** Accepts clients in the background, they get the result of the last check at once */
+  public void listen() {
+    var acceptor = new Thread(() -> {
+      while (!server.isClosed()) try {
+        var client = new PrintStream(server.accept().getOutputStream(), true, StandardCharsets.UTF_8);
+        synchronized (clients) {
+          clients.append(client);
+          client.print(lastReport);
+          client.flush();
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }, "aya-daemon-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  /** Checks the file, and then checks it again on every change until interrupted */
+  public void serve() throws IOException {
+    listen();
+    check();
+    try {
+      while (true) {
+        var key = watcher.take();
+        var relevant = false;
+        do {
+          relevant |= changed(key);
+          key.reset();
+        } while ((key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+        if (relevant) check();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // shutting down
+    }
+  }
+
+  /** @return the exit code of the check, like {@link SingleFileCompiler#compile(CompilerFlags)} */
+  public synchronized int check() throws IOException {
+    var start = System.nanoTime();
+    var out = new ByteArrayOutputStream();
+    var stream = new PrintStream(out, true, StandardCharsets.UTF_8);
+    var fileReporter = new StreamReporter(filePath, Problem.readSourceCode(filePath), stream);
+    var status = new SingleFileCompiler(fileReporter, filePath, null).compile(flags, reporter -> {
+      this.reporter = reporter;
+      return loader;
+    }, cache);
+    stream.println(DONE + " " + status + " " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    var report = out.toString(StandardCharsets.UTF_8);
+    System.out.print(report);
+    synchronized (clients) {
+      lastReport = report;
+      for (int i = clients.size() - 1; i >= 0; i--) {
+        var client = clients.get(i);
+        client.print(report);
+        // disconnected
+        if (client.checkError()) clients.removeAt(i);
+      }
+    }
+    return status;
+  }
+
+  /**
+   * Forgets the module of a changed file, if any.
+   *
+   * @return whether the file needs to be checked again
+   */
+  public boolean changed(@NotNull Path file) {
+    file = file.toAbsolutePath().normalize();
+    if (file.getFileName().toString().endsWith(CompiledModuleLoader.CACHE_POSTFIX)) return false;
+    var module = modulePath(file);
+    if (module != null) loader.invalidate(module);
+    return module != null || file.equals(filePath);
+  }
+
+  private boolean changed(@NotNull WatchKey key) {
+    var dir = (Path) key.watchable();
+    var relevant = false;
+    for (var event : key.pollEvents()) {
+      if (!(event.context() instanceof Path name)) continue;
+      var file = dir.resolve(name);
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file) && modulePath(file) != null)
+        try {
+          registerTree(file);
+        } catch (IOException e) {
+          System.err.println("Cannot watch " + file + ": " + e.getMessage());
+        }
+      else relevant |= changed(file);
+    }
+    return relevant;
+  }
+
+  private @Nullable ImmutableSeq<String> modulePath(@NotNull Path file) {
+    for (var base : modulePaths) {
+      if (!file.startsWith(base) || file.equals(base)) continue;
+      var names = Buffer.<String>of();
+      for (var name : base.relativize(file)) names.append(name.toString());
+      return names.toImmutableSeq();
+    }
+    return null;
+  }
+
+  private void register(@NotNull Path dir) throws IOException {
+    dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+      StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+  }
+
+  private void registerTree(@NotNull Path dir) throws IOException {
+    try (var dirs = Files.walk(dir)) {
+      for (var sub : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) register(sub);
+    }
+  }
+
+  @Override public void close() throws IOException {
+    server.close();
+    watcher.close();
+    synchronized (clients) {
+      clients.forEach(PrintStream::close);
+      clients.clear();
+    }
+  }
+}
@@ -5,12 +5,16 @@ package org.aya.cli;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 import org.aya.api.error.Problem;
+import org.aya.api.util.KernelCounter;
 import org.aya.prelude.GeneratedVersion;
+import org.aya.tyck.TyckOptions;
 import org.aya.tyck.trace.MdUnicodeTrace;
 import org.aya.tyck.trace.Trace;
+import org.aya.util.Profiler;
 import org.glavo.kala.collection.immutable.ImmutableSeq;
 import org.glavo.kala.tuple.Unit;
 import org.ice1000.jimgui.util.JniLoader;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.nio.file.Paths;
@@ -27,25 +31,40 @@ public class Main {
     }
     if (cli.version) {
       System.out.println("Aya v" + GeneratedVersion.VERSION_STRING);
-      if (cli.inputFile == null) return;
-    } else if (cli.help || cli.inputFile == null) {
+      if (cli.inputFile == null && cli.buildRoot == null) return;
+    } else if (cli.help || cli.inputFile == null && cli.buildRoot == null) {
       commander.usage();
       return;
     }
 
+    var profiler = cli.profile ? Profiler.enable() : null;
+    KernelCounter.enable(cli.profile);
+    TyckOptions.HASH_CONSING = cli.hashConsing;
+    if (cli.buildRoot != null) {
+      var flags = new CompilerFlags(message(cli), cli.interruptedTrace, false, ImmutableSeq.of());
+      var status = new ProjectCompiler(Paths.get(cli.buildRoot), cli.jobs).compile(flags);
+      if (profiler != null) profile(cli, profiler);
+      System.exit(status);
+    }
     var inputFile = cli.inputFile;
-    var message = cli.asciiOnly
-      ? CompilerFlags.Message.ASCII
-      : CompilerFlags.Message.EMOJI;
     var filePath = Paths.get(inputFile);
+    var flags = new CompilerFlags(
+      message(cli),
+      cli.interruptedTrace,
+      cli.pipeline,
+      ImmutableSeq.from(cli.modulePaths).map(Paths::get));
+    if (cli.daemon) {
+      try (var daemon = new CompilerDaemon(filePath, flags, cli.daemonPort)) {
+        System.out.println("Listening on port " + daemon.port());
+        daemon.serve();
+      }
+      return;
+    }
     var sourceCode = Problem.readSourceCode(filePath);
     var traceBuilder = cli.traceFormat != null ? new Trace.Builder() : null;
     var reporter = new CliReporter(filePath, sourceCode);
     var compiler = new SingleFileCompiler(reporter, filePath, traceBuilder);
-    var status = compiler.compile(new CompilerFlags(
-      message,
-      cli.interruptedTrace,
-      ImmutableSeq.from(cli.modulePaths).map(Paths::get)));
+    var status = compiler.compile(flags);
     if (traceBuilder != null) switch (cli.traceFormat) {
       case ImGui -> {
         JniLoader.load();
@@ -57,6 +76,19 @@ public class Main {
         System.err.println(printer.builder);
       }
     }
+    if (profiler != null) profile(cli, profiler);
     System.exit(status);
   }
+
+  private static void profile(@NotNull CliArgs cli, @NotNull Profiler profiler) throws IOException {
+    var report = new ProfileReport(profiler.entries(), KernelCounter.snapshot());
+    report.print(System.err, cli.profileTop);
+    if (cli.profileJson != null) report.writeJson(Paths.get(cli.profileJson));
+  }
+
+  private static CompilerFlags.@NotNull Message message(@NotNull CliArgs cli) {
+    return cli.asciiOnly
+      ? CompilerFlags.Message.ASCII
+      : CompilerFlags.Message.EMOJI;
+  }
 }
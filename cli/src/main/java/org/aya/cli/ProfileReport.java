@@ -0,0 +1,84 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.cli;
+
+import org.aya.api.error.SourcePos;
+import org.aya.api.util.KernelCounter;
+import org.aya.util.Profiler;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Prints the entries of a {@link Profiler}, the slowest first, and the {@link KernelCounter}s.
+ * The totals of the phases are the sums of the self times, so the nested entries
+ * (like loading a module when its import is resolved) are counted in their own phases only.
+ */
+public record ProfileReport(
+  @NotNull ImmutableSeq<Profiler.Entry> entries,
+  @NotNull Map<KernelCounter, Long> counters
+) {
+  private static final String ROW = "%10.2f %10.2f %10.2f  %-14s %-10s %s%n";
+
+  public void print(@NotNull PrintStream out, int top) {
+    out.printf(Locale.ROOT, "%10s %10s %10s  %s%n", "Self wall", "Self CPU", "Self MB", "Phase");
+    for (var phase : Profiler.Phase.values()) {
+      long wall = 0, cpu = 0, allocated = 0, count = 0;
+      for (var entry : entries) if (entry.phase() == phase) {
+        wall += entry.selfWallNanos();
+        cpu += entry.selfCpuNanos();
+        allocated += entry.selfAllocatedBytes();
+        count++;
+      }
+      out.printf(Locale.ROOT, "%10.2f %10.2f %10.2f  %s (%d)%n", wall / 1e6, cpu / 1e6, allocated / 1e6, phase, count);
+    }
+    out.println();
+    out.printf(Locale.ROOT, "%10s %10s %10s  %-14s %-10s %s%n", "Wall ms", "CPU ms", "Alloc MB", "Phase", "Position", "Name");
+    sorted().stream().limit(top).forEach(entry -> out.printf(Locale.ROOT, ROW,
+      entry.wallNanos() / 1e6, entry.cpuNanos() / 1e6, entry.allocatedBytes() / 1e6,
+      entry.phase(), position(entry.sourcePos()), entry.name()));
+    out.println();
+    counters.forEach((counter, count) -> out.printf(Locale.ROOT, "%14d  %s%n", count, counter));
+  }
+
+  public void writeJson(@NotNull Path file) throws IOException {
+    var counts = counters.entrySet().stream()
+      .map(count -> "    \"" + count.getKey() + "\": " + count.getValue())
+      .collect(Collectors.joining(",\n", "  \"counters\": {\n", "\n  },\n"));
+    Files.writeString(file, sorted().stream().map(entry -> String.format(Locale.ROOT,
+      "    {\"phase\": \"%s\", \"name\": %s, \"line\": %d, \"column\": %d, \"wallNanos\": %d, \"cpuNanos\": %d, \"allocatedBytes\": %d, "
+        + "\"selfWallNanos\": %d, \"selfCpuNanos\": %d, \"selfAllocatedBytes\": %d}",
+      entry.phase(), json(entry.name()), entry.sourcePos().startLine(), entry.sourcePos().startColumn(),
+      entry.wallNanos(), entry.cpuNanos(), entry.allocatedBytes(),
+      entry.selfWallNanos(), entry.selfCpuNanos(), entry.selfAllocatedBytes()
+    )).collect(Collectors.joining(",\n", "{\n" + counts + "  \"entries\": [\n", "\n  ]\n}\n")));
+  }
+
+  private @NotNull ImmutableSeq<Profiler.Entry> sorted() {
+    return entries.stream()
+      .sorted(Comparator.comparingLong(Profiler.Entry::wallNanos).reversed())
+      .collect(ImmutableSeq.factory());
+  }
+
+  private static @NotNull String position(@NotNull SourcePos sourcePos) {
+    return sourcePos == SourcePos.NONE ? "" : sourcePos.startLine() + ":" + sourcePos.startColumn();
+  }
+
+  private static @NotNull String json(@NotNull String string) {
+    var builder = new StringBuilder("\"");
+    for (var c : string.toCharArray()) {
+      if (c == '"' || c == '\\') builder.append('\\').append(c);
+      else if (c < ' ') builder.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      else builder.append(c);
+    }
+    return builder.append('"').toString();
+  }
+}
@@ -0,0 +1,138 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.cli;
+
+import org.aya.api.error.CountingReporter;
+import org.aya.api.error.Problem;
+import org.aya.concrete.parse.AyaParsing;
+import org.aya.concrete.resolve.module.CachedModuleLoader;
+import org.aya.concrete.resolve.module.CompiledModuleLoader;
+import org.aya.core.serde.DefTable;
+import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.collection.mutable.MutableHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Checks all the modules under a source root in the topological order of their imports,
+ * and the modules not depending on each other are checked in parallel.
+ * The modules are the files without extensions, named by their paths relative to the root like in {@link CompiledModuleLoader},
+ * whose caches are reused, so the unchanged modules are not checked again.
+ *
+ * @param jobs the number of modules checked at the same time
+ */
+public record ProjectCompiler(@NotNull Path sourceRoot, int jobs) {
+  /** @param imports the indices of the modules of the project imported by this one */
+  private static record Module(
+    @NotNull ImmutableSeq<String> path,
+    int @NotNull [] imports,
+    @NotNull CountingReporter reporter
+  ) {
+    @NotNull String key() {
+      return DefTable.moduleKey(path);
+    }
+  }
+
+  public int compile(@NotNull CompilerFlags flags) throws IOException {
+    var modules = scan();
+    var indices = MutableHashMap.<String, Integer>of();
+    modules.forEachIndexed((i, module) -> indices.put(module.key(), i));
+    var table = new DefTable();
+    // the imports of a module are checked before it, so the loader never waits
+    var loader = new CachedModuleLoader((path, recurseLoader) -> {
+      var i = indices.getOrNull(DefTable.moduleKey(path));
+      if (i == null) return null;
+      return new CompiledModuleLoader(sourceRoot, modules.get(i).reporter, null, table).load(path, recurseLoader);
+    }, null);
+    var futures = new CompletableFuture<?>[modules.size()];
+    var succeeded = new boolean[modules.size()];
+    var executor = Executors.newFixedThreadPool(Math.max(jobs, 1));
+    try {
+      for (var i : order(modules)) {
+        var module = modules.get(i);
+        var imports = Arrays.stream(module.imports).mapToObj(j -> futures[j]).toArray(CompletableFuture<?>[]::new);
+        futures[i] = CompletableFuture.allOf(imports).thenRunAsync(() -> {
+          if (Arrays.stream(module.imports).allMatch(j -> succeeded[j]))
+            succeeded[i] = loader.load(module.path) != null && module.reporter.isEmpty();
+          else module.reporter.reportString("Skipped `" + module.key() + "`, as its imports failed.");
+        }, executor);
+      }
+      CompletableFuture.allOf(Arrays.stream(futures).filter(f -> f != null).toArray(CompletableFuture<?>[]::new)).join();
+    } finally {
+      executor.shutdown();
+    }
+    var reporter = new CliReporter(sourceRoot, "");
+    var failed = 0;
+    for (int i = 0; i < modules.size(); i++) {
+      if (futures[i] == null) reporter.reportString("Skipped `" + modules.get(i).key() + "`, as it is in an import cycle.");
+      if (!succeeded[i]) failed++;
+    }
+    reporter.reportString("Checked " + modules.size() + " modules, " + failed + " failed.");
+    if (failed == 0) {
+      reporter.reportString(flags.message().successNotion());
+      return 0;
+    } else {
+      reporter.reportString(flags.message().failNotion());
+      return -1;
+    }
+  }
+
+  /** @return the modules under the source root, sorted by their files */
+  private @NotNull ImmutableSeq<Module> scan() throws IOException {
+    var files = ImmutableSeq.from(Files.walk(sourceRoot)
+      .filter(Files::isRegularFile)
+      .filter(file -> !file.getFileName().toString().contains("."))
+      .sorted()
+      .collect(Collectors.toList()));
+    var indices = MutableHashMap.<String, Integer>of();
+    files.forEachIndexed((i, file) -> indices.put(DefTable.moduleKey(path(file)), i));
+    var modules = Buffer.<Module>of();
+    for (var file : files) {
+      var imports = AyaParsing.imports(file).stream()
+        .map(DefTable::moduleKey)
+        .filter(indices::containsKey)
+        .mapToInt(indices::get)
+        .distinct()
+        .toArray();
+      var reporter = new CountingReporter(new CliReporter(file, Problem.readSourceCode(file)));
+      modules.append(new Module(path(file), imports, reporter));
+    }
+    return modules.toImmutableSeq();
+  }
+
+  private @NotNull ImmutableSeq<String> path(@NotNull Path file) {
+    return Seq.from(sourceRoot.relativize(file)).map(Path::toString).toImmutableSeq();
+  }
+
+  /**
+   * Kahn's algorithm.
+   *
+   * @return the indices of the modules, where the imports come first,
+   * without the ones in or depending on an import cycle
+   */
+  private static int @NotNull [] order(@NotNull ImmutableSeq<Module> modules) {
+    var indegrees = new int[modules.size()];
+    var importers = MutableHashMap.<Integer, Buffer<Integer>>of();
+    modules.forEachIndexed((i, module) -> {
+      indegrees[i] = module.imports.length;
+      for (var j : module.imports) importers.getOrPut(j, Buffer::of).append(i);
+    });
+    var order = new int[modules.size()];
+    var size = 0;
+    for (int i = 0; i < modules.size(); i++) if (indegrees[i] == 0) order[size++] = i;
+    for (int head = 0; head < size; head++) {
+      var dependents = importers.getOrNull(order[head]);
+      if (dependents != null) for (var i : dependents) if (--indegrees[i] == 0) order[size++] = i;
+    }
+    return Arrays.copyOf(order, size);
+  }
+}
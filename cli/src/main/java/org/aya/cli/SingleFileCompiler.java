@@ -6,30 +6,57 @@ import org.aya.api.error.CountingReporter;
 import org.aya.api.error.Reporter;
 import org.aya.api.util.BreakingException;
 import org.aya.api.util.InterruptException;
-import org.aya.concrete.parse.AyaParsing;
-import org.aya.concrete.parse.AyaProducer;
 import org.aya.concrete.resolve.context.Context;
 import org.aya.concrete.resolve.context.EmptyContext;
 import org.aya.concrete.resolve.module.CachedModuleLoader;
+import org.aya.concrete.resolve.module.CompiledModuleLoader;
 import org.aya.concrete.resolve.module.FileModuleLoader;
 import org.aya.concrete.resolve.module.ModuleListLoader;
+import org.aya.concrete.resolve.module.ModuleLoader;
+import org.aya.concrete.resolve.module.ModuleReporter;
+import org.aya.core.serde.DefTable;
 import org.aya.tyck.ExprTycker;
+import org.aya.tyck.order.TyckCache;
 import org.aya.tyck.trace.Trace;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.function.Function;
 
 public record SingleFileCompiler(@NotNull Reporter reporter, @NotNull Path filePath, Trace.@Nullable Builder builder) {
   public int compile(@NotNull CompilerFlags flags) throws IOException {
+    var table = new DefTable();
+    return compile(flags, reporter -> {
+      // the problems of the modules loaded in parallel are reported in the order of the imports
+      var modules = new ModuleReporter(reporter);
+      var loader = new ModuleListLoader(flags.modulePaths().map(path ->
+        new CompiledModuleLoader(path, modules, builder, table)));
+      // the traces are recorded in one builder, so the modules are not loaded in parallel then
+      return new CachedModuleLoader(loader, builder != null ? null : CachedModuleLoader.LOADERS, modules);
+    }, null);
+  }
+
+  /**
+   * @param loaderFactory receives the reporter of this compilation
+   * @param cache         the definitions of the previous compilation of the file
+   */
+  public int compile(
+    @NotNull CompilerFlags flags,
+    @NotNull Function<@NotNull Reporter, @NotNull ModuleLoader> loaderFactory,
+    @Nullable TyckCache cache
+  ) throws IOException {
     var reporter = new CountingReporter(this.reporter);
-    var parser = AyaParsing.parser(filePath, reporter);
     try {
-      var program = new AyaProducer(reporter).visitProgram(parser.program());
-      var loader = new ModuleListLoader(flags.modulePaths().map(path ->
-        new CachedModuleLoader(new FileModuleLoader(path, reporter, builder))));
-      FileModuleLoader.tyckModule(loader, program, reporter, builder);
+      var loader = loaderFactory.apply(reporter);
+      if (flags.pipeline()) FileModuleLoader.tyckModule(loader, filePath, reporter, builder, cache, defs -> {
+      });
+      else {
+        var program = FileModuleLoader.parse(filePath, reporter);
+        FileModuleLoader.tyckModule(loader, program, reporter, builder, cache, defs -> {
+        });
+      }
     } catch (ExprTycker.TyckerException | Context.ContextException e) {
       FileModuleLoader.handleInternalError(e);
       return e.exitCode();
@@ -2,7 +2,10 @@ import com.beust.jcommander.JCommander;
 import org.aya.cli.CliArgs;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 // Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
@@ -24,4 +27,24 @@ public class ArgsParserTest {
     commander.parse(s);
     assertEquals(s, cli.inputFile);
   }
+
+  @Test
+  public void build() {
+    var cli = new CliArgs();
+    var commander = JCommander.newBuilder().addObject(cli).build();
+    commander.parse("--build", "lib", "-j", "2");
+    assertEquals("lib", cli.buildRoot);
+    assertEquals(2, cli.jobs);
+    assertNull(cli.inputFile);
+  }
+
+  @Test
+  public void fileNamedBuild() {
+    var cli = new CliArgs();
+    var commander = JCommander.newBuilder().addObject(cli).build();
+    commander.parse("--module-path", "build", "build");
+    assertNull(cli.buildRoot);
+    assertEquals(List.of("build"), cli.modulePaths);
+    assertEquals("build", cli.inputFile);
+  }
 }
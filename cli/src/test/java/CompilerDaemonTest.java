@@ -0,0 +1,70 @@
+import org.aya.cli.CompilerDaemon;
+import org.aya.cli.CompilerFlags;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+public class CompilerDaemonTest {
+  @Test
+  public void recheck(@TempDir Path dir) throws IOException {
+    var lib = Files.createDirectory(dir.resolve("lib"));
+    var nat = lib.resolve("nat");
+    Files.writeString(nat, """
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def one : Nat => suc zero""");
+    var main = dir.resolve("main.aya");
+    Files.writeString(main, """
+      \\import nat
+      \\open nat
+      \\def two : Nat => one""");
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, ImmutableSeq.of(lib));
+    try (var daemon = new CompilerDaemon(main, flags, 0)) {
+      daemon.listen();
+      try (var client = new Socket(InetAddress.getLoopbackAddress(), daemon.port())) {
+        var reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        assertEquals(0, daemon.check());
+        assertTrue(report(reader).contains(CompilerFlags.Message.ASCII.successNotion()));
+        Files.writeString(main, """
+          \\import nat
+          \\open nat
+          \\def two : Nat => one
+          \\def three : Nat => add one two""");
+        assertTrue(daemon.changed(main));
+        // not resolved
+        assertNotEquals(0, daemon.check());
+        report(reader);
+        // the module is loaded again
+        Files.writeString(nat, """
+          \\open \\data Nat : \\Set | zero | suc Nat
+          \\def one : Nat => suc zero
+          \\def add (a, b : Nat) : Nat
+           | zero, a => a
+           | suc a, b => suc (add a b)""");
+        assertTrue(daemon.changed(nat));
+        assertFalse(daemon.changed(lib.resolve("nat.ayac")));
+        assertEquals(0, daemon.check());
+        assertTrue(report(reader).contains(CompilerFlags.Message.ASCII.successNotion()));
+      }
+    }
+  }
+
+  private static String report(BufferedReader reader) throws IOException {
+    var report = new StringBuilder();
+    for (var line = reader.readLine(); line != null && !line.startsWith(CompilerDaemon.DONE); line = reader.readLine())
+      report.append(line).append('\n');
+    return report.toString();
+  }
+}
@@ -0,0 +1,104 @@
+import org.aya.api.error.CountingReporter;
+import org.aya.api.error.SourcePos;
+import org.aya.api.util.KernelCounter;
+import org.aya.cli.CliReporter;
+import org.aya.cli.CompilerFlags;
+import org.aya.cli.ProfileReport;
+import org.aya.cli.SingleFileCompiler;
+import org.aya.util.Profiler;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+public class ProfileReportTest {
+  @AfterEach
+  public void disable() {
+    Profiler.disable();
+    KernelCounter.enable(false);
+  }
+
+  @Test
+  public void profile(@TempDir Path dir) throws IOException {
+    var file = dir.resolve("main");
+    Files.writeString(file, """
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def one : Nat => suc zero
+      \\def id (a : Nat) : Nat => a""");
+    var profiler = Profiler.enable();
+    KernelCounter.enable(true);
+    var before = KernelCounter.snapshot();
+    var reporter = new CountingReporter(new CliReporter(file, Files.readString(file)));
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, ImmutableSeq.of());
+    assertEquals(0, new SingleFileCompiler(reporter, file, null).compile(flags));
+    Profiler.disable();
+    KernelCounter.enable(false);
+    var counters = KernelCounter.snapshot();
+    counters.replaceAll((counter, count) -> count - before.get(counter));
+    // the type of the local reference is compared with the result type
+    assertTrue(counters.get(KernelCounter.DefEqCompare) > 0, counters.toString());
+    var entries = profiler.entries();
+    for (var phase : Profiler.Phase.values())
+      assertTrue(entries.anyMatch(entry -> entry.phase() == phase), phase.name());
+    assertTrue(entries.anyMatch(entry -> entry.phase() == Profiler.Phase.Tyck && entry.name().equals("one")
+      && entry.sourcePos().startLine() == 2 && entry.wallNanos() > 0));
+    assertTrue(entries.anyMatch(entry -> entry.phase() == Profiler.Phase.Parse && entry.allocatedBytes() > 0));
+    var out = new ByteArrayOutputStream();
+    var report = new ProfileReport(entries, counters);
+    report.print(new PrintStream(out), 1);
+    // the phases and only the slowest entry with their headers, and the counters
+    assertEquals(Profiler.Phase.values().length + 4 + 1 + KernelCounter.values().length, out.toString().lines().count());
+    var json = dir.resolve("profile.json");
+    report.writeJson(json);
+    var written = Files.readString(json);
+    assertTrue(written.startsWith("{") && written.contains("\"name\": \"one\"") && written.contains("\"DefEqCompare\": "), written);
+    assertEquals(entries.size(), written.lines().filter(line -> line.contains("\"phase\"")).count());
+  }
+
+  @Test
+  public void failed(@TempDir Path dir) throws IOException {
+    var file = dir.resolve("main");
+    Files.writeString(file, """
+      \\open \\data Nat : \\Set | zero | suc Nat
+      \\def bad : Nat => \\Set
+      \\def one : Nat => suc zero""");
+    var profiler = Profiler.enable();
+    var reporter = new CountingReporter(new CliReporter(file, Files.readString(file)));
+    var flags = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, ImmutableSeq.of());
+    assertNotEquals(0, new SingleFileCompiler(reporter, file, null).compile(flags));
+    Profiler.disable();
+    var tycked = profiler.entries().filter(entry -> entry.phase() == Profiler.Phase.Tyck);
+    // the declaration that is interrupted is measured too
+    assertTrue(tycked.anyMatch(entry -> entry.name().equals("bad")), tycked.toString());
+    assertTrue(tycked.anyMatch(entry -> entry.name().equals("one")), tycked.toString());
+  }
+
+  @Test
+  public void nested() {
+    var profiler = Profiler.enable();
+    Profiler.profile(Profiler.Phase.ShallowResolve, () -> "import", SourcePos.NONE, () ->
+      Profiler.profile(Profiler.Phase.Parse, () -> "imported", SourcePos.NONE, () -> "x".repeat(1 << 20)));
+    Profiler.disable();
+    var entries = profiler.entries();
+    var inner = entries.get(0);
+    var outer = entries.get(1);
+    assertEquals("imported", inner.name());
+    assertEquals(inner.wallNanos(), inner.selfWallNanos());
+    assertEquals(inner.allocatedBytes(), inner.selfAllocatedBytes());
+    // the parsing is counted in its own phase only
+    assertEquals(outer.wallNanos() - inner.wallNanos(), outer.selfWallNanos());
+    assertEquals(outer.cpuNanos() - inner.cpuNanos(), outer.selfCpuNanos());
+    assertEquals(outer.allocatedBytes() - inner.allocatedBytes(), outer.selfAllocatedBytes());
+    assertTrue(inner.allocatedBytes() >= 1 << 20);
+  }
+}
@@ -0,0 +1,54 @@
+import org.aya.cli.CompilerFlags;
+import org.aya.cli.ProjectCompiler;
+import org.aya.concrete.parse.AyaParsing;
+import org.aya.concrete.resolve.module.CompiledModuleLoader;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+public class ProjectCompilerTest {
+  private static final CompilerFlags FLAGS = new CompilerFlags(CompilerFlags.Message.ASCII, false, false, ImmutableSeq.of());
+
+  @Test
+  public void build(@TempDir Path dir) throws IOException {
+    var nat = dir.resolve("nat");
+    Files.writeString(nat, "\\open \\data Nat : \\Set | zero | suc Nat");
+    var data = Files.createDirectory(dir.resolve("data"));
+    Files.writeString(data.resolve("one"), """
+      \\import nat
+      \\open nat
+      \\def one (n : Nat) : Nat => n""");
+    Files.writeString(data.resolve("two"), """
+      {- \\import cycle -}
+      \\open \\import nat
+      \\def two (n : Nat) : Nat => n""");
+    var main = dir.resolve("main");
+    Files.writeString(main, """
+      \\import data.one
+      \\import data.two
+      \\open \\import nat
+      \\def three (n : Nat) : Nat => n""");
+    Files.writeString(dir.resolve("cycle"), "\\import cycle");
+    Files.writeString(dir.resolve("README.md"), "not a module");
+    assertEquals(ImmutableSeq.of(ImmutableSeq.of("data", "one"), ImmutableSeq.of("data", "two"), ImmutableSeq.of("nat")), AyaParsing.imports(main));
+    // the cycle is not checked
+    assertNotEquals(0, new ProjectCompiler(dir, 2).compile(FLAGS));
+    assertFalse(Files.exists(CompiledModuleLoader.cacheFile(dir.resolve("cycle"))));
+    Files.delete(dir.resolve("cycle"));
+    assertEquals(0, new ProjectCompiler(dir, 2).compile(FLAGS));
+    var cache = CompiledModuleLoader.cacheFile(data.resolve("one"));
+    assertTrue(Files.exists(cache));
+    var modified = Files.getLastModifiedTime(cache);
+    // the caches are reused
+    assertEquals(0, new ProjectCompiler(dir, 2).compile(FLAGS));
+    assertEquals(modified, Files.getLastModifiedTime(cache));
+  }
+}
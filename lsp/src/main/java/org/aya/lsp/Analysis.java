@@ -0,0 +1,60 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.lsp;
+
+import org.aya.api.error.CollectReporter;
+import org.aya.api.error.Problem;
+import org.aya.api.util.InterruptException;
+import org.aya.concrete.parse.AyaParsing;
+import org.aya.concrete.parse.AyaProducer;
+import org.aya.concrete.resolve.context.Context;
+import org.aya.concrete.resolve.context.EmptyContext;
+import org.aya.concrete.resolve.module.FileModuleLoader;
+import org.aya.concrete.resolve.module.ModuleLoader;
+import org.aya.tyck.ExprTycker;
+import org.aya.tyck.order.TyckCache;
+import org.aya.tyck.order.TyckScheduler;
+import org.aya.util.cancel.CancellationIndicator;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The result of checking a version of a document.
+ *
+ * @param index null if the document is not checked because of errors in parsing or resolving
+ */
+public record Analysis(
+  @NotNull ImmutableSeq<Problem> problems,
+  @Nullable ReferenceIndex index
+) {
+  /**
+   * Checks a document like {@link FileModuleLoader#tyckModule}.
+   *
+   * @param cache     the definitions of the previous check of the document, only the changed ones are checked again
+   * @param indicator canceled when the document changes again
+   * @throws org.aya.util.cancel.CancellationException if canceled
+   */
+  public static @NotNull Analysis analyze(
+    @NotNull String text,
+    @NotNull ModuleLoader loader,
+    @NotNull TyckCache cache,
+    @NotNull CancellationIndicator indicator
+  ) {
+    var reporter = new CollectReporter();
+    try {
+      var program = new AyaProducer(reporter).visitProgram(AyaParsing.program(text, reporter));
+      indicator.checkCanceled();
+      var decls = FileModuleLoader.resolveModule(new EmptyContext(reporter).derive(), loader, program);
+      indicator.checkCanceled();
+      var defs = TyckScheduler.tyck(decls, reporter, null, cache, indicator);
+      return new Analysis(reporter.errors().toImmutableSeq(), ReferenceIndex.of(decls, defs));
+    } catch (InterruptException | Context.ContextException e) {
+      // already reported
+      return new Analysis(reporter.errors().toImmutableSeq(), null);
+    } catch (ExprTycker.TyckerException e) {
+      reporter.reportString("Internal error: " + e);
+      return new Analysis(reporter.errors().toImmutableSeq(), null);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.lsp;
+
+import org.eclipse.lsp4j.InitializeParams;
+import org.eclipse.lsp4j.InitializeResult;
+import org.eclipse.lsp4j.ServerCapabilities;
+import org.eclipse.lsp4j.TextDocumentSyncKind;
+import org.eclipse.lsp4j.services.*;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.jetbrains.annotations.NotNull;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The workspace folders are the module paths.
+ */
+public final class AyaServer implements LanguageServer, LanguageClientAware {
+  private final @NotNull AyaService service = new AyaService();
+
+  @Override public CompletableFuture<InitializeResult> initialize(InitializeParams params) {
+    var modulePaths = Buffer.<Path>of();
+    var folders = params.getWorkspaceFolders();
+    if (folders != null) folders.forEach(folder -> modulePaths.append(Path.of(URI.create(folder.getUri()))));
+    else if (params.getRootUri() != null) modulePaths.append(Path.of(URI.create(params.getRootUri())));
+    service.modulePaths(modulePaths.toImmutableSeq());
+    var capabilities = new ServerCapabilities();
+    // documents are small enough to be sent as a whole
+    capabilities.setTextDocumentSync(TextDocumentSyncKind.Full);
+    capabilities.setHoverProvider(true);
+    capabilities.setDefinitionProvider(true);
+    return CompletableFuture.completedFuture(new InitializeResult(capabilities));
+  }
+
+  @Override public CompletableFuture<Object> shutdown() {
+    service.shutdown();
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override public void exit() {
+    System.exit(0);
+  }
+
+  @Override public TextDocumentService getTextDocumentService() {
+    return service;
+  }
+
+  @Override public WorkspaceService getWorkspaceService() {
+    return service;
+  }
+
+  @Override public void connect(LanguageClient client) {
+    service.connect(client);
+  }
+}
@@ -0,0 +1,231 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.lsp;
+
+import org.aya.api.error.IgnoringReporter;
+import org.aya.api.error.Problem;
+import org.aya.api.error.SourcePos;
+import org.aya.api.ref.Var;
+import org.aya.concrete.resolve.module.CachedModuleLoader;
+import org.aya.concrete.resolve.module.CompiledModuleLoader;
+import org.aya.concrete.resolve.module.ModuleListLoader;
+import org.aya.concrete.resolve.module.ModuleLoader;
+import org.aya.concrete.resolve.module.ModuleReporter;
+import org.aya.core.serde.DefTable;
+import org.aya.tyck.order.TyckCache;
+import org.aya.util.cancel.CancellationException;
+import org.aya.util.cancel.CancellationIndicator;
+import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.services.LanguageClient;
+import org.eclipse.lsp4j.services.TextDocumentService;
+import org.eclipse.lsp4j.services.WorkspaceService;
+import org.glavo.kala.collection.Seq;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.collection.mutable.MutableMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the state of the open documents. A document is checked again on every change,
+ * canceling the check of its previous version, and the definitions it did not change are reused.
+ * Hovers and go-to-definition are answered from the last successful check, without checking anything.
+ * The checks run in one thread, sharing the modules loaded from the module paths.
+ */
+public final class AyaService implements TextDocumentService, WorkspaceService {
+  private final @NotNull Map<String, Document> documents = new ConcurrentHashMap<>();
+  private final @NotNull ExecutorService checker = Executors.newSingleThreadExecutor(runnable -> {
+    var thread = new Thread(runnable, "aya-lsp-checker");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private @NotNull ImmutableSeq<Path> modulePaths = ImmutableSeq.of();
+  private @Nullable CachedModuleLoader loader;
+  /** where the modules loaded by {@link #loader} are registered */
+  private @Nullable DefTable table;
+  private @Nullable LanguageClient client;
+
+  private static final class Document {
+    /** only accessed by the checker thread, like the loader */
+    private @NotNull TyckCache cache = new TyckCache();
+    private @NotNull Canceller running = new Canceller();
+    private volatile @NotNull String text = "";
+    private volatile @Nullable ReferenceIndex index;
+  }
+
+  private static final class Canceller implements CancellationIndicator {
+    private volatile boolean canceled = false;
+
+    @Override public boolean isCanceled() {
+      return canceled;
+    }
+
+    @Override public void cancel() {
+      canceled = true;
+    }
+  }
+
+  public void connect(@NotNull LanguageClient client) {
+    this.client = client;
+  }
+
+  public void modulePaths(@NotNull ImmutableSeq<Path> modulePaths) {
+    this.modulePaths = modulePaths.map(path -> path.toAbsolutePath().normalize());
+    var table = new DefTable();
+    var reporter = new ModuleReporter(IgnoringReporter.INSTANCE);
+    checker.execute(() -> {
+      loader = new CachedModuleLoader(new ModuleListLoader(this.modulePaths.map(path ->
+        new CompiledModuleLoader(path, reporter, null, table))), CachedModuleLoader.LOADERS, reporter);
+      this.table = table;
+    });
+  }
+
+  public void shutdown() {
+    documents.values().forEach(document -> document.running.cancel());
+    checker.shutdownNow();
+  }
+
+  private void check(@NotNull String uri, @NotNull String text) {
+    var document = documents.computeIfAbsent(uri, u -> new Document());
+    var indicator = new Canceller();
+    synchronized (document) {
+      document.running.cancel();
+      document.running = indicator;
+      document.text = text;
+    }
+    checker.execute(() -> {
+      var loader = this.loader;
+      if (indicator.isCanceled() || loader == null) return;
+      if (document.cache.table() != table) document.cache = new TyckCache(table);
+      var imports = Buffer.<Seq<String>>of();
+      var recordingLoader = new ModuleLoader() {
+        @Override
+        public @Nullable MutableMap<Seq<String>, MutableMap<String, Var>> load(@NotNull Seq<String> path, @NotNull ModuleLoader recurseLoader) {
+          imports.append(path);
+          return loader.load(path, recurseLoader);
+        }
+
+        @Override public void prefetch(@NotNull Seq<String> path) {
+          loader.prefetch(path);
+        }
+      };
+      try {
+        var analysis = Analysis.analyze(text, recordingLoader, document.cache, indicator);
+        if (analysis.index() != null) document.index = analysis.index();
+        // the problems of the imported modules are kept, as they are not loaded again while they are cached
+        publish(uri, analysis.problems(), loader.problems(imports));
+      } catch (CancellationException e) {
+        // a newer version is being checked
+      }
+    });
+  }
+
+  private void publish(@NotNull String uri, @NotNull ImmutableSeq<Problem> problems, @NotNull ImmutableSeq<Problem> moduleProblems) {
+    if (client == null) return;
+    var diagnostics = Buffer.<Diagnostic>of();
+    problems.forEach(problem -> diagnostics.append(diagnostic(problem, problem.sourcePos())));
+    // the positions are in other files
+    moduleProblems.forEach(problem -> diagnostics.append(diagnostic(problem, SourcePos.NONE)));
+    client.publishDiagnostics(new PublishDiagnosticsParams(uri, diagnostics.asJava()));
+  }
+
+  private static @NotNull Diagnostic diagnostic(@NotNull Problem problem, @NotNull SourcePos pos) {
+    var severity = switch (problem.level()) {
+      case ERROR -> DiagnosticSeverity.Error;
+      case WARN -> DiagnosticSeverity.Warning;
+      case GOAL -> DiagnosticSeverity.Hint;
+      case INFO -> DiagnosticSeverity.Information;
+    };
+    return new Diagnostic(range(pos), problem.describe().renderWithPageWidth(80), severity, "aya");
+  }
+
+  private static @NotNull Range range(@NotNull SourcePos pos) {
+    if (pos == SourcePos.NONE) return new Range(new Position(0, 0), new Position(0, 0));
+    return new Range(new Position(pos.startLine() - 1, pos.startColumn()),
+      new Position(pos.endLine() - 1, pos.endColumn() + 1));
+  }
+
+  /** Forgets the module of a changed file, and checks the open documents again */
+  private void changed(@NotNull String uri) {
+    var file = Path.of(URI.create(uri)).toAbsolutePath().normalize();
+    if (file.getFileName().toString().endsWith(CompiledModuleLoader.CACHE_POSTFIX)) return;
+    for (var base : modulePaths) {
+      if (!file.startsWith(base) || file.equals(base)) continue;
+      var module = Buffer.<String>of();
+      for (var name : base.relativize(file)) module.append(name.toString());
+      checker.execute(() -> {
+        if (loader != null) loader.invalidate(module);
+      });
+      documents.forEach((other, document) -> {
+        if (!other.equals(uri)) check(other, document.text);
+      });
+      return;
+    }
+  }
+
+  @Override public void didOpen(DidOpenTextDocumentParams params) {
+    check(params.getTextDocument().getUri(), params.getTextDocument().getText());
+  }
+
+  @Override public void didChange(DidChangeTextDocumentParams params) {
+    var changes = params.getContentChanges();
+    // full synchronization, see AyaServer
+    if (!changes.isEmpty()) check(params.getTextDocument().getUri(), changes.get(changes.size() - 1).getText());
+  }
+
+  @Override public void didClose(DidCloseTextDocumentParams params) {
+    var uri = params.getTextDocument().getUri();
+    var document = documents.remove(uri);
+    if (document != null) document.running.cancel();
+    if (client != null) client.publishDiagnostics(new PublishDiagnosticsParams(uri, List.of()));
+  }
+
+  @Override public void didSave(DidSaveTextDocumentParams params) {
+    changed(params.getTextDocument().getUri());
+  }
+
+  @Override public void didChangeConfiguration(DidChangeConfigurationParams params) {
+  }
+
+  @Override public void didChangeWatchedFiles(DidChangeWatchedFilesParams params) {
+    params.getChanges().forEach(event -> changed(event.getUri()));
+  }
+
+  @Override public CompletableFuture<Hover> hover(HoverParams params) {
+    var index = index(params.getTextDocument().getUri());
+    var ref = index != null ? at(index, params.getPosition()) : null;
+    var type = ref != null ? index.type(ref) : null;
+    if (type == null) return CompletableFuture.completedFuture(null);
+    var content = "```aya\n" + ref.name() + " : " + type.toDoc().renderWithPageWidth(80) + "\n```";
+    return CompletableFuture.completedFuture(new Hover(new MarkupContent(MarkupKind.MARKDOWN, content)));
+  }
+
+  @Override
+  public CompletableFuture<Either<List<? extends Location>, List<? extends LocationLink>>> definition(DefinitionParams params) {
+    var uri = params.getTextDocument().getUri();
+    var index = index(uri);
+    var ref = index != null ? at(index, params.getPosition()) : null;
+    var pos = ref != null ? index.definition(ref) : null;
+    if (pos == null) return CompletableFuture.completedFuture(Either.forLeft(List.of()));
+    return CompletableFuture.completedFuture(Either.forLeft(List.of(new Location(uri, range(pos)))));
+  }
+
+  private @Nullable ReferenceIndex index(@NotNull String uri) {
+    var document = documents.get(uri);
+    return document != null ? document.index : null;
+  }
+
+  private static @Nullable Var at(@NotNull ReferenceIndex index, @NotNull Position position) {
+    return index.at(position.getLine() + 1, position.getCharacter());
+  }
+}
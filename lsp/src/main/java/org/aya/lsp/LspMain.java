@@ -0,0 +1,19 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.lsp;
+
+import org.eclipse.lsp4j.launch.LSPLauncher;
+
+import java.util.concurrent.ExecutionException;
+
+public class LspMain {
+  public static void main(String... args) throws ExecutionException, InterruptedException {
+    // stdout is the channel of the protocol, so nothing else should be printed there
+    var out = System.out;
+    System.setOut(System.err);
+    var server = new AyaServer();
+    var launcher = LSPLauncher.createServerLauncher(server, System.in, out);
+    server.connect(launcher.getRemoteProxy());
+    launcher.startListening().get();
+  }
+}
@@ -0,0 +1,261 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.lsp;
+
+import org.aya.api.error.SourcePos;
+import org.aya.api.ref.DefVar;
+import org.aya.api.ref.Var;
+import org.aya.concrete.Decl;
+import org.aya.concrete.Expr;
+import org.aya.concrete.Pattern;
+import org.aya.concrete.Signatured;
+import org.aya.concrete.visitor.ExprConsumer;
+import org.aya.core.def.DataDef;
+import org.aya.core.def.Def;
+import org.aya.core.def.FnDef;
+import org.aya.core.pat.Pat;
+import org.aya.core.term.*;
+import org.aya.core.visitor.TermConsumer;
+import org.glavo.kala.collection.SeqLike;
+import org.glavo.kala.collection.immutable.ImmutableSeq;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.glavo.kala.tuple.Tuple;
+import org.glavo.kala.tuple.Tuple2;
+import org.glavo.kala.tuple.Unit;
+import org.glavo.kala.value.Ref;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The positions of the variables in a checked document, for hovers and go-to-definition.
+ * Variables are looked up by identity, as {@link org.aya.ref.LocalVar}s of the same name are equal.
+ */
+public final class ReferenceIndex {
+  /** references and binders of variables, with their positions */
+  private final @NotNull Buffer<Tuple2<SourcePos, Var>> occurrences = Buffer.of();
+  private final @NotNull Map<Var, SourcePos> binders = new IdentityHashMap<>();
+  private final @NotNull ImmutableSeq<Decl> decls;
+  private final @NotNull ImmutableSeq<Def> defs;
+
+  private ReferenceIndex(@NotNull ImmutableSeq<Decl> decls, @NotNull ImmutableSeq<Def> defs) {
+    this.decls = decls;
+    this.defs = defs;
+  }
+
+  /** @param defs the core definitions of the declarations, in the same order */
+  public static @NotNull ReferenceIndex of(@NotNull ImmutableSeq<Decl> decls, @NotNull ImmutableSeq<Def> defs) {
+    var index = new ReferenceIndex(decls, defs);
+    decls.forEach(decl -> decl.accept(index.new Collector(), Unit.unit()));
+    return index;
+  }
+
+  /**
+   * @param line   1-based, like {@link SourcePos#startLine()}
+   * @param column 0-based, like {@link SourcePos#startColumn()}
+   * @return the innermost variable at the position
+   */
+  public @Nullable Var at(int line, int column) {
+    Tuple2<SourcePos, Var> innermost = null;
+    for (var occurrence : occurrences) {
+      if (!contains(occurrence._1, line, column)) continue;
+      if (innermost == null || size(occurrence._1) < size(innermost._1)) innermost = occurrence;
+    }
+    return innermost != null ? innermost._2 : null;
+  }
+
+  private static int size(@NotNull SourcePos pos) {
+    return pos.tokenEndIndex() - pos.tokenStartIndex();
+  }
+
+  public static boolean contains(@NotNull SourcePos pos, int line, int column) {
+    if (line < pos.startLine() || line > pos.endLine()) return false;
+    if (line == pos.startLine() && column < pos.startColumn()) return false;
+    return line != pos.endLine() || column <= pos.endColumn();
+  }
+
+  /** @return null if the variable is not defined in the document, like a definition of another module */
+  public @Nullable SourcePos definition(@NotNull Var var) {
+    return binders.get(var);
+  }
+
+  /** @return the type of a definition or a local variable */
+  public @Nullable Term type(@NotNull Var var) {
+    if (var instanceof DefVar<?, ?> ref && ref.core instanceof Def def) {
+      var telescope = def.telescope();
+      var type = def.result();
+      for (int i = telescope.size() - 1; i >= 0; i--) type = new PiTerm(false, telescope.get(i), type);
+      return type;
+    }
+    var type = find(param -> param == var, defs);
+    if (type != null) return type;
+    // reused definitions are bound to the variables of an earlier version of the document,
+    // so look for a variable of the same name in the definition around the binder,
+    // which is the last one starting before the binder, as the positions of declarations are their names
+    var pos = binders.get(var);
+    if (pos == null) return null;
+    Def around = null;
+    for (int i = 0; i < decls.size(); i++) {
+      var start = decls.get(i).sourcePos;
+      if (start.startLine() > pos.startLine()) break;
+      if (start.startLine() == pos.startLine() && start.startColumn() > pos.startColumn()) break;
+      around = defs.get(i);
+    }
+    return around != null ? find(param -> param.name().equals(var.name()), ImmutableSeq.of(around)) : null;
+  }
+
+  private static @Nullable Term find(@NotNull Predicate<Var> predicate, @NotNull ImmutableSeq<Def> defs) {
+    var finder = new BinderFinder(predicate, new Ref<>());
+    for (var def : defs) {
+      finder.def(def);
+      if (finder.type.value != null) return finder.type.value;
+    }
+    return null;
+  }
+
+  private final class Collector implements Signatured.Visitor<Unit, Unit>, ExprConsumer<Unit> {
+    @Override public Unit visitRef(Expr.@NotNull RefExpr expr, Unit unit) {
+      occurrences.append(Tuple.of(expr.sourcePos(), expr.resolvedVar()));
+      return unit;
+    }
+
+    @Override public void visitParams(@NotNull ImmutableSeq<Expr.@NotNull Param> params, Unit unit) {
+      params.forEach(param -> {
+        occurrences.append(Tuple.of(param.sourcePos(), param.ref()));
+        binders.put(param.ref(), param.sourcePos());
+      });
+      ExprConsumer.super.visitParams(params, unit);
+    }
+
+    @Override public Unit visitDataDecl(Decl.@NotNull DataDecl decl, Unit unit) {
+      binders.put(decl.ref, decl.sourcePos);
+      visitParams(decl.telescope, unit);
+      decl.result.accept(this, unit);
+      decl.body.map(ctors -> {
+        ctors.ctors().forEach(ctor -> ctor.accept(this, unit));
+        return unit;
+      }, clauses -> {
+        clauses.clauses().forEach(clause -> {
+          pattern(clause._1);
+          clause._2.accept(this, unit);
+        });
+        return unit;
+      });
+      return unit;
+    }
+
+    @Override public Unit visitFnDecl(Decl.@NotNull FnDecl decl, Unit unit) {
+      binders.put(decl.ref, decl.sourcePos);
+      visitParams(decl.telescope, unit);
+      decl.result.accept(this, unit);
+      decl.body.map(expr -> expr.accept(this, unit), clauses -> {
+        clauses.forEach(this::clause);
+        return unit;
+      });
+      return unit;
+    }
+
+    @Override public Unit visitCtor(Decl.@NotNull DataCtor ctor, Unit unit) {
+      binders.put(ctor.ref, ctor.sourcePos);
+      visitParams(ctor.telescope, unit);
+      ctor.clauses.forEach(this::clause);
+      return unit;
+    }
+
+    private void clause(@NotNull Pattern.Clause clause) {
+      if (!(clause instanceof Pattern.Clause.Match match)) return;
+      match.patterns().forEach(this::pattern);
+      match.expr().accept(this, Unit.unit());
+    }
+
+    private void pattern(@NotNull Pattern pattern) {
+      if (pattern instanceof Pattern.Bind bind) {
+        var resolved = bind.resolved().value;
+        // a constructor without arguments
+        if (resolved instanceof DefVar<?, ?>) occurrences.append(Tuple.of(bind.sourcePos(), resolved));
+        else {
+          occurrences.append(Tuple.of(bind.sourcePos(), bind.bind()));
+          binders.put(bind.bind(), bind.sourcePos());
+        }
+      } else if (pattern instanceof Pattern.Tuple tuple) tuple.patterns().forEach(this::pattern);
+      else if (pattern instanceof Pattern.Ctor ctor) ctor.params().forEach(this::pattern);
+    }
+  }
+
+  /** Finds the type of a variable bound in a core definition */
+  private static record BinderFinder(
+    @NotNull Predicate<Var> predicate,
+    @NotNull Ref<Term> type
+  ) implements TermConsumer<Unit> {
+    void def(@NotNull Def def) {
+      params(def.telescope());
+      def.result().accept(this, Unit.unit());
+      if (def instanceof FnDef fn) fn.body().map(term -> term.accept(this, Unit.unit()), clauses -> {
+        clauses.forEach(this::clause);
+        return Unit.unit();
+      });
+      else if (def instanceof DataDef data) {
+        data.ctors().forEach(ctor -> {
+          params(ctor.conTelescope());
+          ctor.clauses().forEach(this::clause);
+        });
+        data.clauses().forEach((pat, ctor) -> pat(pat));
+      }
+    }
+
+    private void params(@NotNull SeqLike<Term.Param> params) {
+      params.forEach(this::param);
+    }
+
+    private void param(Term.@NotNull Param param) {
+      if (type.value == null && predicate.test(param.ref())) type.value = param.type();
+      param.type().accept(this, Unit.unit());
+    }
+
+    private void clause(Pat.@NotNull Clause clause) {
+      if (!(clause instanceof Pat.Clause.Match match)) return;
+      match.patterns().forEach(this::pat);
+      match.expr().accept(this, Unit.unit());
+    }
+
+    private void pat(@NotNull Pat pat) {
+      if (pat instanceof Pat.Bind bind) {
+        if (type.value == null && predicate.test(bind.as())) type.value = bind.type();
+      } else if (pat instanceof Pat.Tuple tuple) tuple.pats().forEach(this::pat);
+      else if (pat instanceof Pat.Ctor ctor) ctor.params().forEach(this::pat);
+    }
+
+    @Override public Unit visitLam(@NotNull LamTerm term, Unit unit) {
+      param(term.param());
+      return term.body().accept(this, unit);
+    }
+
+    @Override public Unit visitPi(@NotNull PiTerm term, Unit unit) {
+      param(term.param());
+      return term.body().accept(this, unit);
+    }
+
+    @Override public Unit visitSigma(@NotNull SigmaTerm term, Unit unit) {
+      params(term.params());
+      return term.body().accept(this, unit);
+    }
+
+    @Override public Unit visitTup(@NotNull TupTerm term, Unit unit) {
+      term.items().forEach(item -> item.accept(this, unit));
+      return unit;
+    }
+
+    @Override public Unit visitDataCall(AppTerm.@NotNull DataCall dataCall, Unit unit) {
+      dataCall.args().forEach(arg -> visitArg(arg, unit));
+      return unit;
+    }
+
+    @Override public Unit visitConCall(AppTerm.@NotNull ConCall conCall, Unit unit) {
+      conCall.conArgs().forEach(arg -> visitArg(arg, unit));
+      return unit;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.lsp;
+
+import org.aya.api.error.Problem;
+import org.aya.api.ref.DefVar;
+import org.aya.concrete.resolve.module.EmptyModuleLoader;
+import org.aya.tyck.order.TyckCache;
+import org.aya.util.cancel.CancellationException;
+import org.aya.util.cancel.CancellationIndicator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnalysisTest {
+  private static final String CODE = """
+    \\open \\data Nat : \\Set | zero | suc Nat
+    \\def add (a, b : Nat) : Nat
+     | zero, a => a
+     | suc a, b => suc (add a b)
+    \\def two : Nat => add (suc zero) (suc zero)""";
+
+  private static final class Indicator implements CancellationIndicator {
+    private boolean canceled = false;
+
+    @Override public boolean isCanceled() {
+      return canceled;
+    }
+
+    @Override public void cancel() {
+      canceled = true;
+    }
+  }
+
+  @Test
+  public void index() {
+    var cache = new TyckCache();
+    check(cache);
+    // the definitions are reused, and the local variables are looked up by names
+    check(cache);
+    assertEquals(3, cache.reused());
+  }
+
+  private void check(TyckCache cache) {
+    var analysis = Analysis.analyze(CODE, new EmptyModuleLoader(), cache, new Indicator());
+    // the patterns shadow the parameters
+    assertFalse(analysis.problems().anyMatch(problem -> problem.level() == Problem.Severity.ERROR));
+    var index = analysis.index();
+    assertNotNull(index);
+    // the `add` in `two`
+    var add = index.at(5, 19);
+    assertTrue(add instanceof DefVar<?, ?>);
+    assertEquals("add", add.name());
+    assertEquals(2, index.definition(add).startLine());
+    assertNotNull(index.type(add));
+    // the `b` in `add a b`
+    var b = index.at(4, 26);
+    assertNotNull(b);
+    assertEquals("b", b.name());
+    assertEquals(4, index.definition(b).startLine());
+    assertEquals("Nat", index.type(b).toDoc().renderWithPageWidth(80));
+  }
+
+  @Test
+  public void canceled() {
+    var indicator = new Indicator();
+    indicator.cancel();
+    assertThrows(CancellationException.class, () ->
+      Analysis.analyze(CODE, new EmptyModuleLoader(), new TyckCache(), indicator));
+  }
+
+  @Test
+  public void unresolved() {
+    var analysis = Analysis.analyze("\\def one : Nat => suc zero", new EmptyModuleLoader(), new TyckCache(), new Indicator());
+    assertNull(analysis.index());
+    assertFalse(analysis.problems().isEmpty());
+  }
+}
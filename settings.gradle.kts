@@ -16,9 +16,11 @@ include(
   "tester",
   "docs",
   "cli",
+  "lsp",
   "tgbot",
   // "proto",
   "parser",
   "base",
-  "pretty"
+  "pretty",
+  "bench"
 )
@@ -1,5 +1,6 @@
 module org.aya.test {
   requires static org.jetbrains.annotations;
+  requires jdk.management;
 
   requires transitive org.junit.jupiter.api;
   requires transitive org.aya;
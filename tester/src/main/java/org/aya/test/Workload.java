@@ -0,0 +1,66 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.test;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Well-typed synthetic programs whose sizes grow with a parameter,
+ * for finding out how the phases of the compiler scale.
+ */
+public enum Workload {
+  /** Definitions not depending on each other */
+  INDEPENDENT,
+  /** Each definition calls the previous one */
+  CHAIN,
+  /** A data type with the given number of constructors, and a function matching each of them */
+  WIDE_DATA,
+  /** Checking a definition unfolds the addition of two numerals of the given size */
+  NAT_COMPUTATION,
+  /** A function with the given number of parameters, and a call of it */
+  TELESCOPE;
+
+  public static final @NotNull String NAT = """
+    \\open \\data Nat : \\Set
+     | zero
+     | suc Nat
+
+    \\def add (m, n : Nat) : Nat
+     | zero, b => b
+     | suc a, b => suc (add a b)
+    """;
+
+  public @NotNull String generate(int size) {
+    return NAT + "\n" + switch (this) {
+      case INDEPENDENT -> lines(size, i -> "\\def f" + i + " (a : Nat) : Nat => add a (suc zero)");
+      case CHAIN -> "\\def f0 (a : Nat) : Nat => a\n"
+        + lines(size - 1, i -> "\\def f" + (i + 1) + " (a : Nat) : Nat => f" + i + " (suc a)");
+      case WIDE_DATA -> "\\open \\data Wide : \\Set\n"
+        + lines(size, i -> " | c" + i)
+        + "\\def toNat (w : Wide) : Nat\n"
+        + lines(size, i -> " | c" + i + " => " + (i % 2 == 0 ? "zero" : "suc zero"));
+      // the type of the numeral is computed when the numeral is checked against it
+      case NAT_COMPUTATION -> """
+        \\def Ty (n : Nat) : \\Set
+         | zero => Nat
+         | suc m => Ty m
+        """ + "\\def sum : Ty (add (" + numeral(size) + ") (" + numeral(size) + ")) => " + numeral(size) + "\n";
+      case TELESCOPE -> "\\def pick" + lines(size, i -> " (a" + i + " : Nat)").replace("\n", "")
+        + " : Nat => a" + (size - 1) + "\n"
+        + "\\def picked : Nat => pick" + " zero".repeat(size) + "\n";
+    };
+  }
+
+  /** @return the unary numeral of the given number */
+  public static @NotNull String numeral(int n) {
+    return "suc (".repeat(n) + "zero" + ")".repeat(n);
+  }
+
+  private static @NotNull String lines(int size, @NotNull IntFunction<String> line) {
+    return IntStream.range(0, size).mapToObj(line).collect(Collectors.joining("\n", "", "\n"));
+  }
+}
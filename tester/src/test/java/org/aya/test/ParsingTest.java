@@ -0,0 +1,69 @@
+// Copyright (c) 2020-2021 Yinsen (Tesla) Zhang.
+// Use of this source code is governed by the GNU GPLv3 license that can be found in the LICENSE file.
+package org.aya.test;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.aya.concrete.parse.AyaParsing;
+import org.aya.concrete.parse.AyaTokenizer;
+import org.aya.concrete.parse.ReporterErrorListener;
+import org.aya.parser.AyaLexer;
+import org.glavo.kala.collection.mutable.Buffer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the two-stage parsing of {@link AyaParsing#program(String, org.aya.api.error.Reporter)}
+ * gives the same trees as the full LL parsing, and {@link AyaTokenizer} the same tokens as {@link AyaLexer},
+ * on the successful test cases. The timings are in the ParsingBench of the bench project.
+ */
+public class ParsingTest {
+  @Test
+  void twoStageParsing() throws IOException {
+    var corpus = corpus();
+    var ll = AyaParsing.parser(corpus, ThrowingReporter.INSTANCE).program();
+    var twoStage = AyaParsing.program(corpus, ThrowingReporter.INSTANCE);
+    assertEquals(ll.toStringTree(), twoStage.toStringTree());
+  }
+
+  @Test
+  void handWrittenLexer() throws IOException {
+    var corpus = corpus();
+    var listener = new ReporterErrorListener(ThrowingReporter.INSTANCE);
+    assertEquals(lex(new AyaLexer(CharStreams.fromString(corpus))),
+      lex(new AyaTokenizer(CharStreams.fromString(corpus), listener)));
+  }
+
+  /** @return the types and texts of the tokens on the default channel, as the parser sees them */
+  private static @NotNull Buffer<String> lex(@NotNull TokenSource lexer) {
+    var tokens = Buffer.<String>of();
+    for (var token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken())
+      if (token.getChannel() == Token.DEFAULT_CHANNEL) tokens.append(token.getType() + ":" + token.getText());
+    return tokens;
+  }
+
+  private static @NotNull String corpus() throws IOException {
+    return Files.walk(Paths.get("src", "test", "aya", "success"))
+      .filter(f -> f.getFileName().toString().endsWith(".aya"))
+      .sorted()
+      .map(ParsingTest::read)
+      .collect(Collectors.joining("\n"));
+  }
+
+  private static @NotNull String read(@NotNull Path file) {
+    try {
+      return Files.readString(file);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
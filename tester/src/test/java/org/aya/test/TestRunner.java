@@ -30,34 +30,47 @@ public class TestRunner {
 
   @Test
   void runAllAyaTests() throws IOException {
+    runAllAyaTests(false);
+  }
+
+  /** The pipelined compilation should report the same problems */
+  @Test
+  void runAllAyaTestsPipelined() throws IOException {
+    runAllAyaTests(true);
+  }
+
+  private void runAllAyaTests(boolean pipeline) throws IOException {
     var testSourceDir = Paths.get("src", "test", "aya");
-    runDir(testSourceDir.resolve("success"), true);
-    runDir(testSourceDir.resolve("failure"), false);
+    runDir(testSourceDir.resolve("success"), true, pipeline);
+    runDir(testSourceDir.resolve("failure"), false, pipeline);
   }
 
-  private void runDir(@NotNull Path path, boolean expectSuccess) throws IOException {
+  private void runDir(@NotNull Path path, boolean expectSuccess, boolean pipeline) throws IOException {
     System.out.println(":: Running tests under " + path.toAbsolutePath());
     assertTrue(path.toFile().isDirectory(), "should be a directory");
 
     Files.walk(path)
       .filter(Files::isRegularFile)
       .filter(f -> f.getFileName().toString().endsWith(".aya"))
-      .forEach(file -> runFile(file, expectSuccess));
+      .forEach(file -> runFile(file, expectSuccess, pipeline));
   }
 
-  private void runFile(@NotNull Path file, boolean expectSuccess) {
+  private void runFile(@NotNull Path file, boolean expectSuccess, boolean pipeline) {
     var expectedOutFile = file.resolveSibling(file.getFileName() + ".txt");
 
     var hookOut = new ByteArrayOutputStream();
     final var reporter = new CountingReporter(new StreamReporter(
       file, Problem.readSourceCode(file), new PrintStream(hookOut)));
 
+    var status = 0;
     try {
-      new SingleFileCompiler(reporter, file, null)
-        .compile(new CompilerFlags(CompilerFlags.Message.ASCII, false, ImmutableSeq.of()));
+      status = new SingleFileCompiler(reporter, file, null)
+        .compile(new CompilerFlags(CompilerFlags.Message.ASCII, false, pipeline, ImmutableSeq.of()));
     } catch (IOException e) {
       fail("error reading file " + file.toAbsolutePath());
     }
+    // the exit code of the command line
+    if (!expectSuccess) assertNotEquals(0, status, file.getFileName().toString());
 
     if (Files.exists(expectedOutFile)) {
       checkOutput(file, expectedOutFile, hookOut.toString());